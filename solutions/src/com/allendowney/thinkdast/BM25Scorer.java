@@ -0,0 +1,51 @@
+package com.allendowney.thinkdast;
+
+/**
+ * Scores documents using Okapi BM25.
+ *
+ * The score for a term grows with its frequency but levels off, at a
+ * rate controlled by k1, and long documents are penalized, to a degree
+ * controlled by b.
+ *
+ * @author downey
+ *
+ */
+public class BM25Scorer implements Scorer {
+
+	private final double k1;
+	private final double b;
+
+	/**
+	 * Makes a scorer with the usual parameters, k1=1.2 and b=0.75.
+	 */
+	public BM25Scorer() {
+		this(1.2, 0.75);
+	}
+
+	/**
+	 * @param k1  how quickly term frequency saturates; larger is slower
+	 * @param b   how much document length matters, from 0 to 1
+	 */
+	public BM25Scorer(double k1, double b) {
+		this.k1 = k1;
+		this.b = b;
+	}
+
+	@Override
+	public double termWeight(int df, int numDocs) {
+		return Math.log(1.0 + (numDocs - df + 0.5) / (df + 0.5));
+	}
+
+	@Override
+	public double lengthNorm(int docLength, double averageLength) {
+		if (averageLength <= 0) {
+			return k1;
+		}
+		return k1 * (1 - b + b * docLength / averageLength);
+	}
+
+	@Override
+	public double score(double termWeight, int tf, double lengthNorm) {
+		return termWeight * tf * (k1 + 1) / (tf + lengthNorm);
+	}
+}
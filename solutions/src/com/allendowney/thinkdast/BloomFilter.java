@@ -0,0 +1,305 @@
+package com.allendowney.thinkdast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of strings that uses a few bits per element, at the cost of
+ * sometimes saying that a string is present when it is not.
+ *
+ * It never says that an added string is absent.  The probability that it
+ * wrongly says an absent string is present is at most the false positive
+ * rate given to the constructor.
+ *
+ * The filter grows as needed.  It starts with one bit array sized for
+ * initialCapacity strings; when that is full, it adds a bit array twice
+ * as big with half the false positive rate, and so on.  A string is
+ * present if any array contains it, so the rates add up to a geometric
+ * series that stays under the target.  This is a "scalable Bloom filter"
+ * (Almeida et al., 2007).
+ *
+ * The methods are synchronized, so the filter can be shared by threads.
+ * It can be saved to a file and loaded back with save and load.
+ *
+ * @author downey
+ *
+ */
+public class BloomFilter {
+
+	// identifies the file format
+	private static final int MAGIC = 0x426c6f6d;
+
+	private final int initialCapacity;
+	private final double falsePositiveRate;
+	private final List<Slice> slices = new ArrayList<Slice>();
+	private long size = 0;
+
+	/**
+	 * One bit array, with its own number of hash functions.
+	 */
+	private static class Slice {
+		private final long capacity;
+		private final int numHashes;
+		private final long numBits;
+		private final long[] bits;
+		private long count = 0;
+
+		/**
+		 * Makes a bit array that holds capacity strings with the given
+		 * false positive rate.
+		 */
+		private Slice(long capacity, double rate) {
+			this.capacity = capacity;
+			// the standard formulas for the optimal size and number of hashes
+			double ln2 = Math.log(2);
+			long m = (long) Math.ceil(-capacity * Math.log(rate) / (ln2 * ln2));
+			this.numBits = Math.max(64, (m + 63) / 64 * 64);
+			this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * ln2));
+			this.bits = new long[(int) (numBits / 64)];
+		}
+
+		private Slice(long capacity, int numHashes, long count, long[] bits) {
+			this.capacity = capacity;
+			this.numHashes = numHashes;
+			this.numBits = bits.length * 64L;
+			this.count = count;
+			this.bits = bits;
+		}
+
+		private boolean contains(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i=0; i<numHashes; i++) {
+				long bit = index(h1, h2, i);
+				if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void add(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i=0; i<numHashes; i++) {
+				long bit = index(h1, h2, i);
+				bits[(int) (bit >>> 6)] |= 1L << bit;
+			}
+			count++;
+		}
+
+		/**
+		 * Computes the i-th bit index from two hashes, which is as good as
+		 * i independent hashes (Kirsch and Mitzenmacher, 2006).
+		 */
+		private long index(int h1, int h2, int i) {
+			long combined = (h1 & 0xffffffffL) + i * (h2 & 0xffffffffL);
+			return combined % numBits;
+		}
+	}
+
+	/**
+	 * Makes an empty filter.
+	 *
+	 * @param initialCapacity    number of strings the first bit array holds
+	 * @param falsePositiveRate  between 0 and 1
+	 */
+	public BloomFilter(int initialCapacity, double falsePositiveRate) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+		}
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+		}
+		this.initialCapacity = initialCapacity;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * Checks whether a string might have been added.
+	 *
+	 * @param s
+	 * @return false if s has definitely not been added
+	 */
+	public synchronized boolean mightContain(String s) {
+		long hash = hash(s);
+		for (Slice slice: slices) {
+			if (slice.contains(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a string, unless it might have been added already.
+	 *
+	 * @param s
+	 * @return true if the string was added, false if it was (probably)
+	 *         already there
+	 */
+	public synchronized boolean add(String s) {
+		long hash = hash(s);
+		for (Slice slice: slices) {
+			if (slice.contains(hash)) {
+				return false;
+			}
+		}
+		Slice last = slices.isEmpty() ? null : slices.get(slices.size() - 1);
+		if (last == null || last.count >= last.capacity) {
+			// each slice is twice as big, with half the error rate, so the
+			// total is falsePositiveRate * (1/2 + 1/4 + ...)
+			int i = slices.size();
+			last = new Slice((long) initialCapacity << i, falsePositiveRate / (2L << i));
+			slices.add(last);
+		}
+		last.add(hash);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of strings added.
+	 *
+	 * @return
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bits used.
+	 *
+	 * @return
+	 */
+	public synchronized long bitSize() {
+		long total = 0;
+		for (Slice slice: slices) {
+			total += slice.numBits;
+		}
+		return total;
+	}
+
+	/**
+	 * Computes a 64-bit hash of a string: FNV-1a over the characters,
+	 * finished with the mixing step from MurmurHash3.
+	 *
+	 * @param s
+	 * @return
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i=0; i<s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Writes the filter to a stream.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public synchronized void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(initialCapacity);
+		data.writeDouble(falsePositiveRate);
+		data.writeLong(size);
+		data.writeInt(slices.size());
+		for (Slice slice: slices) {
+			data.writeLong(slice.capacity);
+			data.writeInt(slice.numHashes);
+			data.writeLong(slice.count);
+			data.writeInt(slice.bits.length);
+			for (long word: slice.bits) {
+				data.writeLong(word);
+			}
+		}
+		data.flush();
+	}
+
+	/**
+	 * Reads a filter written by writeTo.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if the stream does not hold a filter
+	 */
+	public static BloomFilter readFrom(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a BloomFilter");
+		}
+		BloomFilter filter = new BloomFilter(data.readInt(), data.readDouble());
+		filter.size = data.readLong();
+		int numSlices = data.readInt();
+		for (int i=0; i<numSlices; i++) {
+			long capacity = data.readLong();
+			int numHashes = data.readInt();
+			long count = data.readLong();
+			long[] bits = new long[data.readInt()];
+			for (int j=0; j<bits.length; j++) {
+				bits[j] = data.readLong();
+			}
+			filter.slices.add(new Slice(capacity, numHashes, count, bits));
+		}
+		return filter;
+	}
+
+	/**
+	 * Saves the filter to a file.
+	 *
+	 * Writes a temporary file, forces it to disk, and renames it, so a
+	 * crash while saving leaves the old file intact.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		OutputStream out = new BufferedOutputStream(stream);
+		try {
+			writeTo(out);
+			stream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Loads a filter saved with save.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static BloomFilter load(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return readFrom(in);
+		} finally {
+			in.close();
+		}
+	}
+}
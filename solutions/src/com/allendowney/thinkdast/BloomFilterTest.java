@@ -0,0 +1,99 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author downey
+ *
+ */
+public class BloomFilterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String url(int i) {
+		return "https://en.wikipedia.org/wiki/Page" + i;
+	}
+
+	/**
+	 * Test method for {@link BloomFilter#add(String)}.
+	 */
+	@Test
+	public void testAdd() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		assertThat(filter.mightContain(url(1)), is(false));
+		assertThat(filter.add(url(1)), is(true));
+		assertThat(filter.add(url(1)), is(false));
+		assertThat(filter.mightContain(url(1)), is(true));
+		assertThat(filter.size(), is(1L));
+	}
+
+	/**
+	 * Checks that there are no false negatives, and that the false positive
+	 * rate stays near the target after the filter grows.
+	 */
+	@Test
+	public void testFalsePositiveRate() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		int n = 20000;
+		int added = 0;
+		for (int i=0; i<n; i++) {
+			if (filter.add(url(i))) {
+				added++;
+			}
+		}
+		for (int i=0; i<n; i++) {
+			assertThat(filter.mightContain(url(i)), is(true));
+		}
+		// an add can only fail because of a false positive
+		assertThat(n - added < n * 0.01, is(true));
+
+		int falsePositives = 0;
+		for (int i=n; i<2*n; i++) {
+			if (filter.mightContain(url(i))) {
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives < n * 0.015, is(true));
+
+		// about 10 bits per string for 1%, plus the slack of the last slice
+		assertThat(filter.bitSize() < n * 30L, is(true));
+	}
+
+	/**
+	 * Test method for {@link BloomFilter#save(File)} and
+	 * {@link BloomFilter#load(File)}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSaveLoad() throws IOException {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		for (int i=0; i<500; i++) {
+			filter.add(url(i));
+		}
+		File file = new File(folder.getRoot(), "seen.bloom");
+		filter.save(file);
+
+		BloomFilter loaded = BloomFilter.load(file);
+		assertThat(loaded.size(), is(filter.size()));
+		assertThat(loaded.bitSize(), is(filter.bitSize()));
+		for (int i=0; i<1000; i++) {
+			assertThat(loaded.mightContain(url(i)), is(filter.mightContain(url(i))));
+		}
+
+		// and it keeps growing the same way
+		for (int i=500; i<1000; i++) {
+			assertThat(loaded.add(url(i)), is(filter.add(url(i))));
+		}
+		assertThat(loaded.bitSize(), is(filter.bitSize()));
+	}
+}
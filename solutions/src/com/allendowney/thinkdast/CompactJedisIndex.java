@@ -0,0 +1,641 @@
+package com.allendowney.thinkdast;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+/**
+ * Represents a Redis-backed web search index with a compact layout.
+ *
+ * JedisIndex stores the URL in the URLSet of every term on the page,
+ * and a TermCounter hash per URL.  This class gives each URL an integer
+ * docId and stores, for each term, a binary string of (docId, count)
+ * pairs encoded as variable-length integers:
+ *
+ *     DocId:url       docId of the URL
+ *     DocURLs         hash from docId to URL
+ *     NextDocId       counter used to assign docIds
+ *     Postings:term   packed (docId, count) pairs
+ *
+ * So each URL is stored twice in total, and a posting usually takes
+ * three to five bytes.
+ *
+ * Postings are appended in the order pages are indexed, so they are not
+ * necessarily sorted by docId.  When a page is indexed again, it gets a
+ * new docId, its new postings are appended, and the old docId is removed
+ * from DocURLs.  The old postings stay where they are, dead, and lookups
+ * skip them until compact removes them, so reindexing a page costs an
+ * APPEND per term however long the postings are.  compact runs by itself
+ * after every COMPACT_THRESHOLD reindexes:
+ *
+ *     RetiredDocs     number of docIds retired since the last compact
+ *
+ */
+public class CompactJedisIndex implements SearchIndex {
+
+	// maximum number of commands or fields to send before reading the replies
+	private static final int PIPELINE_BATCH = 1000;
+
+	private static final String DOC_ID_PREFIX = "DocId:";
+	private static final String DOC_URLS = "DocURLs";
+	private static final String NEXT_DOC_ID = "NextDocId";
+	private static final String RETIRED_DOCS = "RetiredDocs";
+	private static final String POSTINGS_PREFIX = "Postings:";
+
+	// number of retired docIds that triggers a compaction
+	static final int COMPACT_THRESHOLD = 1000;
+
+	// the smallest posting: a one-byte docId and a one-byte count
+	private static final int MIN_POSTING_SIZE = 2;
+
+	// connections to Redis; each operation borrows one
+	private JedisConnectionPool pool;
+
+	/**
+	 * Constructor.
+	 *
+	 * Threads that share the index take turns using the connection.
+	 *
+	 * @param jedis
+	 */
+	public CompactJedisIndex(Jedis jedis) {
+		this(JedisConnectionPool.wrap(jedis));
+	}
+
+	/**
+	 * Makes an index that borrows connections from a pool, so several
+	 * threads can use it at the same time.
+	 *
+	 * @param pool
+	 */
+	public CompactJedisIndex(JedisConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the Redis key for the docId of a given URL.
+	 *
+	 * @return Redis key.
+	 */
+	private String docIdKey(String url) {
+		return DOC_ID_PREFIX + url;
+	}
+
+	/**
+	 * Returns the Redis key for the postings of a given search term.
+	 *
+	 * @return Redis key.
+	 */
+	private String postingsKey(String term) {
+		return POSTINGS_PREFIX + term;
+	}
+
+	private static byte[] encode(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public boolean isIndexed(String url) {
+		Jedis jedis = pool.getResource();
+		try {
+			return jedis.exists(docIdKey(url));
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	@Override
+	public Set<String> getURLs(String term) {
+		return new HashSet<String>(getCounts(term).keySet());
+	}
+
+	@Override
+	public Map<String, Integer> getCounts(String term) {
+		MyObjectIntMap<String> counts = getCounts(Collections.singleton(term)).get(term);
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (String url: counts.keySet()) {
+			map.put(url, counts.get(url));
+		}
+		return map;
+	}
+
+	/**
+	 * Looks up several terms and returns, for each term, a map from URL to count.
+	 *
+	 * Uses two pipelined round trips: one that gets the postings for all
+	 * terms, and one that translates the docIds to URLs.
+	 *
+	 * @param terms
+	 * @return Map from term to a map from URL to count.
+	 */
+	public Map<String, MyObjectIntMap<String>> getCounts(Collection<String> terms) {
+		List<String> termList = new ArrayList<String>(new LinkedHashSet<String>(terms));
+		Jedis jedis = pool.getResource();
+		try {
+			return getCounts(jedis, termList);
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	/**
+	 * Does the work of getCounts with a borrowed connection.
+	 *
+	 * @param jedis
+	 * @param termList  distinct terms
+	 * @return
+	 */
+	private Map<String, MyObjectIntMap<String>> getCounts(Jedis jedis, List<String> termList) {
+		// get the postings for all terms
+		List<Response<byte[]>> responses = new ArrayList<Response<byte[]>>();
+		Pipeline p = jedis.pipelined();
+		for (String term: termList) {
+			responses.add(p.get(encode(postingsKey(term))));
+		}
+		p.sync();
+
+		// decode them and collect the docIds we need to look up
+		List<int[]> postings = new ArrayList<int[]>();
+		Set<String> docIds = new LinkedHashSet<String>();
+		for (Response<byte[]> response: responses) {
+			int[] pairs = decode(response.get());
+			postings.add(pairs);
+			for (int i=0; i<pairs.length; i+=2) {
+				docIds.add(Integer.toString(pairs[i]));
+			}
+		}
+		Map<String, String> urls = getURLsForDocIds(jedis, docIds);
+
+		Map<String, MyObjectIntMap<String>> result = new HashMap<String, MyObjectIntMap<String>>();
+		for (int j=0; j<termList.size(); j++) {
+			MyObjectIntMap<String> counts = new MyObjectIntMap<String>();
+			int[] pairs = postings.get(j);
+			for (int i=0; i<pairs.length; i+=2) {
+				// skip docIds that were replaced by a later version of the page
+				String url = urls.get(Integer.toString(pairs[i]));
+				if (url != null) {
+					counts.put(url, pairs[i+1]);
+				}
+			}
+			result.put(termList.get(j), counts);
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up the URLs for a set of docIds.
+	 *
+	 * @param jedis
+	 * @param docIds
+	 * @return Map from docId to URL, with no entries for deleted docIds.
+	 */
+	private Map<String, String> getURLsForDocIds(Jedis jedis, Set<String> docIds) {
+		List<String> ids = new ArrayList<String>(docIds);
+		List<Response<List<String>>> responses = new ArrayList<Response<List<String>>>();
+		Pipeline p = jedis.pipelined();
+		for (int start=0; start<ids.size(); start+=PIPELINE_BATCH) {
+			List<String> batch = ids.subList(start, Math.min(start + PIPELINE_BATCH, ids.size()));
+			responses.add(p.hmget(DOC_URLS, batch.toArray(new String[batch.size()])));
+		}
+		p.sync();
+
+		Map<String, String> map = new HashMap<String, String>();
+		int i = 0;
+		for (Response<List<String>> response: responses) {
+			for (String url: response.get()) {
+				String id = ids.get(i++);
+				if (url != null) {
+					map.put(id, url);
+				}
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Decodes packed postings.
+	 *
+	 * @param bytes  packed postings, or null
+	 * @return array of alternating docIds and counts
+	 */
+	static int[] decode(byte[] bytes) {
+		if (bytes == null) {
+			return new int[0];
+		}
+		// there are at most bytes.length varints
+		int[] values = new int[bytes.length];
+		int n = 0;
+		int offset = 0;
+		while (offset < bytes.length) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			values[n++] = value;
+		}
+		int[] pairs = new int[n];
+		System.arraycopy(values, 0, pairs, 0, n);
+		return pairs;
+	}
+
+	/**
+	 * Encodes one posting.
+	 *
+	 * @param docId
+	 * @param count
+	 * @return
+	 */
+	static byte[] encodePosting(int docId, int count) {
+		byte[] buffer = new byte[10];
+		int length = PostingsList.writeVarInt(buffer, 0, docId);
+		length = PostingsList.writeVarInt(buffer, length, count);
+		byte[] posting = new byte[length];
+		System.arraycopy(buffer, 0, posting, 0, length);
+		return posting;
+	}
+
+	@Override
+	public void indexPage(String url, Elements paragraphs) {
+		System.out.println("Indexing " + url);
+
+		// make a TermCounter and count the terms in the paragraphs
+		TermCounter tc = new TermCounter(url);
+		tc.processElements(paragraphs);
+
+		pushTermCounterToRedis(tc);
+	}
+
+	/**
+	 * Pushes the contents of the TermCounter to Redis.
+	 *
+	 * If the page has already been indexed, the new counts replace the
+	 * old: the page gets a new docId, and the postings of the old one are
+	 * left for compact.  Only the DocId key of this URL is watched, so
+	 * clients indexing other pages don't get in each other's way; if
+	 * another client indexes the same page first, the transaction is
+	 * retried with the same new docId.
+	 *
+	 * @param tc
+	 * @return List of return values from Redis.
+	 */
+	public List<Object> pushTermCounterToRedis(TermCounter tc) {
+		String url = tc.getLabel();
+		String idKey = docIdKey(url);
+		List<String> terms = new ArrayList<String>(tc.keySet());
+		byte[][] keys = new byte[terms.size()][];
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = encode(postingsKey(terms.get(i)));
+		}
+
+		List<Object> res;
+		Response<Long> retired = null;
+		Jedis jedis = pool.getResource();
+		try {
+			// allocated once, so retries don't use up docIds
+			int docId = (int) (jedis.incr(NEXT_DOC_ID) - 1);
+			String id = Integer.toString(docId);
+			while (true) {
+				jedis.watch(idKey);
+				String oldId = jedis.get(idKey);
+
+				Transaction t = jedis.multi();
+				t.set(idKey, id);
+				t.hset(DOC_URLS, id, url);
+
+				// if this page has already been indexed, retire the old docId
+				if (oldId != null) {
+					t.hdel(DOC_URLS, oldId);
+					retired = t.incr(RETIRED_DOCS);
+				}
+
+				for (int i=0; i<keys.length; i++) {
+					t.append(keys[i], encodePosting(docId, tc.get(terms.get(i))));
+				}
+
+				// exec returns null if the watched key changed
+				res = t.exec();
+				if (res != null) {
+					break;
+				}
+				retired = null;
+			}
+		} finally {
+			pool.returnResource(jedis);
+		}
+		if (retired != null && retired.get() >= COMPACT_THRESHOLD) {
+			compact();
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the number of docIds retired since the last compact.
+	 */
+	private long retiredCount() {
+		Jedis jedis = pool.getResource();
+		try {
+			String count = jedis.get(RETIRED_DOCS);
+			return count == null ? 0 : Long.parseLong(count);
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	/**
+	 * Removes the postings of retired docIds, and the postings keys of
+	 * terms that are only on retired pages.
+	 *
+	 * Scans every postings key, so it takes time in proportion to the size
+	 * of the index.  Each key that needs to change is rewritten in a
+	 * transaction that watches it, so postings appended by other clients
+	 * in the meantime are not lost.
+	 *
+	 * @return the number of keys rewritten or deleted
+	 */
+	public int compact() {
+		int changed = 0;
+		long retired = retiredCount();
+		Iterator<String> it = new KeyScanner(pool, POSTINGS_PREFIX + "*", PIPELINE_BATCH);
+		List<String> batch = new ArrayList<String>();
+		while (it.hasNext()) {
+			batch.add(it.next());
+			if (batch.size() == PIPELINE_BATCH || !it.hasNext()) {
+				changed += compactBatch(batch);
+				batch.clear();
+			}
+		}
+
+		// retirements that happened during the scan are counted next time
+		Jedis jedis = pool.getResource();
+		try {
+			jedis.decrBy(RETIRED_DOCS, retired);
+		} finally {
+			pool.returnResource(jedis);
+		}
+		return changed;
+	}
+
+	/**
+	 * Compacts the postings keys in a batch that need it.
+	 *
+	 * @return the number of keys rewritten or deleted
+	 */
+	private int compactBatch(List<String> keys) {
+		Jedis jedis = pool.getResource();
+		try {
+			List<String> dead = deadKeys(jedis, keys);
+			for (String key: dead) {
+				compactKey(jedis, encode(key));
+			}
+			return dead.size();
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	/**
+	 * Returns the keys in a batch that have postings for retired docIds.
+	 */
+	private List<String> deadKeys(Jedis jedis, List<String> keys) {
+		List<Response<byte[]>> responses = new ArrayList<Response<byte[]>>();
+		Pipeline p = jedis.pipelined();
+		for (String key: keys) {
+			responses.add(p.get(encode(key)));
+		}
+		p.sync();
+
+		List<int[]> postings = new ArrayList<int[]>();
+		Set<String> docIds = new LinkedHashSet<String>();
+		for (Response<byte[]> response: responses) {
+			int[] pairs = decode(response.get());
+			postings.add(pairs);
+			for (int i=0; i<pairs.length; i+=2) {
+				docIds.add(Integer.toString(pairs[i]));
+			}
+		}
+		Map<String, String> urls = getURLsForDocIds(jedis, docIds);
+
+		List<String> dead = new ArrayList<String>();
+		for (int j=0; j<keys.size(); j++) {
+			int[] pairs = postings.get(j);
+			for (int i=0; i<pairs.length; i+=2) {
+				if (!urls.containsKey(Integer.toString(pairs[i]))) {
+					dead.add(keys.get(j));
+					break;
+				}
+			}
+		}
+		return dead;
+	}
+
+	/**
+	 * Rewrites one postings key with only the live docIds.
+	 */
+	private void compactKey(Jedis jedis, byte[] key) {
+		while (true) {
+			jedis.watch(key);
+			int[] pairs = decode(jedis.get(key));
+			Set<String> docIds = new LinkedHashSet<String>();
+			for (int i=0; i<pairs.length; i+=2) {
+				docIds.add(Integer.toString(pairs[i]));
+			}
+			Map<String, String> urls = getURLsForDocIds(jedis, docIds);
+
+			byte[] buffer = new byte[pairs.length * 5];
+			int length = 0;
+			for (int i=0; i<pairs.length; i+=2) {
+				if (urls.containsKey(Integer.toString(pairs[i]))) {
+					length = PostingsList.writeVarInt(buffer, length, pairs[i]);
+					length = PostingsList.writeVarInt(buffer, length, pairs[i+1]);
+				}
+			}
+			Transaction t = jedis.multi();
+			if (length == 0) {
+				t.del(key);
+			} else {
+				byte[] live = new byte[length];
+				System.arraycopy(buffer, 0, live, 0, length);
+				t.set(key, live);
+			}
+			if (t.exec() != null) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Copies the pages in a JedisIndex into this index.
+	 *
+	 * Pages that are already in this index are skipped, so the migration
+	 * can be stopped and restarted, and it can run while the old index is
+	 * still in use.  The old keys are left alone; once everything uses the
+	 * new index, they can be removed with JedisIndex.deleteURLSets and
+	 * JedisIndex.deleteTermCounters.
+	 *
+	 * @param old
+	 * @return the number of pages copied
+	 */
+	public int migrate(JedisIndex old) {
+		int count = 0;
+		Iterator<String> it = old.urlIterator();
+		while (it.hasNext()) {
+			String url = it.next();
+			if (!isIndexed(url)) {
+				pushTermCounterToRedis(old.getTermCounter(url));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Set<String> termSet() {
+		Set<String> terms = new HashSet<String>();
+		Iterator<String> it = KeyScanner.suffixes(
+				new KeyScanner(pool, POSTINGS_PREFIX + "*", PIPELINE_BATCH), POSTINGS_PREFIX);
+		while (it.hasNext()) {
+			terms.add(it.next());
+		}
+		return terms;
+	}
+
+	/**
+	 * Estimates the number of pages that contain a term from the length
+	 * of its postings, without reading them.
+	 *
+	 * The estimate is an upper bound: it assumes every posting takes
+	 * MIN_POSTING_SIZE bytes, and counts dead postings until compact
+	 * removes them.
+	 */
+	@Override
+	public int docFrequency(String term) {
+		return docFrequencies(Collections.singleton(term)).get(term);
+	}
+
+	/**
+	 * Estimates the number of pages that contain each of several terms,
+	 * as docFrequency does, with one pipelined round trip.
+	 *
+	 * @param terms
+	 * @return Map from term to estimate.
+	 */
+	public Map<String, Integer> docFrequencies(Collection<String> terms) {
+		List<String> termList = new ArrayList<String>(new LinkedHashSet<String>(terms));
+		List<Response<Long>> lengths = new ArrayList<Response<Long>>(termList.size());
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			for (String term: termList) {
+				lengths.add(p.strlen(encode(postingsKey(term))));
+			}
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int i=0; i<termList.size(); i++) {
+			map.put(termList.get(i), (int) (lengths.get(i).get() / MIN_POSTING_SIZE));
+		}
+		return map;
+	}
+
+	@Override
+	public Map<String, Integer> getCountsForAll(Collection<String> terms) {
+		return null;
+	}
+
+	/**
+	 * Looks up the docIds of the given pages and checks the postings of
+	 * a term for them.
+	 *
+	 * The postings still have to be read, but only the given pages are
+	 * translated between URLs and docIds, which is most of the cost of
+	 * getCounts.  Uses one pipelined round trip.
+	 *
+	 * @param term
+	 * @param urls
+	 * @return Set of URLs.
+	 */
+	@Override
+	public Set<String> containing(String term, Collection<String> urls) {
+		Set<String> set = new HashSet<String>();
+		if (urls.isEmpty()) {
+			return set;
+		}
+		List<String> list = new ArrayList<String>(urls);
+		Response<List<String>> ids;
+		Response<byte[]> postings;
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			String[] idKeys = new String[list.size()];
+			for (int i=0; i<idKeys.length; i++) {
+				idKeys[i] = docIdKey(list.get(i));
+			}
+			ids = p.mget(idKeys);
+			postings = p.get(encode(postingsKey(term)));
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		// stale postings have docIds that no URL maps to any more
+		Map<Integer, String> byDocId = new HashMap<Integer, String>();
+		for (int i=0; i<list.size(); i++) {
+			String id = ids.get().get(i);
+			if (id != null) {
+				byDocId.put(Integer.parseInt(id), list.get(i));
+			}
+		}
+		int[] pairs = decode(postings.get());
+		for (int i=0; i<pairs.length; i+=2) {
+			String url = byDocId.get(pairs[i]);
+			if (url != null) {
+				set.add(url);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Migrates the index in the old layout to the compact layout.
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		JedisConnectionPool pool = JedisMaker.makePool();
+		JedisIndex old = new JedisIndex(pool);
+		CompactJedisIndex index = new CompactJedisIndex(pool);
+
+		int count = index.migrate(old);
+		System.out.println("Migrated " + count + " pages.");
+
+		Map<String, Integer> map = index.getCounts("the");
+		for (Entry<String, Integer> entry: map.entrySet()) {
+			System.out.println(entry);
+		}
+	}
+}
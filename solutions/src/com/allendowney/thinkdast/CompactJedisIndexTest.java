@@ -0,0 +1,186 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * @author downey
+ *
+ */
+public class CompactJedisIndexTest {
+
+	private static String url1, url2;
+	private Jedis jedis;
+	private CompactJedisIndex index;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		jedis = JedisMaker.make();
+		index = new CompactJedisIndex(jedis);
+
+		loadIndex(index);
+	}
+
+	/**
+	 * Loads the index with two pages read from files, unless they are
+	 * already there.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private static void loadIndex(CompactJedisIndex index) throws IOException {
+		WikiFetcher wf = new WikiFetcher();
+
+		url1 = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		if (!index.isIndexed(url1)) {
+			Elements paragraphs = wf.readWikipedia(url1);
+			index.indexPage(url1, paragraphs);
+		}
+
+		url2 = "https://en.wikipedia.org/wiki/Programming_language";
+		if (!index.isIndexed(url2)) {
+			Elements paragraphs = wf.readWikipedia(url2);
+			index.indexPage(url2, paragraphs);
+		}
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		jedis.close();
+	}
+
+	/**
+	 * Test method for {@link CompactJedisIndex#docFrequency(String)}.
+	 */
+	@Test
+	public void testDocFrequency() {
+		int java = index.getCounts("java").size();
+		assertThat(index.docFrequency("java") >= java, is(true));
+		assertThat(index.docFrequency("nosuchterm"), is(0));
+
+		Map<String, Integer> map = index.docFrequencies(Arrays.asList("java", "the", "java"));
+		assertThat(map.size(), is(2));
+		assertThat(map.get("java"), is(index.docFrequency("java")));
+		assertThat(map.get("the") >= index.getCounts("the").size(), is(true));
+	}
+
+	/**
+	 * Test method for {@link CompactJedisIndex#containing(String, java.util.Collection)}.
+	 */
+	@Test
+	public void testContaining() {
+		String other = "https://en.wikipedia.org/wiki/Tea";
+		Set<String> set = index.containing("java", Arrays.asList(url1, url2, other));
+		assertThat(set, is((Set<String>) new HashSet<String>(Arrays.asList(url1, url2))));
+		assertThat(index.containing("nosuchterm", Arrays.asList(url1)).isEmpty(), is(true));
+		assertThat(index.containing("java", new ArrayList<String>()).isEmpty(), is(true));
+	}
+
+	/**
+	 * Test method for {@link CompactJedisIndex#getCounts(java.lang.String)}.
+	 */
+	@Test
+	public void testGetCounts() {
+		Map<String, Integer> map = index.getCounts("the");
+		assertThat(map.get(url1), is(339));
+		assertThat(map.get(url2), is(264));
+
+		Map<String, MyObjectIntMap<String>> counts = index.getCounts(Arrays.asList("the", "nosuchterm"));
+		assertThat(counts.get("the").get(url1), is(339));
+		assertThat(counts.get("nosuchterm").isEmpty(), is(true));
+		assertThat(index.termSet().contains("java"), is(true));
+	}
+
+	/**
+	 * Test method for {@link CompactJedisIndex#migrate(JedisIndex)}.
+	 */
+	@Test
+	public void testMigrate() {
+		JedisIndex old = new JedisIndex(jedis);
+		TermCounter tc = new TermCounter("https://en.wikipedia.org/wiki/CompactJedisIndexTest");
+		tc.put("compactjedisindextest", 7);
+		old.pushTermCounterToRedis(tc);
+
+		index.migrate(old);
+		assertThat(index.isIndexed(tc.getLabel()), is(true));
+		assertThat(index.getCounts("compactjedisindextest").get(tc.getLabel()), is(7));
+
+		// running it again copies nothing new
+		assertThat(index.migrate(old), is(0));
+	}
+
+	/**
+	 * Checks that reindexing a page replaces its counts, and that compact
+	 * removes the old postings.
+	 */
+	@Test
+	public void testReindex() {
+		String url = "https://en.wikipedia.org/wiki/CompactReindexTest";
+		byte[] key = "Postings:compactreindextest".getBytes();
+		byte[] gone = "Postings:compactvanishedtest".getBytes();
+
+		TermCounter tc = new TermCounter(url);
+		tc.put("compactreindextest", 3);
+		tc.put("compactvanishedtest", 1);
+		index.pushTermCounterToRedis(tc);
+		int length = CompactJedisIndex.decode(jedis.get(key)).length;
+
+		for (int i=0; i<2; i++) {
+			tc = new TermCounter(url);
+			tc.put("compactreindextest", 4 + i);
+			index.pushTermCounterToRedis(tc);
+
+			// the new posting is appended, and the old one is left
+			assertThat(CompactJedisIndex.decode(jedis.get(key)).length, is(length + 2 * (i+1)));
+			assertThat(index.getCounts("compactreindextest").get(url), is(4 + i));
+		}
+
+		// compact removes the old postings, and the term that is no longer
+		// on the page
+		assertThat(index.getCounts("compactvanishedtest").isEmpty(), is(true));
+		assertThat(jedis.exists(gone), is(true));
+		index.compact();
+		assertThat(jedis.exists(gone), is(false));
+		assertThat(index.termSet().contains("compactvanishedtest"), is(false));
+		assertThat(CompactJedisIndex.decode(jedis.get(key)).length, is(2));
+		assertThat(index.getCounts("compactreindextest").get(url), is(5));
+	}
+
+	/**
+	 * Test method for {@link CompactJedisIndex#decode(byte[])}.
+	 */
+	@Test
+	public void testEncodeDecode() {
+		byte[] a = CompactJedisIndex.encodePosting(3, 300);
+		byte[] b = CompactJedisIndex.encodePosting(100000, 1);
+		byte[] both = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, both, a.length, b.length);
+
+		int[] pairs = CompactJedisIndex.decode(both);
+		assertThat(pairs.length, is(4));
+		assertThat(pairs[0], is(3));
+		assertThat(pairs[1], is(300));
+		assertThat(pairs[2], is(100000));
+		assertThat(pairs[3], is(1));
+	}
+}
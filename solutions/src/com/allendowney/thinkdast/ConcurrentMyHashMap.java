@@ -0,0 +1,426 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Thread-safe implementation of a HashMap using lock striping.
+ *
+ * Like MyBetterMap, it uses `hashCode` to split the keys among a fixed
+ * number of stripes; each stripe is a MyFixedHashMap with its own
+ * read-write lock.  Threads that touch different stripes never block
+ * each other, and each stripe resizes on its own, holding only its own
+ * lock.
+ *
+ * As with java.util.concurrent.ConcurrentHashMap, null values are not
+ * allowed, since null means "absent" for putIfAbsent, compute, and merge.
+ *
+ * @author downey
+ * @param <K>
+ * @param <V>
+ *
+ */
+public class ConcurrentMyHashMap<K, V> implements ConcurrentMap<K, V> {
+
+	private final List<MyFixedHashMap<K, V>> stripes;
+	private final List<ReadWriteLock> locks;
+
+	/**
+	 * Initialize the map with 16 stripes.
+	 */
+	public ConcurrentMyHashMap() {
+		this(16);
+	}
+
+	/**
+	 * Initialize the map with at least `k` stripes.
+	 *
+	 * @param k
+	 */
+	public ConcurrentMyHashMap(int k) {
+		int n = 1;
+		while (n < k) {
+			n *= 2;
+		}
+		stripes = new ArrayList<MyFixedHashMap<K, V>>(n);
+		locks = new ArrayList<ReadWriteLock>(n);
+		for (int i=0; i<n; i++) {
+			stripes.add(new MyFixedHashMap<K, V>());
+			locks.add(new ReentrantReadWriteLock());
+		}
+	}
+
+	/**
+	 * Uses the hashCode to find the stripe that would/should contain the given key.
+	 *
+	 * The sub-maps inside each stripe use the low bits of the hashCode,
+	 * so here we mix the bits and use the high ones; otherwise every key
+	 * in a stripe would land in the same few sub-maps.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private int chooseStripe(Object key) {
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode() * 0x9e3779b9;
+		h ^= (h >>> 16);
+		return (h & 0x7fffffff) % stripes.size();
+	}
+
+	/**
+	 * Throws NullPointerException if `value` is null.
+	 *
+	 * @param value
+	 */
+	private static void checkValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException("null values are not allowed");
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i=0; i<stripes.size(); i++) {
+			Lock lock = locks.get(i).writeLock();
+			lock.lock();
+			try {
+				stripes.get(i).clear();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object target) {
+		int i = chooseStripe(target);
+		Lock lock = locks.get(i).readLock();
+		lock.lock();
+		try {
+			return stripes.get(i).containsKey(target);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean containsValue(Object target) {
+		for (int i=0; i<stripes.size(); i++) {
+			Lock lock = locks.get(i).readLock();
+			lock.lock();
+			try {
+				if (stripes.get(i).containsValue(target)) {
+					return true;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public V get(Object key) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).readLock();
+		lock.lock();
+		try {
+			return stripes.get(i).get(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns a copy of the keys.
+	 *
+	 * Each stripe is copied under its own lock, so the result is not an
+	 * atomic snapshot of the whole map.
+	 */
+	@Override
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<K>();
+		for (int i=0; i<stripes.size(); i++) {
+			Lock lock = locks.get(i).readLock();
+			lock.lock();
+			try {
+				set.addAll(stripes.get(i).keySet());
+			} finally {
+				lock.unlock();
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		checkValue(value);
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			return stripes.get(i).put(key, value);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> map) {
+		for (Map.Entry<? extends K, ? extends V> entry: map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			return stripes.get(i).remove(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds up the sizes of the stripes.
+	 *
+	 * Like keySet, this is not atomic with respect to concurrent updates.
+	 */
+	@Override
+	public int size() {
+		int total = 0;
+		for (int i=0; i<stripes.size(); i++) {
+			Lock lock = locks.get(i).readLock();
+			lock.lock();
+			try {
+				total += stripes.get(i).size();
+			} finally {
+				lock.unlock();
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public Collection<V> values() {
+		List<V> list = new ArrayList<V>();
+		for (int i=0; i<stripes.size(); i++) {
+			Lock lock = locks.get(i).readLock();
+			lock.lock();
+			try {
+				list.addAll(stripes.get(i).values());
+			} finally {
+				lock.unlock();
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		checkValue(value);
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V oldValue = map.get(key);
+			if (oldValue == null) {
+				map.put(key, value);
+			}
+			return oldValue;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V oldValue = map.get(key);
+			if (oldValue != null && oldValue.equals(value)) {
+				map.remove(key);
+				return true;
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		checkValue(newValue);
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V current = map.get(key);
+			if (current != null && current.equals(oldValue)) {
+				map.put(key, newValue);
+				return true;
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		checkValue(value);
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			if (map.containsKey(key)) {
+				return map.put(key, value);
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Computes a new value for `key` while holding the stripe's lock.
+	 *
+	 * The function must not update this map, since the lock is held.
+	 */
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V newValue = function.apply(key, map.get(key));
+			if (newValue == null) {
+				map.remove(key);
+			} else {
+				map.put(key, newValue);
+			}
+			return newValue;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V value = map.get(key);
+			if (value == null) {
+				value = function.apply(key);
+				if (value != null) {
+					map.put(key, value);
+				}
+			}
+			return value;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V oldValue = map.get(key);
+			if (oldValue == null) {
+				return null;
+			}
+			V newValue = function.apply(key, oldValue);
+			if (newValue == null) {
+				map.remove(key);
+			} else {
+				map.put(key, newValue);
+			}
+			return newValue;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Combines `value` with the existing value for `key`, if any.
+	 *
+	 * For example, merge(term, 1, sum) counts a term atomically.
+	 */
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+		checkValue(value);
+		int i = chooseStripe(key);
+		Lock lock = locks.get(i).writeLock();
+		lock.lock();
+		try {
+			MyFixedHashMap<K, V> map = stripes.get(i);
+			V oldValue = map.get(key);
+			V newValue = oldValue == null ? value : function.apply(oldValue, value);
+			if (newValue == null) {
+				map.remove(key);
+			} else {
+				map.put(key, newValue);
+			}
+			return newValue;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		ConcurrentMap<String, Integer> map = new ConcurrentMyHashMap<String, Integer>();
+		map.put("Word1", 1);
+		map.putIfAbsent("Word1", 11);
+		map.putIfAbsent("Word2", 2);
+		System.out.println(map.get("Word1"));
+
+		for (String key: map.keySet()) {
+			System.out.println(key + ", " + map.get(key));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class ConcurrentMyHashMapTest extends MyLinearMapTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		map = new ConcurrentMyHashMap<String, Integer>();
+		map.put("One", 1);
+		map.put("Two", 2);
+		map.put("Three", 3);
+		map.put(null, 0);
+	}
+
+	/**
+	 * Test method for {@link ConcurrentMyHashMap#merge}, with several
+	 * threads counting the same keys.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentMerge() throws InterruptedException {
+		final ConcurrentMyHashMap<String, Integer> counts = new ConcurrentMyHashMap<String, Integer>(4);
+		final BiFunction<Integer, Integer, Integer> sum = new BiFunction<Integer, Integer, Integer>() {
+			@Override
+			public Integer apply(Integer a, Integer b) {
+				return a + b;
+			}
+		};
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<4; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i=0; i<10000; i++) {
+						counts.merge(Integer.toString(i % 500), 1, sum);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		assertThat(counts.size(), is(500));
+		for (int i=0; i<500; i++) {
+			assertThat(counts.get(Integer.toString(i)), is(80));
+		}
+	}
+
+	/**
+	 * Test method for {@link ConcurrentMyHashMap#putIfAbsent} and
+	 * {@link ConcurrentMyHashMap#replace}.
+	 */
+	@Test
+	public void testPutIfAbsent() {
+		ConcurrentMyHashMap<String, Integer> m = (ConcurrentMyHashMap<String, Integer>) map;
+		assertThat(m.putIfAbsent("One", 11), is(1));
+		assertThat(m.putIfAbsent("Four", 4), nullValue());
+		assertThat(m.get("Four"), is(4));
+		assertThat(m.replace("One", 2, 12), is(false));
+		assertThat(m.replace("One", 1, 12), is(true));
+		assertThat(m.remove("One", 12), is(true));
+		assertThat(m.containsKey("One"), is(false));
+	}
+}
@@ -0,0 +1,653 @@
+package com.allendowney.thinkdast;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jsoup.select.Elements;
+
+/**
+ * Crawls pages with several threads.
+ *
+ * WikiCrawler fetches, indexes, and extracts links one page at a time,
+ * so it spends most of its time waiting for the network.  CrawlEngine
+ * splits the work into stages:
+ *
+ *   - a pool of fetch threads takes URLs from a shared frontier, fetches
+ *     the pages, and adds their links to the frontier;
+ *
+ *   - a single index thread takes the fetched pages from a bounded queue
+ *     and adds them to the index.  If indexing falls behind, the queue
+ *     fills up and the fetch threads wait, so memory use is bounded.
+ *
+ * Fetches are rate limited per host by a HostScheduler.  The fetch
+ * threads move URLs from the frontier to the scheduler, a few at a time,
+ * and the scheduler hands out the next URL whose host is ready, so a
+ * thread does not sleep on one busy host while others could be fetched.
+ *
+ * Each URL goes into the frontier at most once: a BloomFilter remembers
+ * the URLs that have been added, so links to popular pages are dropped
+ * before they are queued, and the index is only asked about new URLs.
+ * A false positive means a page is not crawled, which is usually an
+ * acceptable price for a set that takes a few bits per URL.  The filter
+ * can be saved and passed to setSeenFilter when the crawl restarts.
+ *
+ * If the frontier is a DiskFrontier, the engine checkpoints it every 100
+ * indexed pages (see setCheckpoint), and saves the seen filter at the
+ * same point, so a crawl that crashes can resume from there.  URLs that
+ * have left the frontier but whose pages are not indexed yet are saved
+ * with the frontier, and the filter is saved after the frontier, so no
+ * URL the filter has seen is lost; at worst a few pages are fetched
+ * again.
+ *
+ * The index is used by the fetch threads, to skip pages that are already
+ * indexed, and by the index thread.  Unless setIndexThreadSafe(true) is
+ * called, these calls are made one at a time.
+ *
+ * @author downey
+ *
+ */
+public class CrawlEngine {
+
+	/**
+	 * Gets the paragraphs of a page.
+	 */
+	public interface PageSource {
+		public Elements fetch(String url) throws IOException;
+	}
+
+	// how long an idle fetch thread waits for the frontier
+	private static final long POLL_MILLIS = 50;
+
+	// number of URLs per fetch thread that are moved to the scheduler
+	private static final int SCHEDULED_PER_THREAD = 16;
+
+	// size of the default seen filter; it grows as needed
+	private static final int SEEN_CAPACITY = 1 << 16;
+	private static final double SEEN_FALSE_POSITIVE_RATE = 0.001;
+
+	// marks the end of the pages for the index thread
+	private static final Page END = new Page(null, null);
+
+	// how often a DiskFrontier is checkpointed, by default
+	private static final int CHECKPOINT_PAGES = 100;
+
+	private final SearchIndex index;
+	private final PageSource source;
+	private final int threads;
+	private volatile boolean indexThreadSafe = false;
+
+	// URLs waiting to be fetched
+	private final BlockingQueue<String> frontier;
+
+	// the frontier, if it can be checkpointed, and how often to do it
+	private final DiskFrontier diskFrontier;
+	private volatile int checkpointPages = CHECKPOINT_PAGES;
+	private volatile File seenFile;
+
+	// URLs taken from the frontier whose pages are not indexed yet
+	private final Set<String> inFlight =
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	// held to move URLs between the seen filter, the frontier, and
+	// inFlight; held exclusively to checkpoint them
+	private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+	// URLs that have been added to the frontier
+	private volatile BloomFilter seen = new BloomFilter(SEEN_CAPACITY, SEEN_FALSE_POSITIVE_RATE);
+
+	// pages waiting to be indexed
+	private final BlockingQueue<Page> indexQueue;
+
+	// URLs taken from the frontier, waiting for their hosts
+	private final HostScheduler scheduler = new HostScheduler();
+
+	// URLs in the frontier and the scheduler plus URLs being processed;
+	// the crawl is over when this gets to zero
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final AtomicInteger started = new AtomicInteger();
+	private final AtomicInteger fetched = new AtomicInteger();
+	private final AtomicInteger indexed = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger duplicates = new AtomicInteger();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	private volatile boolean stopping = false;
+
+	/**
+	 * A fetched page.
+	 */
+	private static class Page {
+		private final String url;
+		private final Elements paragraphs;
+
+		private Page(String url, Elements paragraphs) {
+			this.url = url;
+			this.paragraphs = paragraphs;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param index
+	 * @param source              where pages come from, like network()
+	 * @param threads             number of fetch threads
+	 * @param indexQueueCapacity  number of fetched pages that can wait to be indexed
+	 */
+	public CrawlEngine(SearchIndex index, PageSource source, int threads, int indexQueueCapacity) {
+		this(index, source, threads, indexQueueCapacity, new LinkedBlockingQueue<String>());
+	}
+
+	/**
+	 * Constructor with a given frontier, like a DiskFrontier, which might
+	 * hold URLs left by an earlier crawl.
+	 *
+	 * @param index
+	 * @param source              where pages come from, like network()
+	 * @param threads             number of fetch threads
+	 * @param indexQueueCapacity  number of fetched pages that can wait to be indexed
+	 * @param frontier            queue of URLs waiting to be fetched
+	 */
+	public CrawlEngine(SearchIndex index, PageSource source, int threads, int indexQueueCapacity,
+			BlockingQueue<String> frontier) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.index = index;
+		this.source = source;
+		this.threads = threads;
+		this.indexQueue = new ArrayBlockingQueue<Page>(indexQueueCapacity);
+		this.frontier = frontier;
+		this.diskFrontier = frontier instanceof DiskFrontier ? (DiskFrontier) frontier : null;
+		pending.set(frontier.size());
+	}
+
+	/**
+	 * Returns a PageSource that downloads pages from the web.
+	 *
+	 * @return
+	 */
+	public static PageSource network() {
+		final WikiFetcher wf = new WikiFetcher();
+		return new PageSource() {
+			@Override
+			public Elements fetch(String url) throws IOException {
+				return wf.download(url);
+			}
+		};
+	}
+
+	/**
+	 * Returns a PageSource that reads pages from src/resources.
+	 *
+	 * @return
+	 */
+	public static PageSource files() {
+		final WikiFetcher wf = new WikiFetcher();
+		return new PageSource() {
+			@Override
+			public Elements fetch(String url) throws IOException {
+				return wf.readWikipedia(url);
+			}
+		};
+	}
+
+	/**
+	 * Sets the minimum time between the starts of fetches to one host,
+	 * for hosts that don't have their own rate.
+	 *
+	 * @param minInterval  milliseconds
+	 */
+	public void setMinInterval(long minInterval) {
+		double rate = minInterval == 0 ? Double.POSITIVE_INFINITY : 1000.0 / minInterval;
+		scheduler.setDefaultRate(rate, 1);
+	}
+
+	/**
+	 * Returns the scheduler, to set rates per host or read its metrics.
+	 *
+	 * @return
+	 */
+	public HostScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Says whether the index can be used by several threads at once, as
+	 * JedisIndex can.
+	 *
+	 * @param indexThreadSafe
+	 */
+	public void setIndexThreadSafe(boolean indexThreadSafe) {
+		this.indexThreadSafe = indexThreadSafe;
+	}
+
+	/**
+	 * Replaces the filter of URLs that have been seen, for example with
+	 * one saved by an earlier crawl.
+	 *
+	 * @param seen
+	 */
+	public void setSeenFilter(BloomFilter seen) {
+		this.seen = seen;
+	}
+
+	/**
+	 * Returns the filter of URLs that have been seen, so it can be saved.
+	 *
+	 * @return
+	 */
+	public BloomFilter getSeenFilter() {
+		return seen;
+	}
+
+	/**
+	 * Sets how often the frontier is checkpointed, and where the seen
+	 * filter is saved when it is.
+	 *
+	 * @param pages     number of pages indexed between checkpoints, or 0
+	 *                  to checkpoint only at the end of a crawl
+	 * @param seenFile  where to save the seen filter, or null not to
+	 * @throws IllegalStateException if the frontier is not a DiskFrontier
+	 */
+	public void setCheckpoint(int pages, File seenFile) {
+		if (diskFrontier == null) {
+			throw new IllegalStateException("the frontier is not a DiskFrontier");
+		}
+		this.checkpointPages = pages;
+		this.seenFile = seenFile;
+	}
+
+	/**
+	 * Checkpoints the frontier, with the URLs that are being processed,
+	 * then saves the seen filter.
+	 *
+	 * Saving the filter second means that after a crash the filter can
+	 * be older than the frontier, which only lets a few URLs be queued
+	 * twice, but never newer, which would drop the URLs added in between.
+	 *
+	 * @throws IOException
+	 * @throws IllegalStateException if the frontier is not a DiskFrontier
+	 */
+	public void checkpoint() throws IOException {
+		if (diskFrontier == null) {
+			throw new IllegalStateException("the frontier is not a DiskFrontier");
+		}
+		checkpointLock.writeLock().lock();
+		try {
+			diskFrontier.checkpoint(new ArrayList<String>(inFlight));
+			File file = seenFile;
+			if (file != null) {
+				seen.save(file);
+			}
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a URL to the frontier, unless it has been seen already.
+	 *
+	 * @param url
+	 */
+	public void add(String url) {
+		checkpointLock.readLock().lock();
+		try {
+			if (seen.add(url)) {
+				pending.incrementAndGet();
+				frontier.offer(url);
+				return;
+			}
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+		duplicates.incrementAndGet();
+	}
+
+	/**
+	 * Puts a URL that was taken from the frontier back.
+	 */
+	private void putBack(String url) {
+		checkpointLock.readLock().lock();
+		try {
+			frontier.offer(url);
+			inFlight.remove(url);
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Takes a URL from the frontier and marks it as in flight.
+	 *
+	 * @param wait  whether to wait a little for a URL
+	 * @return null if there is none
+	 * @throws InterruptedException
+	 */
+	private String pollFrontier(boolean wait) throws InterruptedException {
+		checkpointLock.readLock().lock();
+		try {
+			String url = wait ? frontier.poll(POLL_MILLIS, TimeUnit.MILLISECONDS) : frontier.poll();
+			if (url != null) {
+				inFlight.add(url);
+			}
+			return url;
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Crawls until maxPages pages have been fetched, the frontier is
+	 * empty, or shutdown is called.
+	 *
+	 * Returns after the pages that were fetched have been indexed.  URLs
+	 * left in the frontier are kept, so crawl can be called again.
+	 *
+	 * @param maxPages
+	 * @return the number of pages indexed
+	 * @throws InterruptedException
+	 */
+	public int crawl(final int maxPages) throws InterruptedException {
+		stopping = false;
+		started.set(0);
+		int indexedBefore = indexed.get();
+
+		Thread indexer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				indexLoop();
+			}
+		}, "CrawlEngine-indexer");
+		indexer.start();
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "CrawlEngine-fetcher-" + count.incrementAndGet());
+			}
+		});
+		for (int i=0; i<threads; i++) {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					fetchLoop(maxPages);
+				}
+			});
+		}
+
+		try {
+			workers.shutdown();
+			while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+				// keep waiting
+			}
+		} finally {
+			// if we were interrupted, stop the fetchers, then let the
+			// indexer finish what has been fetched
+			stopping = true;
+			workers.shutdownNow();
+			indexQueue.put(END);
+			indexer.join();
+
+			// keep the scheduled URLs for the next crawl
+			List<String> scheduled = new ArrayList<String>();
+			scheduler.drainTo(scheduled);
+			for (String url: scheduled) {
+				putBack(url);
+			}
+		}
+		if (diskFrontier != null) {
+			try {
+				checkpoint();
+			} catch (IOException e) {
+				errors.incrementAndGet();
+				System.err.println("Error saving a checkpoint: " + e);
+			}
+		}
+		return indexed.get() - indexedBefore;
+	}
+
+	/**
+	 * Asks a running crawl to stop.
+	 *
+	 * Pages that are being fetched are finished and indexed; no new pages
+	 * are started.  Can be called from any thread.
+	 */
+	public void shutdown() {
+		stopping = true;
+	}
+
+	/**
+	 * Takes URLs from the frontier and fetches them.
+	 *
+	 * @param maxPages
+	 */
+	private void fetchLoop(int maxPages) {
+		while (!stopping) {
+			String url;
+			try {
+				url = nextUrl();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (url == null) {
+				if (pending.get() == 0) {
+					return;
+				}
+				continue;
+			}
+
+			// once the page is back in the frontier or in the index queue,
+			// it is no longer in flight here
+			boolean handedOff = false;
+			try {
+				if (isIndexed(url)) {
+					skipped.incrementAndGet();
+					continue;
+				}
+				if (started.incrementAndGet() > maxPages) {
+					// put it back for the next crawl
+					pending.incrementAndGet();
+					putBack(url);
+					handedOff = true;
+					stopping = true;
+					return;
+				}
+				System.out.println("Crawling " + url);
+				Elements paragraphs = source.fetch(url);
+				fetched.incrementAndGet();
+
+				// the links go first, so that when a checkpoint no longer
+				// counts this page as in flight, its links are saved
+				for (String link: WikiCrawler.internalLinks(paragraphs)) {
+					add(link);
+				}
+
+				// waits if the indexer is behind
+				indexQueue.put(new Page(url, paragraphs));
+				handedOff = true;
+			} catch (InterruptedException e) {
+				pending.incrementAndGet();
+				putBack(url);
+				handedOff = true;
+				return;
+			} catch (IOException | RuntimeException e) {
+				errors.incrementAndGet();
+				System.err.println("Error crawling " + url + ": " + e);
+			} finally {
+				if (!handedOff) {
+					inFlight.remove(url);
+				}
+				pending.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Takes pages from the index queue and indexes them, until END.
+	 */
+	private void indexLoop() {
+		int sinceCheckpoint = 0;
+		while (true) {
+			Page page;
+			try {
+				page = indexQueue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (page == END) {
+				return;
+			}
+			try {
+				indexPage(page.url, page.paragraphs);
+				indexed.incrementAndGet();
+			} catch (RuntimeException e) {
+				errors.incrementAndGet();
+				System.err.println("Error indexing " + page.url + ": " + e);
+			}
+			inFlight.remove(page.url);
+
+			int pages = checkpointPages;
+			if (diskFrontier != null && pages > 0 && ++sinceCheckpoint >= pages) {
+				sinceCheckpoint = 0;
+				try {
+					checkpoint();
+				} catch (IOException e) {
+					errors.incrementAndGet();
+					System.err.println("Error saving a checkpoint: " + e);
+				}
+			}
+		}
+	}
+
+	private boolean isIndexed(String url) {
+		if (indexThreadSafe) {
+			return index.isIndexed(url);
+		}
+		synchronized (index) {
+			return index.isIndexed(url);
+		}
+	}
+
+	private void indexPage(String url, Elements paragraphs) {
+		if (indexThreadSafe) {
+			index.indexPage(url, paragraphs);
+			return;
+		}
+		synchronized (index) {
+			index.indexPage(url, paragraphs);
+		}
+	}
+
+	/**
+	 * Returns the next URL whose host is ready, moving URLs from the
+	 * frontier to the scheduler as needed.
+	 *
+	 * @return null if there is none yet
+	 * @throws InterruptedException
+	 */
+	private String nextUrl() throws InterruptedException {
+		String url = scheduler.poll();
+		if (url != null) {
+			return url;
+		}
+		if (scheduler.size() < threads * SCHEDULED_PER_THREAD) {
+			String next = pollFrontier(scheduler.isEmpty());
+			if (next != null) {
+				try {
+					scheduler.add(next);
+				} catch (IllegalArgumentException e) {
+					errors.incrementAndGet();
+					pending.decrementAndGet();
+					inFlight.remove(next);
+					System.err.println("Error crawling " + next + ": " + e);
+				}
+				return scheduler.poll();
+			}
+			if (scheduler.isEmpty()) {
+				return null;
+			}
+		}
+		return scheduler.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the number of URLs waiting in the frontier.
+	 *
+	 * @return
+	 */
+	public int frontierSize() {
+		return frontier.size() + scheduler.size();
+	}
+
+	public int getFetchedCount() {
+		return fetched.get();
+	}
+
+	public int getIndexedCount() {
+		return indexed.get();
+	}
+
+	/**
+	 * Returns the number of URLs skipped because they were already indexed.
+	 *
+	 * @return
+	 */
+	public int getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * Returns the number of URLs that were not added to the frontier
+	 * because they had been seen before.
+	 *
+	 * @return
+	 */
+	public int getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	public int getErrorCount() {
+		return errors.get();
+	}
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		JedisConnectionPool pool = JedisMaker.makePool(16);
+		JedisIndex index = new JedisIndex(pool);
+
+		CrawlEngine engine = new CrawlEngine(index, network(), 8, 32);
+		engine.setIndexThreadSafe(true);
+		engine.add("https://en.wikipedia.org/wiki/Java_(programming_language)");
+
+		long start = System.currentTimeMillis();
+		int count = engine.crawl(20);
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.println("Indexed " + count + " pages in " + elapsed + " ms, " +
+				engine.getErrorCount() + " errors, " + engine.frontierSize() + " URLs left, " +
+				engine.getScheduler().getThrottledMillis() + " ms throttled");
+		pool.close();
+	}
+}
@@ -0,0 +1,125 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class CrawlEngineTest {
+
+	private static final String URL1 = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+	private static final String URL2 = "https://en.wikipedia.org/wiki/Programming_language";
+
+	/**
+	 * Test method for {@link CrawlEngine#crawl(int)}.
+	 *
+	 * Reads pages from files; links to pages that are not in the files
+	 * count as errors.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testCrawl() throws InterruptedException {
+		LocalIndex index = new LocalIndex();
+		CrawlEngine engine = new CrawlEngine(index, CrawlEngine.files(), 4, 2);
+		engine.setMinInterval(0);
+		engine.add(URL1);
+
+		int count = engine.crawl(100);
+		assertThat(count, is(engine.getFetchedCount()));
+		assertThat(count >= 2, is(true));
+		assertThat(engine.getFetchedCount() + engine.getErrorCount(), is(100));
+		assertThat(index.getCounts("the").get(URL1), is(339));
+		assertThat(index.getCounts("the").get(URL2), is(264));
+
+		// the rest of the frontier is kept for the next crawl
+		assertThat(engine.frontierSize() > 0, is(true));
+
+		// pages that are already indexed are skipped
+		CrawlEngine again = new CrawlEngine(index, CrawlEngine.files(), 2, 2);
+		again.add(URL1);
+		assertThat(again.crawl(10), is(0));
+		assertThat(again.getSkippedCount(), is(1));
+		assertThat(again.frontierSize(), is(0));
+
+		// URLs that have been seen are not queued again
+		again.add(URL1);
+		assertThat(again.getDuplicateCount(), is(1));
+		assertThat(again.frontierSize(), is(0));
+	}
+
+	/**
+	 * Checks that fetches to one host are spaced out, and fetches to
+	 * different hosts are not.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testPoliteness() throws InterruptedException {
+		final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+		CrawlEngine.PageSource source = new CrawlEngine.PageSource() {
+			@Override
+			public Elements fetch(String url) throws IOException {
+				times.add(System.currentTimeMillis());
+				return new Elements();
+			}
+		};
+
+		CrawlEngine engine = new CrawlEngine(new LocalIndex(), source, 4, 4);
+		engine.setMinInterval(100);
+		for (int i=0; i<4; i++) {
+			engine.add("https://en.wikipedia.org/wiki/Page" + i);
+		}
+		long start = System.currentTimeMillis();
+		assertThat(engine.crawl(10), is(4));
+		assertThat(System.currentTimeMillis() - start >= 300, is(true));
+
+		times.clear();
+		for (int i=0; i<4; i++) {
+			engine.add("https://host" + i + ".example.org/wiki/Page");
+		}
+		start = System.currentTimeMillis();
+		assertThat(engine.crawl(10), is(4));
+		assertThat(System.currentTimeMillis() - start < 300, is(true));
+	}
+
+	/**
+	 * Test method for {@link CrawlEngine#shutdown()}.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testShutdown() throws InterruptedException {
+		final LocalIndex index = new LocalIndex();
+		final CrawlEngine[] engine = new CrawlEngine[1];
+		CrawlEngine.PageSource source = new CrawlEngine.PageSource() {
+			@Override
+			public Elements fetch(String url) throws IOException {
+				// every page links to a new page, so the crawl would not end
+				if (engine[0].getFetchedCount() == 5) {
+					engine[0].shutdown();
+				}
+				int i = Integer.parseInt(url.substring(url.lastIndexOf('e') + 1));
+				engine[0].add("https://en.wikipedia.org/wiki/Page" + (i + 1));
+				return new Elements();
+			}
+		};
+		engine[0] = new CrawlEngine(index, source, 2, 1);
+		engine[0].setMinInterval(0);
+		engine[0].add("https://en.wikipedia.org/wiki/Page0");
+
+		int count = engine[0].crawl(Integer.MAX_VALUE);
+		assertThat(count >= 6, is(true));
+		assertThat(count, is(index.numDocs()));
+	}
+}
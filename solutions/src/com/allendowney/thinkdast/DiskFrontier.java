@@ -0,0 +1,606 @@
+package com.allendowney.thinkdast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A FIFO queue of URLs that keeps the front in memory and the rest on
+ * disk, so a crawl frontier can grow without growing the heap.
+ *
+ * At most maxInMemory URLs are kept in memory.  When that many are
+ * waiting, new URLs are appended to segment files in a directory; when
+ * the URLs in memory run out, the next ones are read back from the
+ * oldest segment.  Writes and reads go through fixed-size buffers, so
+ * the memory used does not depend on the number of URLs.  A segment
+ * that has been read is deleted at the next checkpoint.
+ *
+ * The state of the queue is saved in a small file by checkpoint, and
+ * when the queue is closed.  Opening the same directory again resumes
+ * from the last checkpoint: URLs added after it are forgotten, and URLs
+ * polled after it are delivered again.  The owner of the queue decides
+ * when to checkpoint, so it can save its own state, like the URLs it
+ * has seen, at the same point; CrawlEngine and WikiCrawler checkpoint
+ * every few pages.  checkpoint(extra) also saves URLs that have been
+ * polled but not finished, so they are delivered again after a crash.
+ *
+ * The methods are synchronized, and take and poll with a timeout wait
+ * for a URL to be added, so the queue can be the frontier of a
+ * CrawlEngine.  The iterator reads the URLs on disk; the queue should
+ * not be changed while it is in use.
+ *
+ * @author downey
+ *
+ */
+public class DiskFrontier extends AbstractQueue<String> implements BlockingQueue<String>, Closeable {
+
+	// identifies the checkpoint file
+	private static final int MAGIC = 0x46726f6e;
+	private static final String CHECKPOINT = "frontier.meta";
+
+	// size of the read and write buffers; no URL can be longer
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final File dir;
+	private final int maxInMemory;
+	private final long segmentBytes;
+
+	// the front of the queue
+	private final ArrayDeque<String> head = new ArrayDeque<String>();
+
+	// the rest of the queue is on disk, from the reader's position to the
+	// end of the write segment
+	private long diskCount = 0;
+	private SegmentReader reader;
+
+	private int writeSegment;
+	private long writeLength;
+	private FileChannel writer;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+	// segments that have been read, to be deleted at the next checkpoint
+	private final List<Integer> consumed = new ArrayList<Integer>();
+
+	private boolean closed = false;
+
+	/**
+	 * Reads the URLs in one segment file, in order.
+	 */
+	private class SegmentReader implements Closeable {
+		final int segment;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+		// position in the file of the end of the buffered bytes
+		private long position;
+
+		SegmentReader(int segment, long offset) throws IOException {
+			this.segment = segment;
+			this.channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.READ);
+			this.position = offset;
+			buffer.limit(0);
+		}
+
+		/**
+		 * Returns the next URL, or null if the rest of the file has not
+		 * been written yet.
+		 */
+		String next() throws IOException {
+			while (true) {
+				if (buffer.remaining() >= 4) {
+					int length = buffer.getInt(buffer.position());
+					if (buffer.remaining() >= 4 + length) {
+						buffer.getInt();
+						byte[] bytes = new byte[length];
+						buffer.get(bytes);
+						return new String(bytes, StandardCharsets.UTF_8);
+					}
+				}
+				buffer.compact();
+				int n = channel.read(buffer, position);
+				buffer.flip();
+				if (n <= 0) {
+					return null;
+				}
+				position += n;
+			}
+		}
+
+		/**
+		 * Returns the position in the file of the next URL.
+		 */
+		long offset() {
+			return position - buffer.remaining();
+		}
+
+		/**
+		 * Checks that the file did not end in the middle of a URL.
+		 */
+		boolean atEnd() {
+			return buffer.remaining() == 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Opens the queue stored in dir, creating it if necessary, with room
+	 * for 10000 URLs in memory and 64 MB segments.
+	 *
+	 * @param dir
+	 * @throws IOException
+	 */
+	public DiskFrontier(File dir) throws IOException {
+		this(dir, 10000, 64L * 1024 * 1024);
+	}
+
+	/**
+	 * Opens the queue stored in dir, creating it if necessary.
+	 *
+	 * @param dir
+	 * @param maxInMemory   number of URLs to keep in memory
+	 * @param segmentBytes  size at which a new segment file is started
+	 * @throws IOException
+	 */
+	public DiskFrontier(File dir, int maxInMemory, long segmentBytes) throws IOException {
+		if (maxInMemory < 1) {
+			throw new IllegalArgumentException("maxInMemory must be positive: " + maxInMemory);
+		}
+		this.dir = dir;
+		this.maxInMemory = maxInMemory;
+		this.segmentBytes = segmentBytes;
+		dir.mkdirs();
+
+		int readSegment = 0;
+		long readOffset = 0;
+		writeSegment = 0;
+		writeLength = 0;
+		File checkpoint = new File(dir, CHECKPOINT);
+		if (checkpoint.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)));
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new IOException("not a DiskFrontier: " + dir);
+				}
+				readSegment = in.readInt();
+				readOffset = in.readLong();
+				writeSegment = in.readInt();
+				writeLength = in.readLong();
+				diskCount = in.readLong();
+				int n = in.readInt();
+				for (int i=0; i<n; i++) {
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					head.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		// anything outside the checkpointed segments is from before it
+		for (int segment: listSegments()) {
+			if (segment < readSegment || segment > writeSegment) {
+				Files.delete(segmentFile(segment).toPath());
+			}
+		}
+		writer = FileChannel.open(segmentFile(writeSegment).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		writer.truncate(writeLength);
+		writer.position(writeLength);
+		reader = new SegmentReader(readSegment, readOffset);
+	}
+
+	/**
+	 * Returns the numbers of the segment files in the directory.
+	 */
+	private List<Integer> listSegments() {
+		List<Integer> segments = new ArrayList<Integer>();
+		String[] names = dir.list();
+		if (names != null) {
+			for (String name: names) {
+				if (name.startsWith("segment-") && name.endsWith(".dat")) {
+					segments.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+				}
+			}
+		}
+		return segments;
+	}
+
+	private File segmentFile(int segment) {
+		return new File(dir, String.format("segment-%08d.dat", segment));
+	}
+
+	/**
+	 * Returns the number of segment files, including the ones that have
+	 * been read but not yet deleted.
+	 *
+	 * @return
+	 */
+	public synchronized int segmentCount() {
+		return listSegments().size();
+	}
+
+	@Override
+	public synchronized boolean offer(String url) {
+		if (url == null) {
+			throw new NullPointerException();
+		}
+		checkOpen();
+		try {
+			if (diskCount == 0 && head.size() < maxInMemory) {
+				head.add(url);
+			} else {
+				append(url);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Adds a URL to the end of the write segment.
+	 */
+	private void append(String url) throws IOException {
+		byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		if (4 + bytes.length > BUFFER_BYTES) {
+			throw new IllegalArgumentException("URL is too long: " + bytes.length + " bytes");
+		}
+		if (writeLength >= segmentBytes) {
+			startSegment();
+		}
+		if (writeBuffer.remaining() < 4 + bytes.length) {
+			flushWriter();
+		}
+		writeBuffer.putInt(bytes.length);
+		writeBuffer.put(bytes);
+		writeLength += 4 + bytes.length;
+		diskCount++;
+	}
+
+	/**
+	 * Closes the write segment and starts the next one.
+	 */
+	private void startSegment() throws IOException {
+		flushWriter();
+		writer.force(false);
+		writer.close();
+		writeSegment++;
+		writeLength = 0;
+		writer = FileChannel.open(segmentFile(writeSegment).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Writes the buffered URLs to the write segment.
+	 */
+	private void flushWriter() throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			writer.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+	@Override
+	public synchronized String poll() {
+		checkOpen();
+		if (head.isEmpty() && diskCount > 0) {
+			fill();
+		}
+		return head.poll();
+	}
+
+	@Override
+	public synchronized String peek() {
+		checkOpen();
+		if (head.isEmpty() && diskCount > 0) {
+			fill();
+		}
+		return head.peek();
+	}
+
+	/**
+	 * Reads URLs from disk into memory, up to maxInMemory.
+	 */
+	private void fill() {
+		try {
+			while (head.size() < maxInMemory && diskCount > 0) {
+				String url = reader.next();
+				if (url != null) {
+					head.add(url);
+					diskCount--;
+				} else if (reader.segment < writeSegment) {
+					if (!reader.atEnd()) {
+						throw new IOException("segment " + reader.segment + " is truncated");
+					}
+					reader.close();
+					consumed.add(reader.segment);
+					reader = new SegmentReader(reader.segment + 1, 0);
+				} else if (writeBuffer.position() > 0) {
+					// the rest has not been written yet
+					flushWriter();
+				} else {
+					throw new IOException("segment " + reader.segment + " is missing " + diskCount + " URLs");
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public synchronized int size() {
+		return (int) Math.min(longSize(), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of URLs in the queue, which might be more than
+	 * an int can hold.
+	 *
+	 * @return
+	 */
+	public synchronized long longSize() {
+		return head.size() + diskCount;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return head.isEmpty() && diskCount == 0;
+	}
+
+	/**
+	 * Returns the number of URLs in memory.
+	 *
+	 * @return
+	 */
+	public synchronized int memorySize() {
+		return head.size();
+	}
+
+	@Override
+	public void put(String url) {
+		offer(url);
+	}
+
+	@Override
+	public boolean offer(String url, long timeout, TimeUnit unit) {
+		return offer(url);
+	}
+
+	@Override
+	public synchronized String take() throws InterruptedException {
+		while (isEmpty()) {
+			checkOpen();
+			wait();
+		}
+		return poll();
+	}
+
+	@Override
+	public synchronized String poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (isEmpty()) {
+			checkOpen();
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return null;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, nanos);
+		}
+		return poll();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super String> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public synchronized int drainTo(Collection<? super String> c, int maxElements) {
+		int count = 0;
+		while (count < maxElements) {
+			String url = poll();
+			if (url == null) {
+				break;
+			}
+			c.add(url);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Saves the state of the queue, so it can be reopened from here.
+	 *
+	 * Forces the segments to disk, writes the URLs in memory and the
+	 * positions in the segments to a checkpoint file, then deletes the
+	 * segments that have been read.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException {
+		checkpoint(Collections.<String>emptyList());
+	}
+
+	/**
+	 * Saves the state of the queue, with some URLs that have been polled
+	 * but not finished; when the queue is reopened from this checkpoint,
+	 * they come first.
+	 *
+	 * @param extra
+	 * @throws IOException
+	 */
+	public synchronized void checkpoint(Collection<String> extra) throws IOException {
+		checkOpen();
+		flushWriter();
+		writer.force(false);
+
+		File file = new File(dir, CHECKPOINT);
+		File temp = new File(dir, CHECKPOINT + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(reader.segment);
+			out.writeLong(reader.offset());
+			out.writeInt(writeSegment);
+			out.writeLong(writeLength);
+			out.writeLong(diskCount);
+			out.writeInt(extra.size() + head.size());
+			for (String url: extra) {
+				writeUrl(out, url);
+			}
+			for (String url: head) {
+				writeUrl(out, url);
+			}
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		for (int segment: consumed) {
+			Files.deleteIfExists(segmentFile(segment).toPath());
+		}
+		consumed.clear();
+	}
+
+	private static void writeUrl(DataOutputStream out, String url) throws IOException {
+		byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Saves a checkpoint and closes the files.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		checkpoint();
+		closed = true;
+		writer.close();
+		reader.close();
+		notifyAll();
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("DiskFrontier is closed");
+		}
+	}
+
+	/**
+	 * Returns an iterator over the URLs in the queue, in order.
+	 *
+	 * The queue should not be changed while the iterator is in use.
+	 */
+	@Override
+	public synchronized Iterator<String> iterator() {
+		checkOpen();
+		final Iterator<String> memory = new ArrayList<String>(head).iterator();
+		final long count = diskCount;
+		final int startSegment = reader.segment;
+		final long startOffset = reader.offset();
+		try {
+			flushWriter();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return new Iterator<String>() {
+			private long read = 0;
+			private SegmentReader segment;
+
+			@Override
+			public boolean hasNext() {
+				if (memory.hasNext() || read < count) {
+					return true;
+				}
+				closeSegment();
+				return false;
+			}
+
+			@Override
+			public String next() {
+				if (memory.hasNext()) {
+					return memory.next();
+				}
+				if (read >= count) {
+					throw new NoSuchElementException();
+				}
+				try {
+					if (segment == null) {
+						segment = new SegmentReader(startSegment, startOffset);
+					}
+					String url;
+					while ((url = segment.next()) == null) {
+						int next = segment.segment + 1;
+						segment.close();
+						segment = new SegmentReader(next, 0);
+					}
+					read++;
+					return url;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private void closeSegment() {
+				if (segment != null) {
+					try {
+						segment.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					segment = null;
+				}
+			}
+		};
+	}
+}
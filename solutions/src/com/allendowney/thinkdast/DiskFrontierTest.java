@@ -0,0 +1,260 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author downey
+ *
+ */
+public class DiskFrontierTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String url(int i) {
+		return "https://en.wikipedia.org/wiki/Page" + i;
+	}
+
+	/**
+	 * Checks that URLs come out in order when most of them are on disk
+	 * and spread over several segments.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testOrder() throws IOException {
+		File dir = folder.newFolder();
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 1000);
+		int added = 0;
+		int polled = 0;
+		for (int round=0; round<10; round++) {
+			for (int i=0; i<300; i++) {
+				frontier.offer(url(added++));
+			}
+			assertThat(frontier.memorySize() <= 10, is(true));
+			assertThat(frontier.size(), is(added - polled));
+			for (int i=0; i<200; i++) {
+				assertThat(frontier.poll(), is(url(polled++)));
+			}
+		}
+		assertThat(frontier.segmentCount() > 1, is(true));
+		while (polled < added) {
+			assertThat(frontier.poll(), is(url(polled++)));
+		}
+		assertThat(frontier.poll(), is(nullValue()));
+		assertThat(frontier.isEmpty(), is(true));
+
+		// segments that have been read are deleted at the checkpoint
+		frontier.checkpoint();
+		assertThat(frontier.segmentCount(), is(1));
+		frontier.close();
+	}
+
+	/**
+	 * Test method for {@link DiskFrontier#iterator()}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testIterator() throws IOException {
+		DiskFrontier frontier = new DiskFrontier(folder.newFolder(), 5, 500);
+		for (int i=0; i<100; i++) {
+			frontier.offer(url(i));
+		}
+		frontier.poll();
+
+		List<String> list = new ArrayList<String>();
+		for (String url: frontier) {
+			list.add(url);
+		}
+		assertThat(list.size(), is(99));
+		assertThat(list.get(0), is(url(1)));
+		assertThat(list.get(98), is(url(99)));
+		assertThat(frontier.peek(), is(url(1)));
+		frontier.close();
+	}
+
+	/**
+	 * Checks that a closed frontier can be reopened.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testResume() throws IOException {
+		File dir = folder.newFolder();
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 1000);
+		for (int i=0; i<500; i++) {
+			frontier.offer(url(i));
+		}
+		for (int i=0; i<123; i++) {
+			frontier.poll();
+		}
+		frontier.close();
+
+		frontier = new DiskFrontier(dir, 10, 1000);
+		assertThat(frontier.size(), is(377));
+		frontier.offer(url(500));
+		for (int i=123; i<=500; i++) {
+			assertThat(frontier.poll(), is(url(i)));
+		}
+		assertThat(frontier.isEmpty(), is(true));
+		frontier.close();
+	}
+
+	/**
+	 * Checks that a frontier that was not closed resumes from its last
+	 * checkpoint.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCrash() throws IOException {
+		File dir = folder.newFolder();
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 100000);
+		for (int i=0; i<200; i++) {
+			frontier.offer(url(i));
+		}
+		for (int i=0; i<50; i++) {
+			frontier.poll();
+		}
+		frontier.checkpoint();
+
+		// these changes are lost
+		for (int i=0; i<50; i++) {
+			frontier.poll();
+		}
+		for (int i=200; i<300; i++) {
+			frontier.offer(url(i));
+		}
+
+		DiskFrontier resumed = new DiskFrontier(dir, 10, 100000);
+		assertThat(resumed.size(), is(150));
+		for (int i=50; i<200; i++) {
+			assertThat(resumed.poll(), is(url(i)));
+		}
+		assertThat(resumed.isEmpty(), is(true));
+		resumed.close();
+	}
+
+	/**
+	 * Test method for {@link DiskFrontier#checkpoint(java.util.Collection)}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCheckpointExtra() throws IOException {
+		File dir = folder.newFolder();
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 1000);
+		for (int i=0; i<20; i++) {
+			frontier.offer(url(i));
+		}
+		for (int i=0; i<5; i++) {
+			frontier.poll();
+		}
+
+		// pages 3 and 4 were polled but not finished
+		frontier.checkpoint(Arrays.asList(url(3), url(4)));
+		frontier.poll();
+
+		DiskFrontier resumed = new DiskFrontier(dir, 10, 1000);
+		assertThat(resumed.size(), is(17));
+		for (int i=3; i<20; i++) {
+			assertThat(resumed.poll(), is(url(i)));
+		}
+		resumed.close();
+	}
+
+	/**
+	 * Test method for {@link DiskFrontier#poll(long, TimeUnit)}.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPollTimeout() throws Exception {
+		final DiskFrontier frontier = new DiskFrontier(folder.newFolder(), 10, 1000);
+		assertThat(frontier.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				frontier.offer(url(0));
+			}
+		};
+		producer.start();
+		assertThat(frontier.poll(5, TimeUnit.SECONDS), is(url(0)));
+		producer.join();
+		frontier.close();
+	}
+
+	/**
+	 * Checks that a CrawlEngine picks up the URLs left in a frontier.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCrawlEngine() throws Exception {
+		File dir = folder.newFolder();
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 1000);
+		frontier.offer("https://en.wikipedia.org/wiki/Java_(programming_language)");
+		frontier.close();
+
+		frontier = new DiskFrontier(dir, 10, 1000);
+		LocalIndex index = new LocalIndex();
+		CrawlEngine engine = new CrawlEngine(index, CrawlEngine.files(), 2, 2, frontier);
+		engine.setMinInterval(0);
+		assertThat(engine.crawl(1), is(1));
+		assertThat(index.numDocs(), is(1));
+		assertThat(frontier.size() > 0, is(true));
+		frontier.close();
+	}
+
+	/**
+	 * Checks that a crawl that is not closed leaves a checkpoint, and a
+	 * seen filter that agrees with it.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCrawlEngineCheckpoint() throws Exception {
+		File dir = folder.newFolder();
+		File seenFile = new File(folder.getRoot(), "seen");
+		String source = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		DiskFrontier frontier = new DiskFrontier(dir, 10, 1000);
+
+		LocalIndex index = new LocalIndex();
+		CrawlEngine engine = new CrawlEngine(index, CrawlEngine.files(), 2, 2, frontier);
+		engine.setMinInterval(0);
+		engine.setCheckpoint(1, seenFile);
+		engine.add(source);
+		assertThat(engine.crawl(1), is(1));
+		int left = frontier.size();
+		assertThat(left > 0, is(true));
+
+		// no close, as if the process had died
+		DiskFrontier resumed = new DiskFrontier(dir, 10, 1000);
+		assertThat(resumed.size(), is(left));
+		BloomFilter seen = BloomFilter.load(seenFile);
+		assertThat(seen.mightContain(source), is(true));
+		for (String url: resumed) {
+			assertThat(seen.mightContain(url), is(true));
+		}
+		resumed.close();
+	}
+}
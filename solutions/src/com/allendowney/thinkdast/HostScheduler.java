@@ -0,0 +1,443 @@
+package com.allendowney.thinkdast;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests to each host.
+ *
+ * Each host has a token bucket: it holds up to `burst` tokens and gains
+ * `rate` tokens per second, and each request takes one.  A host with a
+ * rate of 1 and a burst of 1 gets one request per second, like the
+ * minInterval that WikiFetcher used to sleep for; a burst of 5 lets it
+ * have five requests at once after it has been idle.  Rates can be set
+ * per host, so mirrors and language editions can each run at the rate
+ * they allow.
+ *
+ * There are two ways to use it:
+ *
+ *   - add puts a URL in a queue for its host, and poll and take hand out
+ *     the next URL whose host has a token.  Hosts are kept in a priority
+ *     queue ordered by when they get their next token, so a caller never
+ *     sleeps while another host could be served.
+ *
+ *   - acquire reserves a token for one URL and sleeps until it is
+ *     available, for callers that fetch one URL at a time.
+ *
+ * The scheduler keeps track of how long requests were held back by the
+ * rate limits, in total and per host.  The methods are synchronized.
+ *
+ * A crawl can touch many hosts once, so hosts that are idle are
+ * forgotten: no waiting URLs, a full bucket, and no rate of their own.
+ * Forgetting one loses nothing but its throttled time, since a new
+ * bucket starts full.  Idle hosts are removed when a new host is added
+ * and the number of hosts has doubled since the last time.
+ *
+ * @author downey
+ *
+ */
+public class HostScheduler {
+
+	private double defaultRate;
+	private int defaultBurst;
+
+	private final Map<String, Host> hosts = new HashMap<String, Host>();
+
+	// when the number of hosts reaches this, the idle ones are removed
+	private static final int MIN_EVICT_SIZE = 64;
+	private int evictSize = MIN_EVICT_SIZE;
+
+	// hosts with waiting URLs, ordered by when they can be served
+	private final PriorityQueue<Host> ready = new PriorityQueue<Host>();
+
+	private int size = 0;
+	private long throttledNanos = 0;
+	private long throttledCount = 0;
+
+	/**
+	 * The token bucket and the waiting URLs for one host.
+	 */
+	private static class Host implements Comparable<Host> {
+		boolean customRate = false;
+		double rate;
+		int burst;
+
+		// tokens can go negative when acquire reserves tokens in advance
+		double tokens;
+		long lastRefill;
+
+		final ArrayDeque<String> urls = new ArrayDeque<String>();
+
+		// when the first URL reached the front of urls, and when it can go
+		long headSince;
+		long due;
+
+		long throttledNanos = 0;
+
+		Host(double rate, int burst, long now) {
+			this.rate = rate;
+			this.burst = burst;
+			this.tokens = burst;
+			this.lastRefill = now;
+		}
+
+		/**
+		 * Adds the tokens earned since the last refill.
+		 */
+		void refill(long now) {
+			if (rate == Double.POSITIVE_INFINITY) {
+				tokens = burst;
+			} else {
+				tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+			}
+			lastRefill = now;
+		}
+
+		/**
+		 * Returns the time when the bucket will have a token.
+		 */
+		long nextToken(long now) {
+			refill(now);
+			if (tokens >= 1) {
+				return now;
+			}
+			return now + (long) Math.ceil((1 - tokens) / rate * 1e9);
+		}
+
+		@Override
+		public int compareTo(Host that) {
+			return Long.compare(this.due, that.due);
+		}
+	}
+
+	/**
+	 * Makes a scheduler that allows one request per second to each host.
+	 */
+	public HostScheduler() {
+		this(1.0, 1);
+	}
+
+	/**
+	 * Makes a scheduler with a default rate for all hosts.
+	 *
+	 * @param rate   requests per second; may be Double.POSITIVE_INFINITY
+	 * @param burst  number of requests that can be made at once
+	 */
+	public HostScheduler(double rate, int burst) {
+		checkRate(rate, burst);
+		this.defaultRate = rate;
+		this.defaultBurst = burst;
+	}
+
+	private static void checkRate(double rate, int burst) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("rate must be positive: " + rate);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst must be positive: " + burst);
+		}
+	}
+
+	/**
+	 * Sets the rate of the hosts that don't have their own.
+	 *
+	 * @param rate   requests per second
+	 * @param burst  number of requests that can be made at once
+	 */
+	public synchronized void setDefaultRate(double rate, int burst) {
+		checkRate(rate, burst);
+		this.defaultRate = rate;
+		this.defaultBurst = burst;
+		long now = System.nanoTime();
+		for (Host host: hosts.values()) {
+			if (!host.customRate) {
+				changeRate(host, rate, burst, now);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Sets the rate of one host.
+	 *
+	 * @param host   like "en.wikipedia.org"
+	 * @param rate   requests per second
+	 * @param burst  number of requests that can be made at once
+	 */
+	public synchronized void setRate(String host, double rate, int burst) {
+		checkRate(rate, burst);
+		long now = System.nanoTime();
+		Host h = host(host, now);
+		h.customRate = true;
+		changeRate(h, rate, burst, now);
+		notifyAll();
+	}
+
+	private void changeRate(Host host, double rate, int burst, long now) {
+		host.refill(now);
+		host.rate = rate;
+		host.burst = burst;
+		host.tokens = Math.min(host.tokens, burst);
+		if (!host.urls.isEmpty()) {
+			ready.remove(host);
+			host.due = host.nextToken(now);
+			ready.add(host);
+		}
+	}
+
+	private Host host(String name, long now) {
+		Host host = hosts.get(name);
+		if (host == null) {
+			if (hosts.size() >= evictSize) {
+				evictIdle(now);
+			}
+			host = new Host(defaultRate, defaultBurst, now);
+			hosts.put(name, host);
+		}
+		return host;
+	}
+
+	/**
+	 * Removes the hosts that have no waiting URLs, a full bucket, and the
+	 * default rate.
+	 *
+	 * The next sweep happens when the number of hosts has doubled, so the
+	 * cost per host added is constant.
+	 */
+	private void evictIdle(long now) {
+		Iterator<Host> it = hosts.values().iterator();
+		while (it.hasNext()) {
+			Host host = it.next();
+			if (host.urls.isEmpty() && !host.customRate) {
+				host.refill(now);
+				if (host.tokens >= host.burst) {
+					it.remove();
+				}
+			}
+		}
+		evictSize = Math.max(MIN_EVICT_SIZE, 2 * hosts.size());
+	}
+
+	/**
+	 * Returns the number of hosts the scheduler is keeping track of.
+	 *
+	 * @return
+	 */
+	synchronized int hostCount() {
+		return hosts.size();
+	}
+
+	/**
+	 * Returns the host of a URL.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IllegalArgumentException if the URL is malformed
+	 */
+	static String hostOf(String url) {
+		try {
+			return new URL(url).getHost();
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Adds a URL to the queue for its host.
+	 *
+	 * @param url
+	 * @throws IllegalArgumentException if the URL is malformed
+	 */
+	public synchronized void add(String url) {
+		long now = System.nanoTime();
+		Host host = host(hostOf(url), now);
+		host.urls.add(url);
+		if (host.urls.size() == 1) {
+			host.headSince = now;
+			host.due = host.nextToken(now);
+			ready.add(host);
+		}
+		size++;
+		notifyAll();
+	}
+
+	/**
+	 * Returns a URL whose host has a token, and takes the token.
+	 *
+	 * @return null if there is no such URL now
+	 */
+	public synchronized String poll() {
+		long now = System.nanoTime();
+		Host host = ready.peek();
+		if (host == null || host.due > now) {
+			return null;
+		}
+		ready.poll();
+		host.refill(now);
+		host.tokens -= 1;
+		String url = host.urls.poll();
+		size--;
+		throttled(host, Math.max(0, host.due - host.headSince));
+
+		if (!host.urls.isEmpty()) {
+			host.headSince = now;
+			host.due = host.nextToken(now);
+			ready.add(host);
+		}
+		return url;
+	}
+
+	/**
+	 * Waits for a URL whose host has a token.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return null if there was none before the timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized String poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true) {
+			String url = poll();
+			if (url != null) {
+				return url;
+			}
+			long now = System.nanoTime();
+			if (now >= deadline) {
+				return null;
+			}
+			Host host = ready.peek();
+			long until = host == null ? deadline : Math.min(deadline, host.due);
+			TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, until - now));
+		}
+	}
+
+	/**
+	 * Waits for a URL whose host has a token.
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public synchronized String take() throws InterruptedException {
+		while (true) {
+			String url = poll();
+			if (url != null) {
+				return url;
+			}
+			Host host = ready.peek();
+			if (host == null) {
+				wait();
+			} else {
+				TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, host.due - System.nanoTime()));
+			}
+		}
+	}
+
+	/**
+	 * Takes all of the waiting URLs, in no particular order.
+	 *
+	 * @param c  where they go
+	 * @return the number of URLs
+	 */
+	public synchronized int drainTo(Collection<? super String> c) {
+		int count = size;
+		for (Host host: ready) {
+			c.addAll(host.urls);
+			host.urls.clear();
+		}
+		ready.clear();
+		size = 0;
+		return count;
+	}
+
+	/**
+	 * Waits until the host of a URL has a token, and takes it.
+	 *
+	 * Threads that acquire tokens for the same host are spaced out by the
+	 * rate, because each one reserves the next token before it sleeps.
+	 *
+	 * @param url
+	 * @throws InterruptedException
+	 * @throws IllegalArgumentException if the URL is malformed
+	 */
+	public void acquire(String url) throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			Host host = host(hostOf(url), now);
+			wait = host.nextToken(now) - now;
+			host.tokens -= 1;
+			throttled(host, wait);
+			if (!host.urls.isEmpty()) {
+				// the queued URLs wait for the next token
+				ready.remove(host);
+				host.due = host.nextToken(now);
+				ready.add(host);
+			}
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private void throttled(Host host, long nanos) {
+		if (nanos > 0) {
+			host.throttledNanos += nanos;
+			throttledNanos += nanos;
+			throttledCount++;
+		}
+	}
+
+	/**
+	 * Returns the number of URLs waiting.
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the total time that requests were held back by the rate
+	 * limits.
+	 *
+	 * For queued URLs, that is the time from when a URL reached the front
+	 * of its host's queue to when its host had a token.
+	 *
+	 * @return milliseconds
+	 */
+	public synchronized long getThrottledMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(throttledNanos);
+	}
+
+	/**
+	 * Returns the time that requests to one host were held back.
+	 *
+	 * @param host
+	 * @return milliseconds
+	 */
+	public synchronized long getThrottledMillis(String host) {
+		Host h = hosts.get(host);
+		return h == null ? 0 : TimeUnit.NANOSECONDS.toMillis(h.throttledNanos);
+	}
+
+	/**
+	 * Returns the number of requests that were held back.
+	 *
+	 * @return
+	 */
+	public synchronized long getThrottledCount() {
+		return throttledCount;
+	}
+}
@@ -0,0 +1,147 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class HostSchedulerTest {
+
+	private static final String EN = "https://en.wikipedia.org/wiki/Page";
+	private static final String FR = "https://fr.wikipedia.org/wiki/Page";
+
+	/**
+	 * Test method for {@link HostScheduler#poll()}.
+	 */
+	@Test
+	public void testPoll() {
+		HostScheduler scheduler = new HostScheduler(1.0, 2);
+		for (int i=0; i<3; i++) {
+			scheduler.add(EN + i);
+		}
+		scheduler.add(FR + 0);
+		assertThat(scheduler.size(), is(4));
+
+		// the burst lets two requests go to en; fr is not held up by it
+		List<String> urls = new ArrayList<String>();
+		String url;
+		while ((url = scheduler.poll()) != null) {
+			urls.add(url);
+		}
+		assertThat(urls.size(), is(3));
+		assertThat(urls.contains(FR + 0), is(true));
+		assertThat(urls.indexOf(EN + 0) < urls.indexOf(EN + 1), is(true));
+		assertThat(scheduler.size(), is(1));
+		assertThat(scheduler.getThrottledCount(), is(0L));
+	}
+
+	/**
+	 * Test method for {@link HostScheduler#poll(long, TimeUnit)}.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testRate() throws InterruptedException {
+		HostScheduler scheduler = new HostScheduler(20.0, 1);
+		scheduler.setRate("fr.wikipedia.org", Double.POSITIVE_INFINITY, 1);
+		for (int i=0; i<5; i++) {
+			scheduler.add(EN + i);
+			scheduler.add(FR + i);
+		}
+
+		long start = System.nanoTime();
+		int lastFr = -1;
+		for (int i=0; i<10; i++) {
+			String url = scheduler.poll(1, TimeUnit.SECONDS);
+			if (url.startsWith(FR)) {
+				lastFr = i;
+			}
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// fr is not throttled, so it does not wait behind en, and four of
+		// the en requests wait 50 ms each
+		assertThat(lastFr <= 5, is(true));
+		assertThat(elapsed >= 190, is(true));
+		assertThat(scheduler.getThrottledMillis("fr.wikipedia.org"), is(0L));
+		assertThat(scheduler.getThrottledMillis("en.wikipedia.org") >= 190, is(true));
+		assertThat(scheduler.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+	}
+
+	/**
+	 * Test method for {@link HostScheduler#acquire(String)}.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testAcquire() throws InterruptedException {
+		final HostScheduler scheduler = new HostScheduler(10.0, 1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i=0; i<4; i++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						scheduler.acquire(EN);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread thread: threads) {
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// the threads are spaced 100 ms apart
+		assertThat(elapsed >= 290, is(true));
+		assertThat(scheduler.getThrottledCount(), is(3L));
+
+		// another host is not held up
+		start = System.nanoTime();
+		scheduler.acquire(FR);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50, is(true));
+	}
+
+	/**
+	 * Checks that idle hosts are forgotten, but not hosts with waiting
+	 * URLs or a rate of their own.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testEvictIdle() throws InterruptedException {
+		HostScheduler scheduler = new HostScheduler(Double.POSITIVE_INFINITY, 1);
+		scheduler.setRate("custom.example.org", 1.0, 1);
+		scheduler.acquire("https://custom.example.org/wiki/Page");
+
+		// none of these hosts is idle while it has a URL waiting
+		for (int i=0; i<1000; i++) {
+			scheduler.add("https://host" + i + ".example.org/wiki/Page");
+		}
+		assertThat(scheduler.hostCount(), is(1001));
+		for (int i=0; i<999; i++) {
+			assertThat(scheduler.poll(), is(notNullValue()));
+		}
+
+		// adding more hosts removes the 999 idle ones
+		for (int i=0; i<1000; i++) {
+			scheduler.add("https://other" + i + ".example.org/wiki/Page");
+		}
+		assertThat(scheduler.hostCount(), is(1002));
+		assertThat(scheduler.size(), is(1001));
+	}
+}
@@ -1,6 +1,7 @@
 package com.allendowney.thinkdast;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -14,10 +15,19 @@ import org.jsoup.select.Elements;
  * @author downey
  *
  */
-public class Index {
+public class Index implements ScoringIndex {
 
     private Map<String, Set<TermCounter>> index = new HashMap<String, Set<TermCounter>>();
 
+    // map from URL to the TermCounter for that page
+    private Map<String, TermCounter> pages = new HashMap<String, TermCounter>();
+
+    // map from URL to the number of terms on the page
+    private MyObjectIntMap<String> lengths = new MyObjectIntMap<String>();
+
+    // total number of terms on all pages
+    private long totalLength = 0;
+
     /**
      * Adds a TermCounter to the set associated with `term`.
      *
@@ -72,9 +82,16 @@ public class Index {
 		return index.keySet();
 	}
 
+	@Override
+	public Set<String> termSet() {
+		return new HashSet<String>(keySet());
+	}
+
 	/**
 	 * Add a page to the index.
 	 *
+	 * If the page has already been indexed, the new counts replace the old.
+	 *
 	 * @param url         URL of the page.
 	 * @param paragraphs  Collection of elements that should be indexed.
 	 */
@@ -82,13 +99,102 @@ public class Index {
 		// make a TermCounter and count the terms in the paragraphs
 		TermCounter tc = new TermCounter(url);
 		tc.processElements(paragraphs);
-		
+
+		// if this page has already been indexed, remove the old TermCounter
+		TermCounter old = pages.put(url, tc);
+		if (old != null) {
+			for (String term: old.keySet()) {
+				Set<TermCounter> set = get(term);
+				set.remove(old);
+				if (set.isEmpty()) {
+					index.remove(term);
+				}
+			}
+			totalLength -= lengths.get(url);
+		}
+		int length = tc.size();
+		lengths.put(url, length);
+		totalLength += length;
+
 		// for each term in the TermCounter, add the TermCounter to the index
 		for (String term: tc.keySet()) {
 			add(term, tc);
 		}
 	}
 
+	@Override
+	public boolean isIndexed(String url) {
+		return pages.containsKey(url);
+	}
+
+	@Override
+	public Set<String> getURLs(String term) {
+		Set<String> urls = new HashSet<String>();
+		Set<TermCounter> tcs = get(term);
+		if (tcs != null) {
+			for (TermCounter tc: tcs) {
+				urls.add(tc.getLabel());
+			}
+		}
+		return urls;
+	}
+
+	@Override
+	public Map<String, Integer> getCounts(String term) {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		Set<TermCounter> tcs = get(term);
+		if (tcs != null) {
+			for (TermCounter tc: tcs) {
+				map.put(tc.getLabel(), tc.get(term));
+			}
+		}
+		return map;
+	}
+
+	@Override
+	public int numDocs() {
+		return pages.size();
+	}
+
+	@Override
+	public double averageDocLength() {
+		return pages.isEmpty() ? 0 : (double) totalLength / pages.size();
+	}
+
+	@Override
+	public int docFrequency(String term) {
+		Set<TermCounter> tcs = get(term);
+		return tcs == null ? 0 : tcs.size();
+	}
+
+	@Override
+	public Map<String, Integer> getCountsForAll(Collection<String> terms) {
+		return null;
+	}
+
+	@Override
+	public Set<String> containing(String term, Collection<String> urls) {
+		return null;
+	}
+
+	@Override
+	public MyObjectIntMap<String> docLengths(Collection<String> urls) {
+		MyObjectIntMap<String> res = new MyObjectIntMap<String>();
+		for (String url: urls) {
+			if (lengths.containsKey(url)) {
+				res.put(url, lengths.get(url));
+			}
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Double> getScores(String term, Scorer scorer) {
+		Map<String, Integer> counts = getCounts(term);
+		return RankedSearch.score(counts, docLengths(counts.keySet()),
+				numDocs(), averageDocLength(), scorer);
+	}
+
 	/**
 	 * @param args
 	 * @throws IOException 
@@ -0,0 +1,360 @@
+package com.allendowney.thinkdast;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * A pool of Jedis connections that can be shared by several threads.
+ *
+ * A Jedis object is not thread-safe, so each thread borrows a
+ * connection with getResource, uses it, and gives it back with
+ * returnResource:
+ *
+ *     Jedis jedis = pool.getResource();
+ *     try {
+ *         ...
+ *     } finally {
+ *         pool.returnResource(jedis);
+ *     }
+ *
+ * At most maxTotal connections are borrowed at a time; getResource
+ * waits up to maxWaitMillis for one to come back.  Connections are
+ * made as needed and kept for reuse.  Broken connections are closed
+ * instead of being reused.
+ *
+ * @author downey
+ *
+ */
+public class JedisConnectionPool implements Closeable {
+
+	private final String host;
+	private final int port;
+	private final String auth;
+	private final int maxTotal;
+	private final long maxWaitMillis;
+	private volatile boolean testOnBorrow = false;
+
+	// idle connections, most recently returned first
+	private final LinkedBlockingDeque<Jedis> idle = new LinkedBlockingDeque<Jedis>();
+
+	// one permit for each connection that can be borrowed
+	private final Semaphore permits;
+
+	// the connection passed to wrap, if any; it is never replaced
+	private final Jedis wrapped;
+
+	private volatile boolean closed = false;
+
+	// metrics
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong destroyedCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * Makes a pool that connects to the given server.
+	 *
+	 * @param host
+	 * @param port
+	 * @param auth           password, or null if the server does not need one
+	 * @param maxTotal       maximum number of connections borrowed at once
+	 * @param maxWaitMillis  how long getResource waits; negative means forever
+	 */
+	public JedisConnectionPool(String host, int port, String auth, int maxTotal, long maxWaitMillis) {
+		if (maxTotal < 1) {
+			throw new IllegalArgumentException("maxTotal must be positive: " + maxTotal);
+		}
+		this.host = host;
+		this.port = port;
+		this.auth = auth;
+		this.maxTotal = maxTotal;
+		this.maxWaitMillis = maxWaitMillis;
+		this.permits = new Semaphore(maxTotal, true);
+		this.wrapped = null;
+	}
+
+	/**
+	 * Makes a pool that lends out a single existing connection.
+	 *
+	 * This lets code written for a pool use a plain Jedis; threads that
+	 * share it take turns.
+	 *
+	 * @param jedis
+	 */
+	private JedisConnectionPool(Jedis jedis) {
+		this.host = null;
+		this.port = 0;
+		this.auth = null;
+		this.maxTotal = 1;
+		this.maxWaitMillis = -1;
+		this.permits = new Semaphore(1, true);
+		this.wrapped = jedis;
+		idle.add(jedis);
+	}
+
+	/**
+	 * Makes a pool that lends out a single existing connection.
+	 *
+	 * Closing the pool does not close the connection.
+	 *
+	 * @param jedis
+	 * @return
+	 */
+	public static JedisConnectionPool wrap(Jedis jedis) {
+		return new JedisConnectionPool(jedis);
+	}
+
+	/**
+	 * Sets whether getResource checks each connection with a PING before
+	 * lending it out.
+	 *
+	 * @param testOnBorrow
+	 */
+	public void setTestOnBorrow(boolean testOnBorrow) {
+		this.testOnBorrow = testOnBorrow;
+	}
+
+	/**
+	 * Borrows a connection, waiting if they are all in use.
+	 *
+	 * @return
+	 * @throws JedisConnectionException if no connection is available in time
+	 */
+	public Jedis getResource() {
+		if (closed) {
+			throw new IllegalStateException("pool is closed");
+		}
+		long start = System.nanoTime();
+		try {
+			if (maxWaitMillis < 0) {
+				permits.acquire();
+			} else if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new JedisConnectionException("timed out waiting for a connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisConnectionException(e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		try {
+			Jedis jedis = takeIdle();
+			active.incrementAndGet();
+			borrowCount.incrementAndGet();
+			return jedis;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns an idle connection that passes the health check, or a new one.
+	 *
+	 * @return
+	 */
+	private Jedis takeIdle() {
+		Jedis jedis;
+		while ((jedis = idle.pollFirst()) != null) {
+			if (wrapped != null || !testOnBorrow || isHealthy(jedis)) {
+				return jedis;
+			}
+			destroy(jedis);
+		}
+		return create();
+	}
+
+	/**
+	 * Makes a new connection and authenticates it.
+	 *
+	 * @return
+	 */
+	private Jedis create() {
+		Jedis jedis = new Jedis(host, port);
+		try {
+			if (auth != null) {
+				jedis.auth(auth);
+			}
+		} catch (JedisException e) {
+			jedis.close();
+			throw e;
+		}
+		createdCount.incrementAndGet();
+		return jedis;
+	}
+
+	/**
+	 * Checks a connection with a PING.
+	 *
+	 * @param jedis
+	 * @return
+	 */
+	private boolean isHealthy(Jedis jedis) {
+		try {
+			return "PONG".equals(jedis.ping());
+		} catch (JedisException e) {
+			return false;
+		}
+	}
+
+	private void destroy(Jedis jedis) {
+		destroyedCount.incrementAndGet();
+		try {
+			jedis.close();
+		} catch (JedisException e) {
+			// the connection is already unusable
+		}
+	}
+
+	private void recordWait(long nanos) {
+		totalWaitNanos.addAndGet(nanos);
+		long max = maxWaitNanos.get();
+		while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * Gives back a borrowed connection.
+	 *
+	 * If the connection is broken, it is closed, and a new one will be
+	 * made when needed.
+	 *
+	 * @param jedis
+	 */
+	public void returnResource(Jedis jedis) {
+		active.decrementAndGet();
+		if (wrapped == null && (closed || jedis.getClient().isBroken())) {
+			destroy(jedis);
+		} else {
+			idle.offerFirst(jedis);
+		}
+		permits.release();
+	}
+
+	/**
+	 * Checks the idle connections and closes the ones that fail.
+	 *
+	 * Can be called periodically as a health check.
+	 *
+	 * @return the number of connections closed
+	 */
+	public int validateIdle() {
+		if (wrapped != null) {
+			return 0;
+		}
+		List<Jedis> list = new ArrayList<Jedis>();
+		idle.drainTo(list);
+		int closedCount = 0;
+		for (Jedis jedis: list) {
+			if (isHealthy(jedis)) {
+				idle.offerLast(jedis);
+			} else {
+				destroy(jedis);
+				closedCount++;
+			}
+		}
+		return closedCount;
+	}
+
+	/**
+	 * Returns the number of connections currently borrowed.
+	 *
+	 * @return
+	 */
+	public int getNumActive() {
+		return active.get();
+	}
+
+	/**
+	 * Returns the number of connections waiting to be borrowed.
+	 *
+	 * @return
+	 */
+	public int getNumIdle() {
+		return idle.size();
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * Returns the number of times getResource gave up waiting.
+	 *
+	 * @return
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.get();
+	}
+
+	/**
+	 * Returns the average time getResource waited for a connection.
+	 *
+	 * @return
+	 */
+	public double getMeanBorrowWaitMillis() {
+		long count = borrowCount.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+	}
+
+	/**
+	 * Returns the longest time getResource waited for a connection.
+	 *
+	 * @return
+	 */
+	public double getMaxBorrowWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("JedisConnectionPool(active=%d, idle=%d, max=%d, borrowed=%d, "
+				+ "timeouts=%d, created=%d, destroyed=%d, meanWait=%.3f ms, maxWait=%.3f ms)",
+				getNumActive(), getNumIdle(), maxTotal, getBorrowCount(), getTimeoutCount(),
+				getCreatedCount(), getDestroyedCount(),
+				getMeanBorrowWaitMillis(), getMaxBorrowWaitMillis());
+	}
+
+	/**
+	 * Closes the idle connections; borrowed ones are closed when they
+	 * are returned.  A wrapped connection is left open.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (wrapped != null) {
+			return;
+		}
+		Jedis jedis;
+		while ((jedis = idle.pollFirst()) != null) {
+			destroy(jedis);
+		}
+	}
+}
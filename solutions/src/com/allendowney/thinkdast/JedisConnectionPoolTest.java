@@ -0,0 +1,96 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * @author downey
+ *
+ */
+public class JedisConnectionPoolTest {
+
+	/**
+	 * Test method for {@link JedisConnectionPool#getResource()}.
+	 *
+	 * Connections are not opened until they are used, so this does not
+	 * need a server.
+	 */
+	@Test
+	public void testBorrowAndReturn() {
+		JedisConnectionPool pool = new JedisConnectionPool("localhost", 1, null, 2, 50);
+		Jedis a = pool.getResource();
+		Jedis b = pool.getResource();
+		assertThat(pool.getNumActive(), is(2));
+		assertThat(pool.getNumIdle(), is(0));
+
+		// the pool is exhausted, so the next borrow times out
+		try {
+			pool.getResource();
+			fail();
+		} catch (JedisConnectionException e) {
+			// expected
+		}
+
+		pool.returnResource(a);
+		assertThat(pool.getNumActive(), is(1));
+		assertThat(pool.getNumIdle(), is(1));
+
+		// the idle connection is reused
+		assertThat(pool.getResource(), sameInstance(a));
+		pool.returnResource(a);
+		pool.returnResource(b);
+		assertThat(pool.getBorrowCount(), is(3L));
+		assertThat(pool.getCreatedCount(), is(2L));
+		assertThat(pool.getTimeoutCount(), is(1L));
+
+		// there is no server, so the health check closes both
+		assertThat(pool.validateIdle(), is(2));
+		assertThat(pool.getNumIdle(), is(0));
+		pool.close();
+	}
+
+	/**
+	 * Test method for {@link JedisConnectionPool#wrap(Jedis)}.
+	 */
+	@Test
+	public void testWrapTakesTurns() throws InterruptedException {
+		final Jedis jedis = new Jedis("localhost", 1);
+		final JedisConnectionPool pool = JedisConnectionPool.wrap(jedis);
+		final AtomicInteger inUse = new AtomicInteger();
+		final AtomicInteger overlaps = new AtomicInteger();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i=0; i<4; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int j=0; j<100; j++) {
+						Jedis borrowed = pool.getResource();
+						if (inUse.incrementAndGet() > 1 || borrowed != jedis) {
+							overlaps.incrementAndGet();
+						}
+						inUse.decrementAndGet();
+						pool.returnResource(borrowed);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		assertThat(overlaps.get(), is(0));
+		assertThat(pool.getBorrowCount(), is(400L));
+		assertThat(pool.getNumIdle(), is(1));
+	}
+}
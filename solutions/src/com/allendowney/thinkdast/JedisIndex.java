@@ -5,30 +5,70 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.jsoup.select.Elements;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
 
 /**
  * Represents a Redis-backed web search index.
  *
+ * Besides a URLSet per term and a TermCounter per URL, the index keeps
+ * the statistics used to rank results: a DocLengths hash from URL to
+ * the number of terms on the page, and a TotalLength counter.  The
+ * number of pages that contain a term is the size of its URLSet.
+ *
  */
-public class JedisIndex {
+public class JedisIndex implements ScoringIndex {
+
+	// maximum number of commands to send before reading the replies
+	private static final int PIPELINE_BATCH = 1000;
+
+	private static final String URL_SET_PREFIX = "URLSet:";
+	private static final String TERM_COUNTER_PREFIX = "TermCounter:";
+	private static final String DOC_LENGTHS = "DocLengths";
+	private static final String TOTAL_LENGTH = "TotalLength";
 
-	private Jedis jedis;
+	// field of the TermCounter hash that holds the fingerprint of the
+	// counts; the space means it can't be confused with a term
+	static final String FINGERPRINT_FIELD = " fingerprint";
+
+	// connections to Redis; each operation borrows one
+	private JedisConnectionPool pool;
+
+	// COUNT hint for SCAN
+	private int scanCount = 1000;
 
 	/**
 	 * Constructor.
 	 *
+	 * Threads that share the index take turns using the connection.
+	 *
 	 * @param jedis
 	 */
 	public JedisIndex(Jedis jedis) {
-		this.jedis = jedis;
+		this(JedisConnectionPool.wrap(jedis));
+	}
+
+	/**
+	 * Makes an index that borrows connections from a pool, so several
+	 * threads can use it at the same time.
+	 *
+	 * @param pool
+	 */
+	public JedisIndex(JedisConnectionPool pool) {
+		this.pool = pool;
 	}
 
 	/**
@@ -37,7 +77,7 @@ public class JedisIndex {
 	 * @return Redis key.
 	 */
 	private String urlSetKey(String term) {
-		return "URLSet:" + term;
+		return URL_SET_PREFIX + term;
 	}
 
 	/**
@@ -46,7 +86,7 @@ public class JedisIndex {
 	 * @return Redis key.
 	 */
 	private String termCounterKey(String url) {
-		return "TermCounter:" + url;
+		return TERM_COUNTER_PREFIX + url;
 	}
 
 	/**
@@ -57,7 +97,12 @@ public class JedisIndex {
 	 */
 	public boolean isIndexed(String url) {
 		String redisKey = termCounterKey(url);
-		return jedis.exists(redisKey);
+		Jedis jedis = pool.getResource();
+		try {
+			return jedis.exists(redisKey);
+		} finally {
+			pool.returnResource(jedis);
+		}
 	}
 
 	/**
@@ -67,7 +112,12 @@ public class JedisIndex {
 	 * @param tc
 	 */
 	public void add(String term, TermCounter tc) {
-		jedis.sadd(urlSetKey(term), tc.getLabel());
+		Jedis jedis = pool.getResource();
+		try {
+			jedis.sadd(urlSetKey(term), tc.getLabel());
+		} finally {
+			pool.returnResource(jedis);
+		}
 	}
 
 	/**
@@ -77,8 +127,13 @@ public class JedisIndex {
 	 * @return Set of URLs.
 	 */
 	public Set<String> getURLs(String term) {
-		Set<String> set = jedis.smembers(urlSetKey(term));
-		return set;
+		Jedis jedis = pool.getResource();
+		try {
+			Set<String> set = jedis.smembers(urlSetKey(term));
+			return set;
+		} finally {
+			pool.returnResource(jedis);
+		}
 	}
 
 	/**
@@ -88,15 +143,97 @@ public class JedisIndex {
 	 * @return Map from URL to count.
 	 */
 	public Map<String, Integer> getCounts(String term) {
+		MyObjectIntMap<String> counts = getCounts(Collections.singleton(term)).get(term);
 		Map<String, Integer> map = new HashMap<String, Integer>();
-		Set<String> urls = getURLs(term);
-		for (String url: urls) {
-			Integer count = getCount(url, term);
-			map.put(url, count);
+		for (String url: counts.keySet()) {
+			map.put(url, counts.get(url));
 		}
 		return map;
 	}
 
+	/**
+	 * Looks up several terms and returns, for each term, a map from URL to count.
+	 *
+	 * Uses two pipelined round trips however many terms there are: one
+	 * that gets the URL sets, and one that gets the counts with an HMGET
+	 * per URL for all of the query terms that appear there.  Very large
+	 * results are split into batches of PIPELINE_BATCH commands.
+	 *
+	 * @param terms
+	 * @return Map from term to a map from URL to count.
+	 */
+	public Map<String, MyObjectIntMap<String>> getCounts(Collection<String> terms) {
+		List<String> termList = new ArrayList<String>(new LinkedHashSet<String>(terms));
+		Jedis jedis = pool.getResource();
+		try {
+			return getCounts(jedis, termList);
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	/**
+	 * Does the work of getCounts with a borrowed connection.
+	 *
+	 * @param jedis
+	 * @param termList  distinct terms
+	 * @return
+	 */
+	private Map<String, MyObjectIntMap<String>> getCounts(Jedis jedis, List<String> termList) {
+		// get the URL sets for all terms
+		List<Response<Set<String>>> urlSets = new ArrayList<Response<Set<String>>>();
+		Pipeline p = jedis.pipelined();
+		for (String term: termList) {
+			urlSets.add(p.smembers(urlSetKey(term)));
+		}
+		p.sync();
+
+		// for each URL, collect the terms we need from its TermCounter
+		Map<String, List<String>> termsByURL = new LinkedHashMap<String, List<String>>();
+		for (int i=0; i<termList.size(); i++) {
+			for (String url: urlSets.get(i).get()) {
+				List<String> list = termsByURL.get(url);
+				if (list == null) {
+					list = new ArrayList<String>();
+					termsByURL.put(url, list);
+				}
+				list.add(termList.get(i));
+			}
+		}
+
+		Map<String, MyObjectIntMap<String>> result = new HashMap<String, MyObjectIntMap<String>>();
+		for (String term: termList) {
+			result.put(term, new MyObjectIntMap<String>());
+		}
+
+		// get the counts, PIPELINE_BATCH URLs at a time
+		List<String> urls = new ArrayList<String>(termsByURL.keySet());
+		for (int start=0; start<urls.size(); start+=PIPELINE_BATCH) {
+			List<String> batch = urls.subList(start, Math.min(start + PIPELINE_BATCH, urls.size()));
+			List<Response<List<String>>> responses = new ArrayList<Response<List<String>>>(batch.size());
+			p = jedis.pipelined();
+			for (String url: batch) {
+				List<String> fields = termsByURL.get(url);
+				responses.add(p.hmget(termCounterKey(url), fields.toArray(new String[fields.size()])));
+			}
+			p.sync();
+
+			for (int i=0; i<batch.size(); i++) {
+				String url = batch.get(i);
+				List<String> fields = termsByURL.get(url);
+				List<String> counts = responses.get(i).get();
+				for (int j=0; j<fields.size(); j++) {
+					// skip URLs whose TermCounter is missing the term
+					String count = counts.get(j);
+					if (count != null) {
+						result.get(fields.get(j)).put(url, Integer.parseInt(count));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Looks up a term and returns a map from URL to count.
 	 *
@@ -110,19 +247,24 @@ public class JedisIndex {
 		urls.addAll(getURLs(term));
 
 		// construct a transaction to perform all lookups
-		Transaction t = jedis.multi();
-		for (String url: urls) {
-			String redisKey = termCounterKey(url);
-			t.hget(redisKey, term);
+		List<Object> res;
+		Jedis jedis = pool.getResource();
+		try {
+			Transaction t = jedis.multi();
+			for (String url: urls) {
+				String redisKey = termCounterKey(url);
+				t.hget(redisKey, term);
+			}
+			res = t.exec();
+		} finally {
+			pool.returnResource(jedis);
 		}
-		List<Object> res = t.exec();
 
 		// iterate the results and make the map
 		Map<String, Integer> map = new HashMap<String, Integer>();
 		int i = 0;
 		for (String url: urls) {
-			System.out.println(url);
-			Integer count = new Integer((String) res.get(i++));
+			Integer count = Integer.valueOf((String) res.get(i++));
 			map.put(url, count);
 		}
 		return map;
@@ -137,8 +279,13 @@ public class JedisIndex {
 	 */
 	public Integer getCount(String url, String term) {
 		String redisKey = termCounterKey(url);
-		String count = jedis.hget(redisKey, term);
-		return new Integer(count);
+		Jedis jedis = pool.getResource();
+		try {
+			String count = jedis.hget(redisKey, term);
+			return new Integer(count);
+		} finally {
+			pool.returnResource(jedis);
+		}
 	}
 
 	/**
@@ -161,27 +308,254 @@ public class JedisIndex {
 	/**
 	 * Pushes the contents of the TermCounter to Redis.
 	 *
+	 * If the page has been indexed before, only the differences are sent:
+	 * counts that changed, terms that are new, and terms that are gone,
+	 * which are also removed from their URLSets.  If the fingerprint of the
+	 * counts matches the one stored with the old TermCounter, and the page
+	 * has an entry in DocLengths, the page is unchanged and nothing is
+	 * written.
+	 *
+	 * The TermCounter hash is WATCHed while the differences are computed,
+	 * so a concurrent update of the same page makes us start over.
+	 *
 	 * @param tc
-	 * @return List of return values from Redis.
+	 * @return List of return values from Redis, which is empty if the
+	 *         page was unchanged.
 	 */
 	public List<Object> pushTermCounterToRedis(TermCounter tc) {
-		Transaction t = jedis.multi();
-
 		String url = tc.getLabel();
 		String hashname = termCounterKey(url);
+		String fingerprint = Long.toHexString(fingerprint(tc));
+
+		Jedis jedis = pool.getResource();
+		try {
+			while (true) {
+				jedis.watch(hashname);
+
+				// if the counts have not changed, there is nothing to do,
+				// unless the page was indexed before it had a length
+				if (fingerprint.equals(jedis.hget(hashname, FINGERPRINT_FIELD))
+						&& jedis.hexists(DOC_LENGTHS, url)) {
+					jedis.unwatch();
+					return new ArrayList<Object>();
+				}
+				Map<String, String> old = jedis.hgetAll(hashname);
+				old.remove(FINGERPRINT_FIELD);
+				String oldLength = jedis.hget(DOC_LENGTHS, url);
+
+				Transaction t = jedis.multi();
+
+				// remove the terms that are gone
+				List<String> vanished = new ArrayList<String>();
+				for (String term: old.keySet()) {
+					if (!tc.containsKey(term)) {
+						vanished.add(term);
+						t.srem(urlSetKey(term), url);
+					}
+				}
+				if (!vanished.isEmpty()) {
+					t.hdel(hashname, vanished.toArray(new String[vanished.size()]));
+				}
+
+				// add the terms that are new and update the counts that changed
+				for (String term: tc.keySet()) {
+					String count = Integer.toString(tc.get(term));
+					String oldCount = old.get(term);
+					if (oldCount == null) {
+						t.hset(hashname, term, count);
+						t.sadd(urlSetKey(term), url);
+					} else if (!oldCount.equals(count)) {
+						t.hset(hashname, term, count);
+					}
+				}
+				t.hset(hashname, FINGERPRINT_FIELD, fingerprint);
+
+				// update the page length and the total
+				int length = tc.size();
+				t.hset(DOC_LENGTHS, url, Integer.toString(length));
+				t.incrBy(TOTAL_LENGTH, length - (oldLength == null ? 0 : Long.parseLong(oldLength)));
+
+				// exec returns null if the hash changed since we watched it
+				List<Object> res = t.exec();
+				if (res != null) {
+					return res;
+				}
+			}
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	@Override
+	public int numDocs() {
+		Jedis jedis = pool.getResource();
+		try {
+			return jedis.hlen(DOC_LENGTHS).intValue();
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	@Override
+	public double averageDocLength() {
+		long[] totals = lengthTotals();
+		return totals[0] == 0 ? 0 : (double) totals[1] / totals[0];
+	}
 
-		// if this page has already been indexed; delete the old hash
-		t.del(hashname);
+	/**
+	 * Gets the number of pages and their total length in one round trip.
+	 *
+	 * @return array of {numDocs, totalLength}
+	 */
+	private long[] lengthTotals() {
+		Response<Long> numDocs;
+		Response<String> totalLength;
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			numDocs = p.hlen(DOC_LENGTHS);
+			totalLength = p.get(TOTAL_LENGTH);
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+		long total = totalLength.get() == null ? 0 : Long.parseLong(totalLength.get());
+		return new long[] {numDocs.get(), total};
+	}
 
-		// for each term, add an entry in the termcounter and a new
-		// member of the index
+	@Override
+	public int docFrequency(String term) {
+		Jedis jedis = pool.getResource();
+		try {
+			return jedis.scard(urlSetKey(term)).intValue();
+		} finally {
+			pool.returnResource(jedis);
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getCountsForAll(Collection<String> terms) {
+		return null;
+	}
+
+	/**
+	 * Checks the TermCounters of the given pages for a term.
+	 *
+	 * Uses one pipelined round trip, with an HEXISTS for each URL, so the
+	 * URL set of the term is not read.
+	 *
+	 * @param term
+	 * @param urls
+	 * @return Set of URLs.
+	 */
+	@Override
+	public Set<String> containing(String term, Collection<String> urls) {
+		List<String> list = new ArrayList<String>(urls);
+		List<Response<Boolean>> responses = new ArrayList<Response<Boolean>>(list.size());
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			for (String url: list) {
+				responses.add(p.hexists(termCounterKey(url), term));
+			}
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		Set<String> set = new HashSet<String>();
+		for (int i=0; i<list.size(); i++) {
+			if (responses.get(i).get()) {
+				set.add(list.get(i));
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Looks up the number of terms on each of the given pages.
+	 *
+	 * Uses one pipelined round trip, with an HMGET for every
+	 * PIPELINE_BATCH URLs.  Pages indexed before lengths were recorded
+	 * have no entry until they are indexed again.
+	 *
+	 * @param urls
+	 * @return Map from URL to length.
+	 */
+	@Override
+	public MyObjectIntMap<String> docLengths(Collection<String> urls) {
+		List<String> list = new ArrayList<String>(urls);
+		List<Response<List<String>>> responses = new ArrayList<Response<List<String>>>();
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			for (int start=0; start<list.size(); start+=PIPELINE_BATCH) {
+				List<String> batch = list.subList(start, Math.min(start + PIPELINE_BATCH, list.size()));
+				responses.add(p.hmget(DOC_LENGTHS, batch.toArray(new String[batch.size()])));
+			}
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		MyObjectIntMap<String> lengths = new MyObjectIntMap<String>();
+		int i = 0;
+		for (Response<List<String>> response: responses) {
+			for (String length: response.get()) {
+				String url = list.get(i++);
+				if (length != null) {
+					lengths.put(url, Integer.parseInt(length));
+				}
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * Looks up a term and returns a map from URL to score.
+	 *
+	 * The counts take two round trips, as in getCounts, and the
+	 * statistics take two more.
+	 *
+	 * @param term
+	 * @param scorer
+	 * @return Map from URL to score.
+	 */
+	@Override
+	public Map<String, Double> getScores(String term, Scorer scorer) {
+		Map<String, Integer> counts = getCounts(term);
+		MyObjectIntMap<String> lengths = docLengths(counts.keySet());
+		long[] totals = lengthTotals();
+		double averageLength = totals[0] == 0 ? 0 : (double) totals[1] / totals[0];
+		return RankedSearch.score(counts, lengths, (int) totals[0], averageLength, scorer);
+	}
+
+	/**
+	 * Computes a 64-bit fingerprint of the counts in a TermCounter.
+	 *
+	 * Adds up a hash of each (term, count) pair, so the result does not
+	 * depend on the order of the terms.
+	 *
+	 * @param tc
+	 * @return
+	 */
+	static long fingerprint(TermCounter tc) {
+		long sum = 0;
 		for (String term: tc.keySet()) {
-			Integer count = tc.get(term);
-			t.hset(hashname, term, count.toString());
-			t.sadd(urlSetKey(term), url);
+			// FNV-1a over the characters of the term, then the count
+			long h = 0xcbf29ce484222325L;
+			for (int i=0; i<term.length(); i++) {
+				h = (h ^ term.charAt(i)) * 0x100000001b3L;
+			}
+			h = (h ^ tc.get(term)) * 0x100000001b3L;
+
+			// finish with a mixing step so similar pairs spread out
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			sum += h;
 		}
-		List<Object> res = t.exec();
-		return res;
+		return sum;
 	}
 
 	/**
@@ -203,6 +577,79 @@ public class JedisIndex {
 		}
 	}
 
+	/**
+	 * Sets the COUNT hint used when scanning keys, which is roughly the
+	 * number of keys Redis examines per SCAN call.
+	 *
+	 * @param scanCount
+	 */
+	public void setScanCount(int scanCount) {
+		if (scanCount < 1) {
+			throw new IllegalArgumentException("scanCount must be positive: " + scanCount);
+		}
+		this.scanCount = scanCount;
+	}
+
+	/**
+	 * Iterates the keys that match a pattern using SCAN.
+	 *
+	 * Each call to SCAN does a bounded amount of work, so this does not
+	 * block other clients the way KEYS does.  As with SCAN, a key may be
+	 * returned more than once, and keys added or removed during the
+	 * iteration may or may not be returned.
+	 *
+	 * @param pattern  glob-style pattern, as for KEYS
+	 * @return
+	 */
+	public Iterator<String> scanKeys(String pattern) {
+		return new KeyScanner(pool, pattern, scanCount);
+	}
+
+	/**
+	 * Iterates the terms that have been indexed, using SCAN.
+	 *
+	 * A term may be returned more than once; see scanKeys.
+	 *
+	 * @return
+	 */
+	public Iterator<String> termIterator() {
+		return KeyScanner.suffixes(scanKeys(URL_SET_PREFIX + "*"), URL_SET_PREFIX);
+	}
+
+	/**
+	 * Iterates the URLs that have been indexed, using SCAN.
+	 *
+	 * A URL may be returned more than once; see scanKeys.
+	 *
+	 * @return
+	 */
+	public Iterator<String> urlIterator() {
+		return KeyScanner.suffixes(scanKeys(TERM_COUNTER_PREFIX + "*"), TERM_COUNTER_PREFIX);
+	}
+
+	/**
+	 * Reads the TermCounter for a URL back from Redis.
+	 *
+	 * @param url
+	 * @return TermCounter, which is empty if the URL has not been indexed.
+	 */
+	public TermCounter getTermCounter(String url) {
+		Map<String, String> map;
+		Jedis jedis = pool.getResource();
+		try {
+			map = jedis.hgetAll(termCounterKey(url));
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		map.remove(FINGERPRINT_FIELD);
+		TermCounter tc = new TermCounter(url);
+		for (Entry<String, String> entry: map.entrySet()) {
+			tc.put(entry.getKey(), Integer.parseInt(entry.getValue()));
+		}
+		return tc;
+	}
+
 	/**
 	 * Returns the set of terms that have been indexed.
 	 *
@@ -211,15 +658,10 @@ public class JedisIndex {
 	 * @return
 	 */
 	public Set<String> termSet() {
-		Set<String> keys = urlSetKeys();
 		Set<String> terms = new HashSet<String>();
-		for (String key: keys) {
-			String[] array = key.split(":");
-			if (array.length < 2) {
-				terms.add("");
-			} else {
-				terms.add(array[1]);
-			}
+		Iterator<String> it = termIterator();
+		while (it.hasNext()) {
+			terms.add(it.next());
 		}
 		return terms;
 	}
@@ -232,7 +674,7 @@ public class JedisIndex {
 	 * @return
 	 */
 	public Set<String> urlSetKeys() {
-		return jedis.keys("URLSet:*");
+		return keySet(URL_SET_PREFIX + "*");
 	}
 
 	/**
@@ -243,7 +685,75 @@ public class JedisIndex {
 	 * @return
 	 */
 	public Set<String> termCounterKeys() {
-		return jedis.keys("TermCounter:*");
+		return keySet(TERM_COUNTER_PREFIX + "*");
+	}
+
+	/**
+	 * Collects the keys that match a pattern into a set.
+	 *
+	 * @param pattern
+	 * @return
+	 */
+	private Set<String> keySet(String pattern) {
+		Set<String> keys = new HashSet<String>();
+		Iterator<String> it = scanKeys(pattern);
+		while (it.hasNext()) {
+			keys.add(it.next());
+		}
+		return keys;
+	}
+
+	/**
+	 * Deletes the keys that match a pattern.
+	 *
+	 * Scans the keys and deletes them in pipelined batches of at most
+	 * PIPELINE_BATCH, so neither the server nor the client ever handles
+	 * the whole keyspace at once.
+	 *
+	 * @param pattern
+	 * @return the number of keys deleted
+	 */
+	public long deleteKeys(String pattern) {
+		long deleted = 0;
+		List<String> batch = new ArrayList<String>();
+		Iterator<String> it = scanKeys(pattern);
+		while (it.hasNext()) {
+			batch.add(it.next());
+			if (batch.size() >= PIPELINE_BATCH) {
+				deleted += deleteBatch(batch);
+			}
+		}
+		return deleted + deleteBatch(batch);
+	}
+
+	/**
+	 * Deletes a batch of keys in one pipeline and clears the batch.
+	 *
+	 * The batch is collected first so the scan does not hold a connection
+	 * while the pipeline is open.
+	 *
+	 * @param batch
+	 * @return the number of keys deleted
+	 */
+	private long deleteBatch(List<String> batch) {
+		List<Response<Long>> responses = new ArrayList<Response<Long>>(batch.size());
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline p = jedis.pipelined();
+			for (String key: batch) {
+				responses.add(p.del(key));
+			}
+			p.sync();
+		} finally {
+			pool.returnResource(jedis);
+		}
+
+		long deleted = 0;
+		for (Response<Long> response: responses) {
+			deleted += response.get();
+		}
+		batch.clear();
+		return deleted;
 	}
 
 	/**
@@ -254,28 +764,20 @@ public class JedisIndex {
 	 * @return
 	 */
 	public void deleteURLSets() {
-		Set<String> keys = urlSetKeys();
-		Transaction t = jedis.multi();
-		for (String key: keys) {
-			t.del(key);
-		}
-		t.exec();
+		deleteKeys(URL_SET_PREFIX + "*");
 	}
 
 	/**
-	 * Deletes all URLSet objects from the database.
+	 * Deletes all TermCounter objects from the database.
 	 *
 	 * Should be used for development and testing, not production.
 	 *
 	 * @return
 	 */
 	public void deleteTermCounters() {
-		Set<String> keys = termCounterKeys();
-		Transaction t = jedis.multi();
-		for (String key: keys) {
-			t.del(key);
-		}
-		t.exec();
+		deleteKeys(TERM_COUNTER_PREFIX + "*");
+		deleteKeys(DOC_LENGTHS);
+		deleteKeys(TOTAL_LENGTH);
 	}
 
 	/**
@@ -286,12 +788,7 @@ public class JedisIndex {
 	 * @return
 	 */
 	public void deleteAllKeys() {
-		Set<String> keys = jedis.keys("*");
-		Transaction t = jedis.multi();
-		for (String key: keys) {
-			t.del(key);
-		}
-		t.exec();
+		deleteKeys("*");
 	}
 
 	/**
@@ -299,8 +796,8 @@ public class JedisIndex {
 	 * @throws IOException
 	 */
 	public static void main(String[] args) throws IOException {
-		Jedis jedis = JedisMaker.make();
-		JedisIndex index = new JedisIndex(jedis);
+		JedisConnectionPool pool = JedisMaker.makePool();
+		JedisIndex index = new JedisIndex(pool);
 
 		//index.deleteTermCounters();
 		//index.deleteURLSets();
@@ -4,7 +4,11 @@ import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.jsoup.select.Elements;
 import org.junit.After;
@@ -31,6 +35,9 @@ public class JedisIndexTest {
 		jedis = JedisMaker.make();
 		index = new JedisIndex(jedis);
 
+		// start from an empty index, so it holds just the two pages
+		index.deleteURLSets();
+		index.deleteTermCounters();
 		loadIndex(index);
 	}
 
@@ -60,6 +67,17 @@ public class JedisIndexTest {
 		jedis.close();
 	}
 
+	/**
+	 * Test method for {@link JedisIndex#containing(String, java.util.Collection)}.
+	 */
+	@Test
+	public void testContaining() {
+		String other = "https://en.wikipedia.org/wiki/Tea";
+		Set<String> set = index.containing("java", Arrays.asList(url1, url2, other));
+		assertThat(set, is((Set<String>) new HashSet<String>(Arrays.asList(url1, url2))));
+		assertThat(index.containing("nosuchterm", Arrays.asList(url1)).isEmpty(), is(true));
+	}
+
 	/**
 	 * Test method for {@link JedisIndex#getCounts(java.lang.String)}.
 	 */
@@ -69,4 +87,123 @@ public class JedisIndexTest {
 		assertThat(map.get(url1), is(339));
 		assertThat(map.get(url2), is(264));
 	}
+
+	/**
+	 * Test method for {@link JedisIndex#getCounts(java.util.Collection)}.
+	 */
+	@Test
+	public void testGetCountsMany() {
+		Map<String, MyObjectIntMap<String>> map = index.getCounts(Arrays.asList("the", "java", "nosuchterm"));
+		assertThat(map.get("the").get(url1), is(339));
+		assertThat(map.get("the").get(url2), is(264));
+		assertThat(map.get("java").get(url1), is(index.getCount(url1, "java")));
+		assertThat(map.get("nosuchterm").isEmpty(), is(true));
+	}
+
+	/**
+	 * Test method for {@link JedisIndex#termIterator()}.
+	 */
+	@Test
+	public void testTermIterator() {
+		index.setScanCount(10);
+		Set<String> terms = new HashSet<String>();
+		Iterator<String> it = index.termIterator();
+		while (it.hasNext()) {
+			terms.add(it.next());
+		}
+		assertThat(terms.contains("java"), is(true));
+		assertThat(terms, is(index.termSet()));
+	}
+
+	/**
+	 * Test method for {@link JedisIndex#deleteKeys(java.lang.String)}.
+	 */
+	@Test
+	public void testDeleteKeys() {
+		for (int i=0; i<2500; i++) {
+			jedis.set("JedisIndexTest:" + i, "x");
+		}
+		index.setScanCount(100);
+		assertThat(index.deleteKeys("JedisIndexTest:*"), is(2500L));
+		assertThat(index.scanKeys("JedisIndexTest:*").hasNext(), is(false));
+		assertThat(index.getURLs("the").size(), is(2));
+	}
+
+	/**
+	 * Test method for {@link JedisIndex#pushTermCounterToRedis(TermCounter)}.
+	 */
+	@Test
+	public void testReindex() {
+		String url = "https://en.wikipedia.org/wiki/JedisIndexTest";
+		TermCounter tc = new TermCounter(url);
+		tc.put("jedisindextesta", 1);
+		tc.put("jedisindextestb", 2);
+		assertThat(index.pushTermCounterToRedis(tc).isEmpty(), is(false));
+
+		// pushing the same counts again writes nothing
+		assertThat(index.pushTermCounterToRedis(tc).isEmpty(), is(true));
+
+		TermCounter tc2 = new TermCounter(url);
+		tc2.put("jedisindextesta", 3);
+		tc2.put("jedisindextestc", 1);
+		index.pushTermCounterToRedis(tc2);
+		assertThat(index.getCounts("jedisindextesta").get(url), is(3));
+		assertThat(index.getURLs("jedisindextestb").contains(url), is(false));
+		assertThat(index.getURLs("jedisindextestc").contains(url), is(true));
+		assertThat(index.getTermCounter(url).keySet(), is(tc2.keySet()));
+
+		// clean up
+		index.pushTermCounterToRedis(new TermCounter(url));
+		index.deleteKeys("TermCounter:" + url);
+		jedis.hdel("DocLengths", url);
+		assertThat(index.isIndexed(url), is(false));
+	}
+
+	/**
+	 * Test method for {@link JedisIndex#getScores(String, Scorer)}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testGetScores() throws IOException {
+		// score the same pages with an in-memory index
+		Index local = new Index();
+		WikiFetcher wf = new WikiFetcher();
+		local.indexPage(url1, wf.readWikipedia(url1));
+		local.indexPage(url2, wf.readWikipedia(url2));
+
+		assertThat(index.numDocs(), is(2));
+		assertThat(index.docFrequency("the"), is(2));
+		MyObjectIntMap<String> lengths = index.docLengths(Arrays.asList(url1, url2, "nosuchurl"));
+		MyObjectIntMap<String> expectedLengths = local.docLengths(Arrays.asList(url1, url2));
+		assertThat(lengths.get(url1), is(expectedLengths.get(url1)));
+		assertThat(lengths.get(url2), is(expectedLengths.get(url2)));
+		assertThat(lengths.containsKey("nosuchurl"), is(false));
+
+		Scorer scorer = new BM25Scorer();
+		Map<String, Double> expected = local.getScores("java", scorer);
+		Map<String, Double> actual = index.getScores("java", scorer);
+		assertEquals(expected.get(url1), actual.get(url1), 1e-9);
+		assertEquals(expected.get(url2), actual.get(url2), 1e-9);
+	}
+
+	/**
+	 * Checks that reindexing an unchanged page that has no length, because
+	 * it was indexed before lengths were kept, adds the length.
+	 */
+	@Test
+	public void testReindexWithoutLength() {
+		String url = "https://en.wikipedia.org/wiki/JedisIndexLengthTest";
+		TermCounter tc = new TermCounter(url);
+		tc.put("jedisindexlengthtest", 4);
+		index.pushTermCounterToRedis(tc);
+		jedis.hdel("DocLengths", url);
+		assertThat(index.docLengths(Arrays.asList(url)).containsKey(url), is(false));
+
+		assertThat(index.pushTermCounterToRedis(tc).isEmpty(), is(false));
+		assertThat(index.docLengths(Arrays.asList(url)).get(url), is(4));
+
+		// now the page is really unchanged
+		assertThat(index.pushTermCounterToRedis(tc).isEmpty(), is(true));
+	}
 }
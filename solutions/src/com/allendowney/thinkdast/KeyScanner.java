@@ -0,0 +1,101 @@
+package com.allendowney.thinkdast;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * Iterates the Redis keys that match a pattern, one SCAN page at a time.
+ *
+ * Each call to SCAN does a bounded amount of work, so this does not
+ * block other clients the way KEYS does.  As with SCAN, a key may be
+ * returned more than once, and keys added or removed during the
+ * iteration may or may not be returned.
+ *
+ * A connection is borrowed for each SCAN call, not for the whole
+ * iteration, so the caller can use the pool between calls to next.
+ *
+ * @author downey
+ *
+ */
+public class KeyScanner implements Iterator<String> {
+	private final JedisConnectionPool pool;
+	private final ScanParams params;
+	private String cursor = ScanParams.SCAN_POINTER_START;
+	private boolean done = false;
+	private Iterator<String> page = Collections.<String>emptyList().iterator();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pool       connections to borrow, one per SCAN call
+	 * @param pattern    glob-style pattern, as for KEYS
+	 * @param scanCount  COUNT hint, roughly the number of keys examined per call
+	 */
+	public KeyScanner(JedisConnectionPool pool, String pattern, int scanCount) {
+		this.pool = pool;
+		this.params = new ScanParams().match(pattern).count(scanCount);
+	}
+
+	@Override
+	public boolean hasNext() {
+		// a page can be empty even if the scan is not finished
+		while (!page.hasNext() && !done) {
+			ScanResult<String> result;
+			Jedis jedis = pool.getResource();
+			try {
+				result = jedis.scan(cursor, params);
+			} finally {
+				pool.returnResource(jedis);
+			}
+			cursor = result.getStringCursor();
+			done = cursor.equals(ScanParams.SCAN_POINTER_START);
+			page = result.getResult().iterator();
+		}
+		return page.hasNext();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Wraps an iterator of keys that all start with `prefix` and returns
+	 * the rest of each key; for example, the terms from URLSet keys.
+	 *
+	 * @param keys
+	 * @param prefix
+	 * @return
+	 */
+	public static Iterator<String> suffixes(final Iterator<String> keys, final String prefix) {
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return keys.next().substring(prefix.length());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
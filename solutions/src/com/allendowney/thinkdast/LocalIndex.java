@@ -0,0 +1,575 @@
+package com.allendowney.thinkdast;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+
+/**
+ * Represents an in-memory web search index.
+ *
+ * Each page gets a small integer docId, and each term maps to a
+ * compressed list of (docId, count) pairs, so a lookup decodes one
+ * byte array instead of making a request per URL.
+ *
+ * When a page is indexed again, it gets a new docId and the old one is
+ * marked as deleted; lookups skip deleted docIds, and compact() removes
+ * them from the lists.  Each term also keeps the number of live pages
+ * that contain it, so docFrequency doesn't have to skip deleted docIds;
+ * to update it, the index remembers the terms of each live page.
+ *
+ * The length of each page is kept in an array indexed by docId.  For
+ * ranked searches, the length norm of every page is computed once and
+ * cached, so scoring a posting is an array lookup and a few arithmetic
+ * operations; the cache is rebuilt when a page is added.
+ *
+ * topK evaluates multi-term queries a document at a time with WAND
+ * pruning, so it can skip most of the postings of common terms.
+ *
+ * @author downey
+ *
+ */
+public class LocalIndex implements ScoringIndex {
+
+	// map from term to postings list and document frequency
+	private Map<String, Term> postings = new HashMap<String, Term>();
+
+	// map from docId to the terms on the page, or null if it was replaced
+	private List<Term[]> docTerms = new ArrayList<Term[]>();
+
+	// map from docId to URL, or null if the document was replaced
+	private List<String> urls = new ArrayList<String>();
+
+	// map from URL to its current docId
+	private Map<String, Integer> docIds = new HashMap<String, Integer>();
+
+	// number of docIds that have been replaced
+	private int deleted = 0;
+
+	// map from docId to the number of terms on the page
+	private int[] lengths = new int[16];
+
+	// total length of the pages that have not been replaced
+	private long totalLength = 0;
+
+	// length norms by docId, the smallest of them, and the Scorer and
+	// number of docIds they were computed for
+	private double[] norms;
+	private double minNorm;
+	private Scorer normScorer;
+	private int normCount;
+
+	/**
+	 * The postings list of a term, and the number of live pages in it.
+	 */
+	private static class Term {
+		private PostingsList list = new PostingsList();
+		private int df = 0;
+	}
+
+	@Override
+	public boolean isIndexed(String url) {
+		return docIds.containsKey(url);
+	}
+
+	/**
+	 * Returns the number of pages in the index.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return docIds.size();
+	}
+
+	@Override
+	public Set<String> getURLs(String term) {
+		Set<String> set = new HashSet<String>();
+		PostingsList list = list(term);
+		if (list != null) {
+			PostingsList.Cursor cursor = list.cursor();
+			while (cursor.next()) {
+				String url = urls.get(cursor.docId());
+				if (url != null) {
+					set.add(url);
+				}
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Returns the postings list of a term, or null if it is not indexed.
+	 */
+	private PostingsList list(String term) {
+		Term t = postings.get(term);
+		return t == null ? null : t.list;
+	}
+
+	@Override
+	public Map<String, Integer> getCounts(String term) {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		PostingsList list = list(term);
+		if (list != null) {
+			PostingsList.Cursor cursor = list.cursor();
+			while (cursor.next()) {
+				String url = urls.get(cursor.docId());
+				if (url != null) {
+					map.put(url, cursor.tf());
+				}
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Looks up several terms and returns the pages that contain all of
+	 * them, with the total count of the terms on each page.
+	 *
+	 * Gives the same result as combining WikiSearch.search for each term
+	 * with WikiSearch.and, but walks the postings lists together with a
+	 * PostingsIntersection, so the cost depends mostly on the rarest term
+	 * and no map is built for the others.
+	 *
+	 * @param terms
+	 * @return Map from URL to total count.
+	 */
+	@Override
+	public Map<String, Integer> getCountsForAll(Collection<String> terms) {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		List<PostingsList> lists = new ArrayList<PostingsList>();
+		for (String term: new LinkedHashSet<String>(terms)) {
+			PostingsList list = list(term);
+			if (list == null) {
+				return map;
+			}
+			lists.add(list);
+		}
+
+		PostingsIntersection it = new PostingsIntersection(lists);
+		while (it.next()) {
+			String url = urls.get(it.docId());
+			if (url != null) {
+				int total = 0;
+				for (int i=0; i<lists.size(); i++) {
+					total += it.tf(i);
+				}
+				map.put(url, total);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the number of times the given term appears at the given URL.
+	 *
+	 * @param url
+	 * @param term
+	 * @return
+	 */
+	public int getCount(String url, String term) {
+		Integer docId = docIds.get(url);
+		PostingsList list = list(term);
+		if (docId == null || list == null) {
+			return 0;
+		}
+		PostingsList.Cursor cursor = list.cursor();
+		while (cursor.next() && cursor.docId() <= docId) {
+			if (cursor.docId() == docId) {
+				return cursor.tf();
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void indexPage(String url, Elements paragraphs) {
+		// make a TermCounter and count the terms in the paragraphs
+		TermCounter tc = new TermCounter(url);
+		tc.processElements(paragraphs);
+
+		addTermCounter(tc);
+	}
+
+	/**
+	 * Adds the contents of a TermCounter to the index.
+	 *
+	 * If the page has already been indexed, the new counts replace the old.
+	 *
+	 * @param tc
+	 */
+	public void addTermCounter(TermCounter tc) {
+		String url = tc.getLabel();
+
+		// if this page has already been indexed, retire the old docId
+		Integer oldId = docIds.get(url);
+		if (oldId != null) {
+			urls.set(oldId, null);
+			totalLength -= lengths[oldId];
+			for (Term t: docTerms.get(oldId)) {
+				t.df--;
+			}
+			docTerms.set(oldId, null);
+			deleted++;
+		}
+
+		int docId = urls.size();
+		urls.add(url);
+		docIds.put(url, docId);
+
+		if (docId == lengths.length) {
+			lengths = Arrays.copyOf(lengths, docId * 2);
+		}
+		lengths[docId] = tc.size();
+		totalLength += lengths[docId];
+
+		Term[] terms = new Term[tc.keySet().size()];
+		int i = 0;
+		for (String term: tc.keySet()) {
+			Term t = postings.get(term);
+			if (t == null) {
+				t = new Term();
+				postings.put(term, t);
+			}
+			t.list.add(docId, tc.get(term));
+			t.df++;
+			terms[i++] = t;
+		}
+		docTerms.add(terms);
+
+		// once most of the docIds are dead, it's worth rewriting the lists
+		if (deleted > docIds.size()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Removes deleted documents from the postings lists.
+	 *
+	 * DocIds are not renumbered, so the lists keep their order.
+	 */
+	public void compact() {
+		Map<String, Term> compacted = new HashMap<String, Term>();
+		for (Entry<String, Term> entry: postings.entrySet()) {
+			Term t = entry.getValue();
+			PostingsList list = new PostingsList();
+			PostingsList.Cursor cursor = t.list.cursor();
+			while (cursor.next()) {
+				if (urls.get(cursor.docId()) != null) {
+					list.add(cursor.docId(), cursor.tf());
+				}
+			}
+			// the Term stays the same object, so docTerms still refers to it
+			t.list = list;
+			t.df = list.size();
+			if (list.size() > 0) {
+				compacted.put(entry.getKey(), t);
+			}
+		}
+		postings = compacted;
+		deleted = 0;
+	}
+
+	/**
+	 * Returns the terms that appear on at least one page in the index,
+	 * not counting pages that have been replaced.
+	 */
+	@Override
+	public Set<String> termSet() {
+		Set<String> set = new HashSet<String>();
+		for (Entry<String, Term> entry: postings.entrySet()) {
+			if (entry.getValue().df > 0) {
+				set.add(entry.getKey());
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public int numDocs() {
+		return docIds.size();
+	}
+
+	@Override
+	public double averageDocLength() {
+		return docIds.isEmpty() ? 0 : (double) totalLength / docIds.size();
+	}
+
+	@Override
+	public int docFrequency(String term) {
+		Term t = postings.get(term);
+		return t == null ? 0 : t.df;
+	}
+
+	/**
+	 * Checks the postings list of a term for the given pages.
+	 *
+	 * The pages are checked in docId order, so the cursor only moves
+	 * forward, and Cursor.advance skips the postings in between.
+	 *
+	 * @param term
+	 * @param candidates
+	 * @return Set of URLs.
+	 */
+	@Override
+	public Set<String> containing(String term, Collection<String> candidates) {
+		Set<String> set = new HashSet<String>();
+		PostingsList list = list(term);
+		if (list == null) {
+			return set;
+		}
+		int[] ids = new int[candidates.size()];
+		int n = 0;
+		for (String url: candidates) {
+			Integer docId = docIds.get(url);
+			if (docId != null) {
+				ids[n++] = docId;
+			}
+		}
+		Arrays.sort(ids, 0, n);
+
+		PostingsList.Cursor cursor = list.cursor();
+		for (int i=0; i<n; i++) {
+			if (!cursor.advance(ids[i])) {
+				break;
+			}
+			if (cursor.docId() == ids[i]) {
+				set.add(urls.get(ids[i]));
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public MyObjectIntMap<String> docLengths(Collection<String> urls) {
+		MyObjectIntMap<String> res = new MyObjectIntMap<String>();
+		for (String url: urls) {
+			Integer docId = docIds.get(url);
+			if (docId != null) {
+				res.put(url, lengths[docId]);
+			}
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Double> getScores(String term, Scorer scorer) {
+		Map<String, Double> map = new HashMap<String, Double>();
+		PostingsList list = list(term);
+		if (list == null) {
+			return map;
+		}
+		double[] norms = lengthNorms(scorer);
+		double weight = scorer.termWeight(docFrequency(term), numDocs());
+
+		PostingsList.Cursor cursor = list.cursor();
+		while (cursor.next()) {
+			String url = urls.get(cursor.docId());
+			if (url != null) {
+				map.put(url, scorer.score(weight, cursor.tf(), norms[cursor.docId()]));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the length norm of every docId for the given Scorer.
+	 *
+	 * The norms are cached until the Scorer changes or a page is added.
+	 *
+	 * @param scorer
+	 * @return
+	 */
+	private double[] lengthNorms(Scorer scorer) {
+		if (scorer != normScorer || urls.size() != normCount) {
+			double averageLength = averageDocLength();
+			double[] array = new double[urls.size()];
+			double min = Double.POSITIVE_INFINITY;
+			for (int docId=0; docId<array.length; docId++) {
+				array[docId] = scorer.lengthNorm(lengths[docId], averageLength);
+				min = Math.min(min, array[docId]);
+			}
+			norms = array;
+			minNorm = min;
+			normScorer = scorer;
+			normCount = urls.size();
+		}
+		return norms;
+	}
+
+	/**
+	 * Returns the k pages with the highest total score for any of the
+	 * given terms, best first.
+	 *
+	 * Gives the same results as combining RankedSearch.search for each
+	 * term with RankedSearch.or and taking topK, but uses WAND: the
+	 * postings lists are read in docId order, and a page is only scored
+	 * if the upper bounds of the terms it could contain add up to at
+	 * least the lowest score in the current top k.  Lists whose cursors
+	 * are behind are advanced past pages that cannot make the cut.
+	 *
+	 * The upper bound of a term is its score with the largest tf in its
+	 * list and the smallest length norm in the index.
+	 *
+	 * @param terms
+	 * @param scorer
+	 * @param k
+	 * @return List of entries with URL and score, in descending order.
+	 */
+	public List<Entry<String, Double>> topK(Collection<String> terms, Scorer scorer, int k) {
+		if (k <= 0) {
+			return new ArrayList<Entry<String, Double>>();
+		}
+		double[] norms = lengthNorms(scorer);
+		int numDocs = numDocs();
+
+		// make a cursor for each term that is in the index
+		List<TermCursor> cursors = new ArrayList<TermCursor>();
+		for (String term: new LinkedHashSet<String>(terms)) {
+			PostingsList list = list(term);
+			if (list == null) {
+				continue;
+			}
+			double weight = scorer.termWeight(docFrequency(term), numDocs);
+			double upperBound = scorer.score(weight, list.maxTf(), minNorm);
+			TermCursor tc = new TermCursor(list.cursor(), weight, upperBound);
+			if (tc.cursor.next()) {
+				cursors.add(tc);
+			}
+		}
+
+		// ties are broken by URL, as in RankedSearch.topK
+		TopK<Double> top = new TopK<Double>(k, k);
+
+		while (!cursors.isEmpty()) {
+			Collections.sort(cursors);
+
+			// find the first cursor where the upper bounds add up to the
+			// threshold; no page before its docId can make the top k
+			Double lowest = top.threshold();
+			double threshold = lowest == null ? Double.NEGATIVE_INFINITY : lowest;
+			double bound = 0;
+			int pivot = -1;
+			for (int i=0; i<cursors.size(); i++) {
+				bound += cursors.get(i).upperBound;
+				if (bound >= threshold) {
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot == -1) {
+				break;
+			}
+			int pivotDoc = cursors.get(pivot).cursor.docId();
+
+			if (cursors.get(0).cursor.docId() == pivotDoc) {
+				// every cursor up to the pivot is on the pivot page, so score it
+				double score = 0;
+				for (TermCursor tc: cursors) {
+					if (tc.cursor.docId() != pivotDoc) {
+						break;
+					}
+					score += scorer.score(tc.weight, tc.cursor.tf(), norms[pivotDoc]);
+				}
+				String url = urls.get(pivotDoc);
+				if (url != null) {
+					top.offer(url, score);
+				}
+				advanceAll(cursors, pivotDoc + 1);
+			} else {
+				// skip the lagging cursors ahead to the pivot page
+				advanceAll(cursors, pivotDoc);
+			}
+		}
+
+		return top.toList();
+	}
+
+	/**
+	 * Advances the cursors that are before target and removes the ones
+	 * that run out.
+	 *
+	 * @param cursors
+	 * @param target
+	 */
+	private static void advanceAll(List<TermCursor> cursors, int target) {
+		for (int i=cursors.size()-1; i>=0; i--) {
+			PostingsList.Cursor cursor = cursors.get(i).cursor;
+			if (cursor.docId() < target && !cursor.advance(target)) {
+				cursors.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * A cursor over the postings of one query term, with the term's
+	 * weight and the most it can add to the score of a page.
+	 *
+	 * Sorts by current docId.
+	 */
+	private static class TermCursor implements Comparable<TermCursor> {
+		private final PostingsList.Cursor cursor;
+		private final double weight;
+		private final double upperBound;
+
+		private TermCursor(PostingsList.Cursor cursor, double weight, double upperBound) {
+			this.cursor = cursor;
+			this.weight = weight;
+			this.upperBound = upperBound;
+		}
+
+		@Override
+		public int compareTo(TermCursor that) {
+			return Integer.compare(this.cursor.docId(), that.cursor.docId());
+		}
+	}
+
+	/**
+	 * Prints the contents of the index.
+	 *
+	 * Should be used for development and testing, not production.
+	 */
+	public void printIndex() {
+		// loop through the search terms
+		for (String term: termSet()) {
+			System.out.println(term);
+
+			// for each term, print the pages where it appears
+			for (Entry<String, Integer> entry: getCounts(term).entrySet()) {
+				System.out.println("    " + entry.getKey() + " " + entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		LocalIndex index = new LocalIndex();
+		WikiFetcher wf = new WikiFetcher();
+
+		String url = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		index.indexPage(url, wf.readWikipedia(url));
+
+		url = "https://en.wikipedia.org/wiki/Programming_language";
+		index.indexPage(url, wf.readWikipedia(url));
+
+		long start = System.nanoTime();
+		Map<String, Integer> map = index.getCounts("the");
+		long elapsed = System.nanoTime() - start;
+		for (Entry<String, Integer> entry: map.entrySet()) {
+			System.out.println(entry);
+		}
+		System.out.println("Lookup took " + elapsed / 1000 + " microseconds");
+	}
+}
@@ -0,0 +1,226 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class LocalIndexTest {
+
+	private static String url1, url2;
+	private LocalIndex index;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		index = new LocalIndex();
+		loadIndex(index);
+	}
+
+	/**
+	 * Loads the index with two pages read from files.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private static void loadIndex(LocalIndex index) throws IOException {
+		WikiFetcher wf = new WikiFetcher();
+
+		url1 = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		Elements paragraphs = wf.readWikipedia(url1);
+		index.indexPage(url1, paragraphs);
+
+		url2 = "https://en.wikipedia.org/wiki/Programming_language";
+		paragraphs = wf.readWikipedia(url2);
+		index.indexPage(url2, paragraphs);
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#getCounts(java.lang.String)}.
+	 */
+	@Test
+	public void testGetCounts() {
+		Map<String, Integer> map = index.getCounts("the");
+		assertThat(map.get(url1), is(339));
+		assertThat(map.get(url2), is(264));
+		assertThat(index.getCount(url1, "the"), is(339));
+		assertThat(index.getCounts("nosuchterm").isEmpty(), is(true));
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#getURLs(java.lang.String)}.
+	 */
+	@Test
+	public void testGetURLs() {
+		assertThat(index.getURLs("the").size(), is(2));
+		assertThat(index.isIndexed(url1), is(true));
+		assertThat(index.isIndexed("https://en.wikipedia.org/wiki/Nothing"), is(false));
+		assertThat(index.termSet().contains("java"), is(true));
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#addTermCounter(TermCounter)}.
+	 */
+	@Test
+	public void testReindex() {
+		TermCounter tc = new TermCounter(url1);
+		tc.put("java", 5);
+		index.addTermCounter(tc);
+
+		assertThat(index.size(), is(2));
+		assertThat(index.getCounts("java").get(url1), is(5));
+		assertThat(index.getCounts("the").containsKey(url1), is(false));
+		assertThat(index.getCounts("the").get(url2), is(264));
+		assertThat(index.docFrequency("the"), is(1));
+
+		// a term that was only on the old page is gone right away
+		String url3 = "https://en.wikipedia.org/wiki/LocalReindexTest";
+		tc = new TermCounter(url3);
+		tc.put("localreindextest", 2);
+		index.addTermCounter(tc);
+		assertThat(index.termSet().contains("localreindextest"), is(true));
+		index.addTermCounter(new TermCounter(url3));
+		assertThat(index.docFrequency("localreindextest"), is(0));
+		assertThat(index.termSet().contains("localreindextest"), is(false));
+
+		index.compact();
+		assertThat(index.getCounts("java").get(url1), is(5));
+		assertThat(index.getURLs("the").size(), is(1));
+		assertThat(index.docFrequency("the"), is(1));
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#topK(java.util.Collection, Scorer, int)}.
+	 */
+	@Test
+	public void testTopK() {
+		// make pages whose term frequencies are skewed, as in real text
+		LocalIndex index = new LocalIndex();
+		Random random = new Random(18);
+		for (int i=0; i<2000; i++) {
+			TermCounter tc = new TermCounter("page" + i);
+			int length = 20 + random.nextInt(200);
+			for (int j=0; j<length; j++) {
+				double x = random.nextDouble();
+				tc.incrementTermCount("t" + (int) (1 / (x * x + 0.01)));
+			}
+			index.addTermCounter(tc);
+		}
+		// replace some pages, so there are deleted docIds
+		for (int i=0; i<2000; i+=7) {
+			TermCounter tc = new TermCounter("page" + i);
+			tc.put("t1", 1 + random.nextInt(10));
+			tc.put("t50", 1);
+			index.addTermCounter(tc);
+		}
+
+		List<List<String>> queries = Arrays.asList(
+				Arrays.asList("t1", "t2"),
+				Arrays.asList("t1", "t50", "t99"),
+				Arrays.asList("t3", "t3", "nosuchterm"),
+				Arrays.asList("t0", "t1", "t2", "t5", "t20"));
+		for (Scorer scorer: new Scorer[] {new BM25Scorer(), new TfIdfScorer()}) {
+			for (List<String> query: queries) {
+				RankedSearch expected = new RankedSearch(new HashMap<String, Double>());
+				for (String term: new LinkedHashSet<String>(query)) {
+					expected = expected.or(RankedSearch.search(term, index, scorer));
+				}
+				for (int k: new int[] {1, 10, 100}) {
+					List<Entry<String, Double>> want = expected.topK(k);
+					List<Entry<String, Double>> got = index.topK(query, scorer, k);
+					assertThat(got.size(), is(want.size()));
+					for (int i=0; i<want.size(); i++) {
+						assertEquals(want.get(i).getValue(), got.get(i).getValue(), 1e-9);
+					}
+				}
+			}
+		}
+		assertThat(index.topK(Arrays.asList("nosuchterm"), new BM25Scorer(), 10).isEmpty(), is(true));
+		assertThat(index.topK(Arrays.asList("t1"), new BM25Scorer(), 0).isEmpty(), is(true));
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#getCountsForAll(java.util.Collection)}.
+	 */
+	@Test
+	public void testGetCountsForAll() {
+		TermCounter tc = new TermCounter("https://en.wikipedia.org/wiki/Coffee");
+		tc.put("java", 3);
+		tc.put("espresso", 10);
+		index.addTermCounter(tc);
+
+		List<List<String>> queries = Arrays.asList(
+				Arrays.asList("the", "java"),
+				Arrays.asList("java", "espresso"),
+				Arrays.asList("the", "espresso"),
+				Arrays.asList("the", "nosuchterm"),
+				Arrays.asList("java", "java"));
+		for (List<String> query: queries) {
+			WikiSearch expected = WikiSearch.search(query.get(0), index)
+					.and(WikiSearch.search(query.get(1), index));
+			if (query.get(0).equals(query.get(1))) {
+				expected = WikiSearch.search(query.get(0), index);
+			}
+			WikiSearch actual = WikiSearch.searchAll(query, index);
+			assertThat(actual.size(), is(expected.size()));
+			for (Entry<String, Integer> entry: expected.topK(expected.size())) {
+				assertThat(actual.getRelevance(entry.getKey()), is(entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link LocalIndex#containing(String, java.util.Collection)}.
+	 */
+	@Test
+	public void testContaining() {
+		String coffee = "https://en.wikipedia.org/wiki/Coffee";
+		TermCounter tc = new TermCounter(coffee);
+		tc.put("java", 3);
+		index.addTermCounter(tc);
+		List<String> urls = Arrays.asList(coffee, url2, url1, "https://en.wikipedia.org/wiki/Tea");
+		assertThat(index.containing("java", urls), is((Set<String>) new HashSet<String>(Arrays.asList(url1, url2, coffee))));
+
+		// the old docId of a page that is indexed again doesn't count
+		tc = new TermCounter(coffee);
+		tc.put("espresso", 10);
+		index.addTermCounter(tc);
+		assertThat(index.containing("java", urls), is((Set<String>) new HashSet<String>(Arrays.asList(url1, url2))));
+		assertThat(index.containing("nosuchterm", urls).isEmpty(), is(true));
+	}
+
+	/**
+	 * Runs the crawler and the search with no Redis server.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCrawlAndSearch() throws IOException {
+		LocalIndex index = new LocalIndex();
+		WikiCrawler wc = new WikiCrawler(url1, index);
+		wc.crawl(true);
+		assertThat(index.isIndexed(url1), is(true));
+
+		WikiSearch search = WikiSearch.search("the", index);
+		assertThat(search.getRelevance(url1), is(339));
+	}
+}
@@ -0,0 +1,805 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Implementation of a sorted Map from String to String using a B+ tree
+ * stored in a file.
+ *
+ * The file is a sequence of fixed-size pages.  Page 0 is a header; the
+ * others are tree nodes.  Interior nodes hold keys and the page numbers
+ * of their children; leaves hold the entries and the page number of the
+ * next leaf, so a range scan follows the chain of leaves.
+ *
+ * The file is memory-mapped in segments, and a small LRU cache holds
+ * decoded nodes; changed nodes are written back when they are evicted
+ * or when the map is flushed.  Opening an existing file only reads the
+ * header, so it takes about the same time however big the map is, and
+ * only the pages that are used are ever brought into memory.  The last
+ * segment is mapped only as far as the pages in use, and grows by
+ * doubling, so a small map makes a small file.
+ *
+ * Nodes are changed in place, so the file is only consistent after
+ * flush or close.  The header has a flag that is set, and forced to
+ * disk, before the first change after a flush, and cleared after
+ * everything else has been forced; a file that was not closed after it
+ * was changed can't be opened.
+ *
+ * Like MyTreeMap, keys are kept in the order of String.compareTo, and
+ * null keys are not allowed.  Neither are null values.
+ *
+ * remove takes entries out of their leaf but does not merge leaves;
+ * the space is reused by later puts into the same key range.
+ *
+ * @author downey
+ *
+ */
+public class MyDiskTreeMap extends AbstractMap<String, String> implements Closeable {
+
+	public static final int PAGE_SIZE = 4096;
+
+	// largest encoded entry, so that any leaf can be split into two that fit
+	public static final int MAX_ENTRY_BYTES = PAGE_SIZE / 4;
+
+	private static final int MAGIC = 0x42545245;
+	private static final int SEGMENT_PAGES = 16384;
+	private static final long SEGMENT_BYTES = (long) SEGMENT_PAGES * PAGE_SIZE;
+
+	// the smallest mapping; the last segment doubles from here
+	private static final long MIN_MAP_BYTES = 16L * PAGE_SIZE;
+
+	// bytes used by the node header: type, count, next leaf
+	private static final int NODE_HEADER = 1 + 2 + 4;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+	private final int cachePages;
+	private final LinkedHashMap<Integer, Node> cache;
+
+	private int root;
+	private long size;
+	private int pageCount;
+
+	// whether the file has changed since the last flush
+	private boolean changed = false;
+
+	/**
+	 * Represents a node of the tree, decoded from its page.
+	 */
+	private class Node {
+		final int page;
+		boolean leaf;
+		List<String> keys = new ArrayList<String>();
+
+		// for leaves: the values, and the page of the next leaf (or 0)
+		List<String> values;
+		int next = 0;
+
+		// for interior nodes: children.get(i) holds keys less than keys.get(i)
+		List<Integer> children;
+
+		boolean dirty = false;
+
+		Node(int page, boolean leaf) {
+			this.page = page;
+			this.leaf = leaf;
+			if (leaf) {
+				values = new ArrayList<String>();
+			} else {
+				children = new ArrayList<Integer>();
+			}
+		}
+
+		/**
+		 * Returns the number of bytes needed to encode this node.
+		 */
+		int encodedSize() {
+			int total = NODE_HEADER;
+			if (!leaf) {
+				total += 4;
+			}
+			for (int i=0; i<keys.size(); i++) {
+				total += entrySize(keys.get(i), leaf ? values.get(i) : null);
+			}
+			return total;
+		}
+
+		/**
+		 * Returns the index of the first key >= `key`.
+		 */
+		int search(String key) {
+			int index = Collections.binarySearch(keys, key);
+			return index >= 0 ? index : -index - 1;
+		}
+
+		/**
+		 * Returns the index of the child whose subtree could contain `key`.
+		 */
+		int childIndex(String key) {
+			int index = Collections.binarySearch(keys, key);
+			return index >= 0 ? index + 1 : -index - 1;
+		}
+	}
+
+	/**
+	 * Opens the map stored in `file`, creating it if necessary, with a
+	 * cache of 1024 pages.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public MyDiskTreeMap(File file) throws IOException {
+		this(file, 1024);
+	}
+
+	/**
+	 * Opens the map stored in `file`, creating it if necessary.
+	 *
+	 * @param file
+	 * @param cachePages  number of decoded pages to keep in memory (at least 16)
+	 * @throws IOException
+	 */
+	public MyDiskTreeMap(File file, int cachePages) throws IOException {
+		this.cachePages = Math.max(cachePages, 16);
+		this.cache = new LinkedHashMap<Integer, Node>(this.cachePages * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+				if (size() > MyDiskTreeMap.this.cachePages) {
+					writeNode(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+
+		boolean exists = file.exists() && file.length() > 0;
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+
+		if (exists) {
+			mapSegments(channel.size());
+			ByteBuffer header = page(0);
+			if (header.getInt() != MAGIC || header.getInt() != PAGE_SIZE) {
+				close();
+				throw new IOException("not a MyDiskTreeMap file: " + file);
+			}
+			int root = header.getInt();
+			size = header.getLong();
+			pageCount = header.getInt();
+			if (header.getInt() != 0) {
+				close();
+				throw new IOException("MyDiskTreeMap file was not closed: " + file);
+			}
+			this.root = root;
+		} else {
+			pageCount = 1;
+			initTree();
+			flush();
+		}
+	}
+
+	/**
+	 * Makes an empty tree: a root that is an empty leaf.
+	 */
+	private void initTree() {
+		Node node = allocate(true);
+		root = node.page;
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode an entry.
+	 *
+	 * @param key
+	 * @param value  or null for an interior key, which is followed by a child
+	 * @return
+	 */
+	private static int entrySize(String key, String value) {
+		int total = 2 + utf8Length(key);
+		if (value == null) {
+			total += 4;
+		} else {
+			total += 2 + utf8Length(value);
+		}
+		return total;
+	}
+
+	/**
+	 * Counts the bytes in the UTF-8 encoding of `s` without encoding it.
+	 *
+	 * @param s
+	 * @return
+	 */
+	private static int utf8Length(String s) {
+		int count = 0;
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				count += 1;
+			} else if (c < 0x800) {
+				count += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				count += 4;
+				i++;
+			} else {
+				count += 3;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Makes sure the file and the mapped segments cover at least `bytes`.
+	 *
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void mapSegments(long bytes) throws IOException {
+		while (true) {
+			int last = segments.size() - 1;
+			long mapped = last < 0 ? 0 : last * SEGMENT_BYTES + segments.get(last).capacity();
+			if (mapped >= bytes) {
+				return;
+			}
+			if (last >= 0 && segments.get(last).capacity() < SEGMENT_BYTES) {
+				// remap the last segment, at least twice as big
+				long start = last * SEGMENT_BYTES;
+				long length = Math.max(bytes - start, 2L * segments.get(last).capacity());
+				segments.set(last, map(start, Math.min(length, SEGMENT_BYTES)));
+			} else {
+				long start = segments.size() * SEGMENT_BYTES;
+				long length = Math.max(bytes - start, MIN_MAP_BYTES);
+				segments.add(map(start, Math.min(length, SEGMENT_BYTES)));
+			}
+		}
+	}
+
+	/**
+	 * Maps part of the file, rounded up to a whole number of pages.
+	 */
+	private MappedByteBuffer map(long start, long length) throws IOException {
+		long pages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+		return channel.map(FileChannel.MapMode.READ_WRITE, start, pages * PAGE_SIZE);
+	}
+
+	/**
+	 * Returns a buffer positioned at the start of page `page`, with its
+	 * limit at the end of the page.
+	 *
+	 * @param page
+	 * @return
+	 */
+	private ByteBuffer page(int page) {
+		ByteBuffer buffer = segments.get(page / SEGMENT_PAGES).duplicate();
+		int offset = (page % SEGMENT_PAGES) * PAGE_SIZE;
+		buffer.limit(offset + PAGE_SIZE);
+		buffer.position(offset);
+		return buffer;
+	}
+
+	/**
+	 * Makes a new node in a new page at the end of the file.
+	 *
+	 * @param leaf
+	 * @return
+	 */
+	private Node allocate(boolean leaf) {
+		int page = pageCount++;
+		try {
+			mapSegments((long) pageCount * PAGE_SIZE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Node node = new Node(page, leaf);
+		node.dirty = true;
+		cache.put(page, node);
+		return node;
+	}
+
+	/**
+	 * Returns the node in `page`, from the cache if possible.
+	 *
+	 * @param page
+	 * @return
+	 */
+	private Node readNode(int page) {
+		Node node = cache.get(page);
+		if (node != null) {
+			return node;
+		}
+		ByteBuffer buffer = page(page);
+		boolean leaf = buffer.get() == 0;
+		int count = buffer.getShort() & 0xffff;
+		node = new Node(page, leaf);
+		node.next = buffer.getInt();
+		if (leaf) {
+			for (int i=0; i<count; i++) {
+				node.keys.add(readString(buffer));
+				node.values.add(readString(buffer));
+			}
+		} else {
+			node.children.add(buffer.getInt());
+			for (int i=0; i<count; i++) {
+				node.keys.add(readString(buffer));
+				node.children.add(buffer.getInt());
+			}
+		}
+		cache.put(page, node);
+		return node;
+	}
+
+	/**
+	 * Marks a node as changed and makes sure it is in the cache, so it
+	 * will be written back.
+	 *
+	 * @param node
+	 */
+	private void touch(Node node) {
+		node.dirty = true;
+		cache.put(node.page, node);
+	}
+
+	/**
+	 * Encodes a node into its page if it has changed.
+	 *
+	 * @param node
+	 */
+	private void writeNode(Node node) {
+		if (!node.dirty) {
+			return;
+		}
+		ByteBuffer buffer = page(node.page);
+		buffer.put((byte) (node.leaf ? 0 : 1));
+		buffer.putShort((short) node.keys.size());
+		buffer.putInt(node.next);
+		if (node.leaf) {
+			for (int i=0; i<node.keys.size(); i++) {
+				writeString(buffer, node.keys.get(i));
+				writeString(buffer, node.values.get(i));
+			}
+		} else {
+			buffer.putInt(node.children.get(0));
+			for (int i=0; i<node.keys.size(); i++) {
+				writeString(buffer, node.keys.get(i));
+				buffer.putInt(node.children.get(i+1));
+			}
+		}
+		node.dirty = false;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xffff;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(ByteBuffer buffer, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes all changed pages to the file, then the header.
+	 */
+	public void flush() {
+		for (Node node: cache.values()) {
+			writeNode(node);
+		}
+		for (MappedByteBuffer segment: segments) {
+			segment.force();
+		}
+		writeHeader(false);
+		changed = false;
+	}
+
+	/**
+	 * Marks the file as changed, before the first change since the last
+	 * flush reaches the file.
+	 */
+	private void change() {
+		if (!changed) {
+			writeHeader(true);
+			changed = true;
+		}
+	}
+
+	/**
+	 * Writes the header and forces it to disk.
+	 *
+	 * @param changed  whether the pages may not match the header
+	 */
+	private void writeHeader(boolean changed) {
+		ByteBuffer header = page(0);
+		header.putInt(MAGIC);
+		header.putInt(PAGE_SIZE);
+		header.putInt(root);
+		header.putLong(size);
+		header.putInt(pageCount);
+		header.putInt(changed ? 1 : 0);
+		segments.get(0).force();
+	}
+
+	/**
+	 * Flushes the map and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!segments.isEmpty() && root != 0) {
+			flush();
+		}
+		segments.clear();
+		cache.clear();
+		channel.close();
+		file.close();
+	}
+
+	/**
+	 * Finds the leaf whose key range includes `key`.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private Node findLeaf(String key) {
+		Node node = readNode(root);
+		while (!node.leaf) {
+			node = readNode(node.children.get(node.childIndex(key)));
+		}
+		return node;
+	}
+
+	/**
+	 * Checks that a key is a String and not null.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static String checkKey(Object key) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		return (String) key;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public String get(Object target) {
+		String key = checkKey(target);
+		Node leaf = findLeaf(key);
+		int i = leaf.search(key);
+		if (i < leaf.keys.size() && leaf.keys.get(i).equals(key)) {
+			return leaf.values.get(i);
+		}
+		return null;
+	}
+
+	@Override
+	public String put(String key, String value) {
+		checkKey(key);
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		if (entrySize(key, value) > MAX_ENTRY_BYTES) {
+			throw new IllegalArgumentException("entry too big: " + key);
+		}
+		change();
+
+		// walk down, remembering the path for splits
+		List<Node> path = new ArrayList<Node>();
+		Node node = readNode(root);
+		while (!node.leaf) {
+			path.add(node);
+			node = readNode(node.children.get(node.childIndex(key)));
+		}
+
+		int i = node.search(key);
+		if (i < node.keys.size() && node.keys.get(i).equals(key)) {
+			String oldValue = node.values.get(i);
+			node.values.set(i, value);
+			touch(node);
+			if (node.encodedSize() > PAGE_SIZE) {
+				split(node, path);
+			}
+			return oldValue;
+		}
+		node.keys.add(i, key);
+		node.values.add(i, value);
+		touch(node);
+		size++;
+		if (node.encodedSize() > PAGE_SIZE) {
+			split(node, path);
+		}
+		return null;
+	}
+
+	/**
+	 * Splits an overfull node in two and adds the new one to its parent,
+	 * splitting the parent if necessary.
+	 *
+	 * @param node
+	 * @param path  the ancestors of `node`, starting at the root
+	 */
+	private void split(Node node, List<Node> path) {
+		while (node.encodedSize() > PAGE_SIZE) {
+			// split where about half the bytes are on each side
+			int half = node.encodedSize() / 2;
+			int bytes = NODE_HEADER;
+			int mid = 0;
+			while (mid < node.keys.size() - 1 && bytes < half) {
+				bytes += entrySize(node.keys.get(mid), node.leaf ? node.values.get(mid) : null);
+				mid++;
+			}
+			mid = Math.max(mid, 1);
+
+			Node right = allocate(node.leaf);
+			String separator;
+			if (node.leaf) {
+				List<String> keys = node.keys.subList(mid, node.keys.size());
+				List<String> values = node.values.subList(mid, node.values.size());
+				right.keys.addAll(keys);
+				right.values.addAll(values);
+				keys.clear();
+				values.clear();
+				right.next = node.next;
+				node.next = right.page;
+				separator = right.keys.get(0);
+			} else {
+				// the middle key moves up to the parent
+				separator = node.keys.get(mid);
+				List<String> keys = node.keys.subList(mid + 1, node.keys.size());
+				List<Integer> children = node.children.subList(mid + 1, node.children.size());
+				right.keys.addAll(keys);
+				right.children.addAll(children);
+				keys.clear();
+				children.clear();
+				node.keys.remove(mid);
+			}
+			touch(node);
+			touch(right);
+
+			if (path.isEmpty()) {
+				Node newRoot = allocate(false);
+				newRoot.children.add(node.page);
+				newRoot.keys.add(separator);
+				newRoot.children.add(right.page);
+				root = newRoot.page;
+				return;
+			}
+			Node parent = path.remove(path.size() - 1);
+			int index = parent.children.indexOf(node.page);
+			parent.keys.add(index, separator);
+			parent.children.add(index + 1, right.page);
+			touch(parent);
+			node = parent;
+		}
+	}
+
+	@Override
+	public String remove(Object target) {
+		String key = checkKey(target);
+		Node leaf = findLeaf(key);
+		int i = leaf.search(key);
+		if (i < leaf.keys.size() && leaf.keys.get(i).equals(key)) {
+			change();
+			leaf.keys.remove(i);
+			String oldValue = leaf.values.remove(i);
+			touch(leaf);
+			size--;
+			return oldValue;
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of entries, which may exceed Integer.MAX_VALUE.
+	 *
+	 * @return
+	 */
+	public long longSize() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all entries.  The file keeps its length, and the pages are reused.
+	 */
+	@Override
+	public void clear() {
+		change();
+		cache.clear();
+		pageCount = 1;
+		initTree();
+	}
+
+	/**
+	 * Returns the smallest key greater than or equal to `key`, or null.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public String ceilingKey(String key) {
+		Iterator<Map.Entry<String, String>> it = new EntryIterator(key, null);
+		return it.hasNext() ? it.next().getKey() : null;
+	}
+
+	/**
+	 * Returns the smallest key, or null if the map is empty.
+	 *
+	 * @return
+	 */
+	public String firstKey() {
+		Iterator<Map.Entry<String, String>> it = new EntryIterator(null, null);
+		return it.hasNext() ? it.next().getKey() : null;
+	}
+
+	/**
+	 * Returns the entries with keys from `fromKey`, inclusive, to `toKey`,
+	 * exclusive, in order.  Either bound can be null, meaning no bound.
+	 *
+	 * Finding the first entry costs one walk from the root; after that the
+	 * scan follows the chain of leaves.
+	 *
+	 * @param fromKey
+	 * @param toKey
+	 * @return
+	 */
+	public Iterable<Map.Entry<String, String>> range(final String fromKey, final String toKey) {
+		return new Iterable<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator(fromKey, toKey);
+			}
+		};
+	}
+
+	/**
+	 * Returns a view of the entries, in order of their keys.
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator(null, null);
+			}
+
+			@Override
+			public int size() {
+				return MyDiskTreeMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Iterates the entries in a range by following the chain of leaves.
+	 *
+	 * It copies one leaf at a time, so it should not be used while the
+	 * map is changed other than through its own remove method.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+		private final String toKey;
+		private List<String> keys;
+		private List<String> values;
+		private int index;
+		private int next;
+		private String lastKey = null;
+
+		EntryIterator(String fromKey, String toKey) {
+			this.toKey = toKey;
+			Node leaf;
+			if (fromKey == null) {
+				leaf = readNode(root);
+				while (!leaf.leaf) {
+					leaf = readNode(leaf.children.get(0));
+				}
+			} else {
+				leaf = findLeaf(fromKey);
+			}
+			load(leaf);
+			index = fromKey == null ? 0 : leaf.search(fromKey);
+		}
+
+		private void load(Node leaf) {
+			keys = new ArrayList<String>(leaf.keys);
+			values = new ArrayList<String>(leaf.values);
+			next = leaf.next;
+			index = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			// skip to the next leaf that has entries
+			while (index >= keys.size() && next != 0) {
+				load(readNode(next));
+			}
+			if (index >= keys.size()) {
+				return false;
+			}
+			return toKey == null || keys.get(index).compareTo(toKey) < 0;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastKey = keys.get(index);
+			String value = values.get(index);
+			index++;
+			return new AbstractMap.SimpleImmutableEntry<String, String>(lastKey, value);
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			MyDiskTreeMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		File f = File.createTempFile("MyDiskTreeMap", ".db");
+		f.deleteOnExit();
+
+		MyDiskTreeMap map = new MyDiskTreeMap(f);
+		for (int i=0; i<100000; i++) {
+			map.put(String.format("%08d", i), Integer.toString(i));
+		}
+		map.close();
+
+		long start = System.currentTimeMillis();
+		map = new MyDiskTreeMap(f);
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.println("Reopened " + map.size() + " entries in " + elapsed + " ms");
+
+		for (Map.Entry<String, String> entry: map.range("00001000", "00001005")) {
+			System.out.println(entry.getKey() + ", " + entry.getValue());
+		}
+		map.close();
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author downey
+ *
+ */
+public class MyDiskTreeMapTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private MyDiskTreeMap map;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		file = new File(folder.getRoot(), "tree.db");
+		map = new MyDiskTreeMap(file, 16);
+		map.put("One", "1");
+		map.put("Two", "2");
+		map.put("Three", "3");
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		map.close();
+	}
+
+	/**
+	 * Test method for {@link MyDiskTreeMap#get(java.lang.Object)}.
+	 */
+	@Test
+	public void testGet() {
+		assertThat(map.get("Three"), is("3"));
+		assertThat(map.get("Four"), nullValue());
+		assertThat(map.containsKey("One"), is(true));
+		assertThat(map.put("One", "uno"), is("1"));
+		assertThat(map.get("One"), is("uno"));
+		assertThat(map.size(), is(3));
+	}
+
+	/**
+	 * Test method for {@link MyDiskTreeMap#remove(java.lang.Object)}.
+	 */
+	@Test
+	public void testRemove() {
+		assertThat(map.remove("Two"), is("2"));
+		assertThat(map.remove("Two"), nullValue());
+		assertThat(map.size(), is(2));
+		assertThat(map.firstKey(), is("One"));
+	}
+
+	/**
+	 * Compares many random puts and removes with a TreeMap, across a reopen.
+	 */
+	@Test
+	public void testManyAndReopen() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		expected.putAll(map);
+		Random random = new Random(17);
+		List<String> keys = new ArrayList<String>();
+		for (int i=0; i<20000; i++) {
+			String key = Integer.toString(random.nextInt(1000000), 36);
+			String value = Integer.toString(i);
+			keys.add(key);
+			assertThat(map.put(key, value), is(expected.put(key, value)));
+		}
+		for (int i=0; i<keys.size(); i+=2) {
+			String key = keys.get(i);
+			assertThat(map.remove(key), is(expected.remove(key)));
+		}
+		assertThat(map.size(), is(expected.size()));
+
+		map.close();
+		map = new MyDiskTreeMap(file, 16);
+		assertThat(map.size(), is(expected.size()));
+		for (String key: keys) {
+			assertThat(map.get(key), is(expected.get(key)));
+		}
+
+		// the entries come back in order
+		Iterator<Map.Entry<String, String>> it = expected.entrySet().iterator();
+		for (Map.Entry<String, String> entry: map.entrySet()) {
+			assertThat(entry, is(it.next()));
+		}
+		assertThat(it.hasNext(), is(false));
+
+		// and so does a range
+		List<String> actual = new ArrayList<String>();
+		for (Map.Entry<String, String> entry: map.range("a", "b")) {
+			actual.add(entry.getKey());
+		}
+		List<String> range = new ArrayList<String>(expected.subMap("a", "b").keySet());
+		assertThat(actual, is(range));
+		assertThat(map.ceilingKey("a"), is(expected.ceilingKey("a")));
+	}
+
+	/**
+	 * Test method for {@link MyDiskTreeMap#clear()}.
+	 */
+	@Test
+	public void testClear() {
+		for (Iterator<Map.Entry<String, String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+			if (it.next().getKey().equals("Two")) {
+				it.remove();
+			}
+		}
+		assertThat(map.containsKey("Two"), is(false));
+		assertThat(map.size(), is(2));
+		map.clear();
+		assertThat(map.isEmpty(), is(true));
+		assertThat(map.get("One"), nullValue());
+	}
+
+	/**
+	 * Checks that a small map makes a small file.
+	 */
+	@Test
+	public void testFileSize() throws Exception {
+		map.flush();
+		assertThat(file.length() <= 16 * MyDiskTreeMap.PAGE_SIZE, is(true));
+	}
+
+	/**
+	 * Checks that a file that was changed and not closed is not opened.
+	 */
+	@Test
+	public void testNotClosed() throws Exception {
+		map.close();
+		map = new MyDiskTreeMap(file, 16);
+		assertThat(map.get("Two"), is("2"));
+
+		// opening it again while it is unchanged is fine
+		new MyDiskTreeMap(file, 16).close();
+
+		map.put("Four", "4");
+		try {
+			new MyDiskTreeMap(file, 16);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		map.flush();
+		MyDiskTreeMap other = new MyDiskTreeMap(file, 16);
+		assertThat(other.get("Four"), is("4"));
+		other.close();
+	}
+}
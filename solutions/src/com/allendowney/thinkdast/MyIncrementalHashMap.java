@@ -0,0 +1,221 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementation of a HashMap that rehashes incrementally.
+ *
+ * When the map grows, the old sub-maps are kept alongside the new ones
+ * and a few of them are migrated during each subsequent operation, so no
+ * single put has to copy every entry.
+ *
+ * @author downey
+ * @param <K>
+ * @param <V>
+ *
+ */
+public class MyIncrementalHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V> {
+
+	// number of old sub-maps migrated per operation
+	protected static final int STEP = 2;
+
+	// sub-maps that have not been migrated yet, or null
+	private List<MyLinearMap<K, V>> oldMaps = null;
+
+	// index of the next old sub-map to migrate
+	private int next = 0;
+
+	private int size = 0;
+
+	/**
+	 * Returns true if a rehash is in progress.
+	 *
+	 * @return
+	 */
+	public boolean isRehashing() {
+		return oldMaps != null;
+	}
+
+	/**
+	 * Finds the old sub-map that would contain the given key, or null if
+	 * there is no rehash in progress or that sub-map has been migrated.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private MyLinearMap<K, V> chooseOldMap(Object key) {
+		if (oldMaps == null) {
+			return null;
+		}
+		int index = key==null ? 0 : Math.abs(key.hashCode()) % oldMaps.size();
+		if (index < next) {
+			return null;
+		}
+		return oldMaps.get(index);
+	}
+
+	/**
+	 * Moves the entries of up to `steps` old sub-maps into the new ones.
+	 *
+	 * @param steps
+	 */
+	private void migrate(int steps) {
+		while (oldMaps != null && steps > 0) {
+			MyLinearMap<K, V> map = oldMaps.get(next);
+			for (Map.Entry<K, V> entry: map.getEntries()) {
+				chooseMap(entry.getKey()).put(entry.getKey(), entry.getValue());
+			}
+			oldMaps.set(next, null);
+			next++;
+			steps--;
+			if (next == oldMaps.size()) {
+				oldMaps = null;
+				next = 0;
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		oldMaps = null;
+		next = 0;
+		size = 0;
+	}
+
+	@Override
+	public boolean containsKey(Object target) {
+		if (chooseMap(target).containsKey(target)) {
+			return true;
+		}
+		MyLinearMap<K, V> old = chooseOldMap(target);
+		return old != null && old.containsKey(target);
+	}
+
+	@Override
+	public boolean containsValue(Object target) {
+		if (super.containsValue(target)) {
+			return true;
+		}
+		if (oldMaps != null) {
+			for (int i=next; i<oldMaps.size(); i++) {
+				if (oldMaps.get(i).containsValue(target)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public V get(Object key) {
+		MyLinearMap<K, V> map = chooseMap(key);
+		if (map.containsKey(key)) {
+			return map.get(key);
+		}
+		MyLinearMap<K, V> old = chooseOldMap(key);
+		return old == null ? null : old.get(key);
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> set = super.keySet();
+		if (oldMaps != null) {
+			for (int i=next; i<oldMaps.size(); i++) {
+				set.addAll(oldMaps.get(i).keySet());
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		migrate(STEP);
+
+		// if the key has not been migrated yet, move it now
+		V oldValue = null;
+		MyLinearMap<K, V> old = chooseOldMap(key);
+		if (old != null && old.containsKey(key)) {
+			oldValue = old.remove(key);
+			size--;
+		}
+
+		MyLinearMap<K, V> map = chooseMap(key);
+		size -= map.size();
+		V previous = map.put(key, value);
+		size += map.size();
+		if (previous != null) {
+			oldValue = previous;
+		}
+
+		if (size > maps.size() * FACTOR) {
+			rehash();
+		}
+		return oldValue;
+	}
+
+	@Override
+	public V remove(Object key) {
+		migrate(STEP);
+
+		MyLinearMap<K, V> old = chooseOldMap(key);
+		if (old != null && old.containsKey(key)) {
+			size--;
+			return old.remove(key);
+		}
+		MyLinearMap<K, V> map = chooseMap(key);
+		size -= map.size();
+		V oldValue = map.remove(key);
+		size += map.size();
+		return oldValue;
+	}
+
+	/**
+	 * Doubles the number of maps and starts migrating the existing entries.
+	 *
+	 * If a previous rehash is still in progress, it is finished first.
+	 */
+	@Override
+	protected void rehash() {
+		if (oldMaps != null) {
+			migrate(oldMaps.size());
+		}
+		oldMaps = maps;
+		next = 0;
+		makeMaps(oldMaps.size() * 2);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Collection<V> values() {
+		Collection<V> values = super.values();
+		if (oldMaps != null) {
+			for (int i=next; i<oldMaps.size(); i++) {
+				values.addAll(oldMaps.get(i).values());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Map<String, Integer> map = new MyIncrementalHashMap<String, Integer>();
+		for (int i=0; i<10; i++) {
+			map.put(Integer.toString(i), i);
+		}
+		Integer value = map.get("3");
+		System.out.println(value);
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * 
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class MyIncrementalHashMapTest extends MyLinearMapTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		map = new MyIncrementalHashMap<String, Integer>();
+		map.put("One", 1);
+		map.put("Two", 2);
+		map.put("Three", 3);
+		map.put(null, 0);
+	}
+
+	/**
+	 * Checks that every entry stays reachable while a rehash is in progress.
+	 */
+	@Test
+	public void testDuringRehash() {
+		MyIncrementalHashMap<String, Integer> m = new MyIncrementalHashMap<String, Integer>();
+		boolean sawRehash = false;
+		for (int i=0; i<1000; i++) {
+			m.put(Integer.toString(i), i);
+			if (m.isRehashing()) {
+				sawRehash = true;
+				for (int j=0; j<=i; j++) {
+					assertThat(m.get(Integer.toString(j)), is(j));
+				}
+			}
+		}
+		assertThat(sawRehash, is(true));
+		assertThat(m.size(), is(1000));
+		assertThat(m.keySet().size(), is(1000));
+
+		assertThat(m.put("7", 77), is(7));
+		assertThat(m.remove("8"), is(8));
+		assertThat(m.containsKey("8"), is(false));
+		assertThat(m.size(), is(999));
+	}
+}
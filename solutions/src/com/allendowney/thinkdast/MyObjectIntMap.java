@@ -0,0 +1,361 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hash map from objects to primitive ints, using open addressing.
+ *
+ * This is not a java.util.Map, since Map would box every value.  Keys
+ * and counts are stored in parallel arrays, and `increment` updates a
+ * count in place, so counting allocates nothing once a key is present.
+ * Missing keys have count 0.
+ *
+ * @author downey
+ * @param <K>
+ *
+ */
+public class MyObjectIntMap<K> {
+
+	// maximum fraction of slots in use before we resize
+	protected static final double FACTOR = 0.5;
+
+	// stands in for the null key, since a null slot means "empty"
+	private static final Object NULL_KEY = new Object();
+
+	private Object[] keys;
+	private int[] values;
+	private int size = 0;
+
+	/**
+	 * Initialize the map with 16 slots.
+	 */
+	public MyObjectIntMap() {
+		this(16);
+	}
+
+	/**
+	 * Initialize the map with room for at least `capacity` slots.
+	 *
+	 * @param capacity
+	 */
+	public MyObjectIntMap(int capacity) {
+		int n = 2;
+		while (n < capacity) {
+			n *= 2;
+		}
+		keys = new Object[n];
+		values = new int[n];
+	}
+
+	/**
+	 * Replaces the null key with the sentinel.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	/**
+	 * Computes the home slot of a (masked) key.
+	 *
+	 * @param key
+	 * @param length
+	 * @return
+	 */
+	private static int indexFor(Object key, int length) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h & (length - 1);
+	}
+
+	/**
+	 * Returns the slot that contains `key`, or the empty slot where it
+	 * would go.
+	 *
+	 * @param k  masked key
+	 * @return
+	 */
+	private int findSlot(Object k) {
+		int mask = keys.length - 1;
+		int i = indexFor(k, keys.length);
+		while (keys[i] != null) {
+			if (keys[i] == k || keys[i].equals(k)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the count associated with `key`, or 0 if there is none.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int get(Object key) {
+		int i = findSlot(mask(key));
+		return keys[i] == null ? 0 : values[i];
+	}
+
+	/**
+	 * Returns true if `key` has been added to the map.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public boolean containsKey(Object key) {
+		return keys[findSlot(mask(key))] != null;
+	}
+
+	/**
+	 * Associates `key` with `value` and returns the old value, or 0.
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public int put(K key, int value) {
+		Object k = mask(key);
+		int i = findSlot(k);
+		if (keys[i] != null) {
+			int oldValue = values[i];
+			values[i] = value;
+			return oldValue;
+		}
+		insert(i, k, value);
+		return 0;
+	}
+
+	/**
+	 * Adds `delta` to the count for `key` and returns the new count.
+	 *
+	 * @param key
+	 * @param delta
+	 * @return
+	 */
+	public int increment(K key, int delta) {
+		Object k = mask(key);
+		int i = findSlot(k);
+		if (keys[i] != null) {
+			values[i] += delta;
+			return values[i];
+		}
+		insert(i, k, delta);
+		return delta;
+	}
+
+	/**
+	 * Adds `delta` to the count for the String spelled by
+	 * chars[offset:offset+length] and returns the new count.
+	 *
+	 * Only meaningful for maps with String keys.  The String is created
+	 * only the first time a term is seen, so repeated terms allocate nothing.
+	 *
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @param delta
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public int incrementChars(char[] chars, int offset, int length, int delta) {
+		// same as String.hashCode, so the slice lands where the String would
+		int h = 0;
+		for (int j=0; j<length; j++) {
+			h = 31 * h + chars[offset + j];
+		}
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+
+		int mask = keys.length - 1;
+		int i = h & mask;
+		while (keys[i] != null) {
+			if (matches(keys[i], chars, offset, length)) {
+				values[i] += delta;
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		insert(i, (K) new String(chars, offset, length), delta);
+		return delta;
+	}
+
+	/**
+	 * Returns true if `key` is a String equal to chars[offset:offset+length].
+	 *
+	 * @param key
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	private static boolean matches(Object key, char[] chars, int offset, int length) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		String s = (String) key;
+		if (s.length() != length) {
+			return false;
+		}
+		for (int j=0; j<length; j++) {
+			if (s.charAt(j) != chars[offset + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores a new key in the empty slot `i` and resizes if needed.
+	 *
+	 * @param i
+	 * @param k
+	 * @param value
+	 */
+	private void insert(int i, Object k, int value) {
+		keys[i] = k;
+		values[i] = value;
+		size++;
+		if (size > keys.length * FACTOR) {
+			rehash();
+		}
+	}
+
+	/**
+	 * Doubles the number of slots and reinserts the existing entries.
+	 */
+	protected void rehash() {
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new Object[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+
+		int mask = keys.length - 1;
+		for (int j=0; j<oldKeys.length; j++) {
+			Object k = oldKeys[j];
+			if (k != null) {
+				int i = indexFor(k, keys.length);
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = k;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Removes `key` and returns its count, or 0 if it was not present.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int remove(Object key) {
+		int i = findSlot(mask(key));
+		if (keys[i] == null) {
+			return 0;
+		}
+		int oldValue = values[i];
+		size--;
+
+		// shift later members of the probe run back into the hole
+		int mask = keys.length - 1;
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (keys[j] != null) {
+			int home = indexFor(keys[j], keys.length);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys[hole] = null;
+		values[hole] = 0;
+		return oldValue;
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	public void clear() {
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = null;
+			values[i] = 0;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if there are no keys.
+	 *
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the sum of all counts.
+	 *
+	 * @return
+	 */
+	public int sum() {
+		int total = 0;
+		for (int i=0; i<keys.length; i++) {
+			if (keys[i] != null) {
+				total += values[i];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns a copy of the set of keys.
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<K>();
+		for (int i=0; i<keys.length; i++) {
+			if (keys[i] != null) {
+				set.add(keys[i] == NULL_KEY ? null : (K) keys[i]);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		MyObjectIntMap<String> map = new MyObjectIntMap<String>();
+		for (String word: "the cat and the hat".split(" ")) {
+			map.increment(word, 1);
+		}
+		for (String key: map.keySet()) {
+			System.out.println(key + ", " + map.get(key));
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * 
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class MyObjectIntMapTest {
+
+	private MyObjectIntMap<String> map;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		map = new MyObjectIntMap<String>();
+		map.put("One", 1);
+		map.put("Two", 2);
+		map.put("Three", 3);
+		map.put(null, 0);
+	}
+
+	/**
+	 * Test method for {@link MyObjectIntMap#get(java.lang.Object)}.
+	 */
+	@Test
+	public void testGet() {
+		assertThat(map.get("Three"), is(3));
+		assertThat(map.get(null), is(0));
+		assertThat(map.get("Four"), is(0));
+		assertThat(map.containsKey(null), is(true));
+		assertThat(map.containsKey("Four"), is(false));
+	}
+
+	/**
+	 * Test method for {@link MyObjectIntMap#increment(java.lang.Object, int)}.
+	 */
+	@Test
+	public void testIncrement() {
+		assertThat(map.increment("One", 1), is(2));
+		assertThat(map.increment("Four", 4), is(4));
+		assertThat(map.size(), is(5));
+		assertThat(map.sum(), is(11));
+
+		for (int i=0; i<1000; i++) {
+			map.increment(Integer.toString(i % 100), 1);
+		}
+		assertThat(map.size(), is(105));
+		assertThat(map.get("42"), is(10));
+	}
+
+	/**
+	 * Test method for {@link MyObjectIntMap#remove(java.lang.Object)}.
+	 */
+	@Test
+	public void testRemove() {
+		assertThat(map.remove("Two"), is(2));
+		assertThat(map.remove("Two"), is(0));
+		assertThat(map.size(), is(3));
+		assertThat(map.containsKey("Two"), is(false));
+		assertThat(map.get("Three"), is(3));
+	}
+
+	/**
+	 * Test method for {@link MyObjectIntMap#keySet()}.
+	 */
+	@Test
+	public void testKeySet() {
+		Set<String> keySet = map.keySet();
+		assertThat(keySet.size(), is(4));
+		assertThat(keySet.contains("Three"), is(true));
+		assertThat(keySet.contains(null), is(true));
+		map.clear();
+		assertThat(map.isEmpty(), is(true));
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ *
+ */
+package com.allendowney.thinkdast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementation of a HashMap using open addressing with linear probing.
+ *
+ * Keys and values are stored in two parallel arrays, so there are no
+ * Entry objects and a lookup usually touches one or two adjacent slots.
+ * Removal uses backward-shift deletion, so there are no tombstones.
+ *
+ * @author downey
+ * @param <K>
+ * @param <V>
+ *
+ */
+public class MyOpenHashMap<K, V> implements Map<K, V> {
+
+	// maximum fraction of slots in use before we resize
+	protected static final double FACTOR = 0.5;
+
+	// stands in for the null key, since a null slot means "empty"
+	private static final Object NULL_KEY = new Object();
+
+	private Object[] keys;
+	private Object[] values;
+	private int size = 0;
+
+	/**
+	 * Initialize the map with 16 slots.
+	 */
+	public MyOpenHashMap() {
+		this(16);
+	}
+
+	/**
+	 * Initialize the map with room for at least `capacity` slots.
+	 *
+	 * @param capacity
+	 */
+	public MyOpenHashMap(int capacity) {
+		int n = 2;
+		while (n < capacity) {
+			n *= 2;
+		}
+		makeTables(n);
+	}
+
+	/**
+	 * Makes empty key and value arrays with `n` slots; `n` must be a power of 2.
+	 *
+	 * @param n
+	 */
+	private void makeTables(int n) {
+		keys = new Object[n];
+		values = new Object[n];
+	}
+
+	/**
+	 * Replaces the null key with the sentinel.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	/**
+	 * Replaces the sentinel with the null key.
+	 *
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private K unmask(Object key) {
+		return key == NULL_KEY ? null : (K) key;
+	}
+
+	/**
+	 * Computes the home slot of a (masked) key.
+	 *
+	 * Mixes the high bits into the low bits, since the table size is a
+	 * power of 2 and we only use the low bits.
+	 *
+	 * @param key
+	 * @param length
+	 * @return
+	 */
+	private static int indexFor(Object key, int length) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h & (length - 1);
+	}
+
+	/**
+	 * Returns the slot that contains the target key, or -1 if there is none.
+	 *
+	 * @param target
+	 * @return
+	 */
+	private int findSlot(Object target) {
+		Object k = mask(target);
+		int mask = keys.length - 1;
+		int i = indexFor(k, keys.length);
+		while (keys[i] != null) {
+			if (keys[i] == k || keys[i].equals(k)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	@Override
+	public void clear() {
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = null;
+			values[i] = null;
+		}
+		size = 0;
+	}
+
+	@Override
+	public boolean containsKey(Object target) {
+		return findSlot(target) != -1;
+	}
+
+	@Override
+	public boolean containsValue(Object target) {
+		for (int i=0; i<keys.length; i++) {
+			if (keys[i] != null && equals(target, values[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares two values, handling null correctly.
+	 *
+	 * @param target
+	 * @param obj
+	 * @return
+	 */
+	private boolean equals(Object target, Object obj) {
+		if (target == null) {
+			return obj == null;
+		}
+		return target.equals(obj);
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int i = findSlot(key);
+		if (i == -1) {
+			return null;
+		}
+		return (V) values[i];
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<K>();
+		for (int i=0; i<keys.length; i++) {
+			if (keys[i] != null) {
+				set.add(unmask(keys[i]));
+			}
+		}
+		return set;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		Object k = mask(key);
+		int mask = keys.length - 1;
+		int i = indexFor(k, keys.length);
+		while (keys[i] != null) {
+			if (keys[i] == k || keys[i].equals(k)) {
+				V oldValue = (V) values[i];
+				values[i] = value;
+				return oldValue;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		values[i] = value;
+		size++;
+
+		// check if the fraction of slots in use exceeds the threshold
+		if (size > keys.length * FACTOR) {
+			rehash();
+		}
+		return null;
+	}
+
+	/**
+	 * Doubles the number of slots and reinserts the existing entries.
+	 */
+	protected void rehash() {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		makeTables(oldKeys.length * 2);
+
+		// the keys are known to be distinct, so we can skip the equality checks
+		int mask = keys.length - 1;
+		for (int j=0; j<oldKeys.length; j++) {
+			Object k = oldKeys[j];
+			if (k != null) {
+				int i = indexFor(k, keys.length);
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = k;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> map) {
+		for (Map.Entry<? extends K, ? extends V> entry: map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int i = findSlot(key);
+		if (i == -1) {
+			return null;
+		}
+		V oldValue = (V) values[i];
+		size--;
+
+		// shift later members of the probe run back into the hole,
+		// so lookups never stop early at an empty slot
+		int mask = keys.length - 1;
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (keys[j] != null) {
+			int home = indexFor(keys[j], keys.length);
+			// move the entry at j unless its home lies cyclically in (hole, j]
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys[hole] = null;
+		values[hole] = null;
+		return oldValue;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Collection<V> values() {
+		List<V> list = new ArrayList<V>(size);
+		for (int i=0; i<keys.length; i++) {
+			if (keys[i] != null) {
+				list.add((V) values[i]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Map<String, Integer> map = new MyOpenHashMap<String, Integer>();
+		for (int i=0; i<10; i++) {
+			map.put(Integer.toString(i), i);
+		}
+		Integer value = map.get("3");
+		System.out.println(value);
+	}
+}
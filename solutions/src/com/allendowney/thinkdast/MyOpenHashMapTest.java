@@ -0,0 +1,49 @@
+/**
+ * 
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class MyOpenHashMapTest extends MyLinearMapTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		map = new MyOpenHashMap<String, Integer>();
+		map.put("One", 1);
+		map.put("Two", 2);
+		map.put("Three", 3);
+		map.put(null, 0);
+	}
+
+	/**
+	 * Test method for {@link MyOpenHashMap#remove(java.lang.Object)}
+	 * when removals have to shift colliding keys.
+	 */
+	@Test
+	public void testRemoveMany() {
+		map.clear();
+		for (int i=0; i<1000; i++) {
+			map.put(Integer.toString(i), i);
+		}
+		for (int i=0; i<1000; i+=2) {
+			assertThat(map.remove(Integer.toString(i)), is(i));
+		}
+		assertThat(map.size(), is(500));
+		for (int i=0; i<1000; i++) {
+			Integer expected = i % 2 == 0 ? null : i;
+			assertThat(map.get(Integer.toString(i)), is(expected));
+		}
+	}
+}
@@ -3,36 +3,67 @@
  */
 package com.allendowney.thinkdast;
 
-import java.util.Collection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 
 /**
- * Implementation of a Map using a binary search tree.
+ * Implementation of a Map using a self-balancing binary search tree.
+ *
+ * The tree is kept balanced using the AVL rule: at every node, the heights
+ * of the left and right subtrees differ by at most one.  So the height is
+ * O(log n) even if the keys are added in order, and put, get, and remove
+ * are all O(log n).
+ *
+ * It implements NavigableMap, so it supports range queries like floorKey,
+ * ceilingKey, headMap, tailMap, and subMap.  The key sets, values, and
+ * range views are backed by the tree and iterate it lazily, in order.
  *
  * @param <K>
  * @param <V>
  *
  */
-public class MyTreeMap<K, V> implements Map<K, V> {
+public class MyTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
 
 	private int size = 0;
 	private Node root = null;
 
+	// number of structural changes, so iterators know to resume
+	private int modCount = 0;
+
+	// scratch space for put and remove: the path from the root to the
+	// node being changed, and which way we went at each step
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node[] path = (Node[]) new MyTreeMap.Node[32];
+	private boolean[] wentLeft = new boolean[32];
+
 	/**
 	 * Represents a node in the tree.
 	 *
 	 */
-	protected class Node {
+	protected class Node implements Map.Entry<K, V> {
 		public K key;
 		public V value;
 		public Node left = null;
 		public Node right = null;
 
+		// height of the subtree rooted here; a leaf has height 1
+		public int height = 1;
+
 		/**
 		 * @param key
 		 * @param value
@@ -43,12 +74,50 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 			this.key = key;
 			this.value = value;
 		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V newValue) {
+			V oldValue = value;
+			value = newValue;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+			return MyTreeMap.this.equals(key, entry.getKey()) &&
+					MyTreeMap.this.equals(value, entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
 	}
 
 	@Override
 	public void clear() {
 		size = 0;
 		root = null;
+		modCount++;
 	}
 
 	@Override
@@ -64,8 +133,8 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 	private Node findNode(Object target) {
 		// some implementations can handle null as a key, but not this one
 		if (target == null) {
-            throw new IllegalArgumentException();
-	    }
+			throw new NullPointerException();
+		}
 
 		// something to make the compiler happy
 		@SuppressWarnings("unchecked")
@@ -101,30 +170,26 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 
 	@Override
 	public boolean containsValue(Object target) {
-		return containsValueHelper(root, target);
-	}
-
-	private boolean containsValueHelper(Node node, Object target) {
-		if (node == null) {
-			return false;
-		}
-		if (equals(target, node.value)) {
-			return true;
-		}
-		if (containsValueHelper(node.left, target)) {
-			return true;
+		// walk the tree with an explicit stack, so a deep tree can't overflow
+		Deque<Node> stack = new ArrayDeque<Node>();
+		if (root != null) {
+			stack.push(root);
 		}
-		if (containsValueHelper(node.right, target)) {
-			return true;
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			if (equals(target, node.value)) {
+				return true;
+			}
+			if (node.left != null) {
+				stack.push(node.left);
+			}
+			if (node.right != null) {
+				stack.push(node.right);
+			}
 		}
 		return false;
 	}
 
-	@Override
-	public Set<Map.Entry<K, V>> entrySet() {
-		throw new UnsupportedOperationException();
-	}
-
 	@Override
 	public V get(Object key) {
 		Node node = findNode(key);
@@ -140,63 +205,167 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 	}
 
 	@Override
-	public Set<K> keySet() {
-		Set<K> set = new LinkedHashSet<K>();
-		addInOrder(root, set);
-		return set;
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		@SuppressWarnings("unchecked")
+		Comparable<? super K> k = (Comparable<? super K>) key;
+
+		// walk down, remembering the path; if the key is already there,
+		// just replace the value
+		ensurePathCapacity(height(root) + 1);
+		int depth = 0;
+		Node node = root;
+		while (node != null) {
+			int cmp = k.compareTo(node.key);
+			if (cmp == 0) {
+				V oldValue = node.value;
+				node.value = value;
+				clearPath(depth);
+				return oldValue;
+			}
+			path[depth] = node;
+			wentLeft[depth] = cmp < 0;
+			depth++;
+			node = cmp < 0 ? node.left : node.right;
+		}
+
+		rebalancePath(depth, new Node(key, value));
+		size++;
+		modCount++;
+		return null;
 	}
 
-	/* Walks the tree and adds the keys to `set`.
+	/**
+	 * Makes sure `path` and `wentLeft` can hold at least `n` entries.
 	 *
-     * node: root of the tree
-     * set: set to add the nodes to
-     */
-	private void addInOrder(Node node, Set<K> set) {
-		if (node == null) return;
-		addInOrder(node.left, set);
-		set.add(node.key);
-		addInOrder(node.right, set);
+	 * @param n
+	 */
+	private void ensurePathCapacity(int n) {
+		if (path.length < n) {
+			int length = Math.max(n, path.length * 2);
+			path = Arrays.copyOf(path, length);
+			wentLeft = Arrays.copyOf(wentLeft, length);
+		}
 	}
 
-	@Override
-	public V put(K key, V value) {
-		if (key == null) {
-			throw new NullPointerException();
-		}
-		if (root == null) {
-			root = new Node(key, value);
-			size++;
-			return null;
+	/**
+	 * Drops the references in path[0:depth], so they don't keep removed
+	 * nodes alive.
+	 *
+	 * @param depth
+	 */
+	private void clearPath(int depth) {
+		for (int i=0; i<depth; i++) {
+			path[i] = null;
 		}
-		return putHelper(root, key, value);
 	}
 
-	private V putHelper(Node node, K key, V value) {
-		@SuppressWarnings("unchecked")
-		Comparable<? super K> k = (Comparable<? super K>) key;
-		int cmp = k.compareTo(node.key);
-		
-		if (cmp < 0) {
-			if (node.left == null) {
-				node.left = new Node(key, value);
-				size++;
-				return null;
+	/**
+	 * Links `child` below the last node on the path and rebalances each
+	 * node on the path, from the bottom up.
+	 *
+	 * The path is path[0:depth], starting at the root; wentLeft[i] says
+	 * which child of path[i] is next on the path.  This does the work a
+	 * recursive insert or delete would do as the recursion unwinds, but
+	 * it stops as soon as a subtree keeps its root and height, since
+	 * nothing above it can change.
+	 *
+	 * @param depth
+	 * @param child  the new root of the subtree below the path
+	 */
+	private void rebalancePath(int depth, Node child) {
+		for (int i=depth-1; i>=0; i--) {
+			Node parent = path[i];
+			if (wentLeft[i]) {
+				parent.left = child;
 			} else {
-				return putHelper(node.left, key, value);
+				parent.right = child;
+			}
+			int oldHeight = parent.height;
+			child = balance(parent);
+			if (child == parent && parent.height == oldHeight) {
+				clearPath(i + 1);
+				return;
 			}
 		}
-		if (cmp > 0) {
-			if (node.right == null) {
-				node.right = new Node(key, value);
-				size++;
-				return null;
-			} else {
-				return putHelper(node.right, key, value);
+		clearPath(depth);
+		root = child;
+	}
+
+	/**
+	 * Returns the height of a subtree, which is 0 for an empty one.
+	 *
+	 * @param node
+	 * @return
+	 */
+	private int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	/**
+	 * Recomputes the height of `node` from its children.
+	 *
+	 * @param node
+	 */
+	private void updateHeight(Node node) {
+		node.height = Math.max(height(node.left), height(node.right)) + 1;
+	}
+
+	/**
+	 * Rotates the subtree rooted at `node` to the right.
+	 *
+	 * @param node
+	 * @return the new root of the subtree
+	 */
+	private Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		updateHeight(node);
+		updateHeight(left);
+		return left;
+	}
+
+	/**
+	 * Rotates the subtree rooted at `node` to the left.
+	 *
+	 * @param node
+	 * @return the new root of the subtree
+	 */
+	private Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		updateHeight(node);
+		updateHeight(right);
+		return right;
+	}
+
+	/**
+	 * Restores the AVL property at `node`, assuming its subtrees are
+	 * balanced and their heights differ by at most two.
+	 *
+	 * @param node
+	 * @return the new root of the subtree
+	 */
+	private Node balance(Node node) {
+		updateHeight(node);
+		int diff = height(node.left) - height(node.right);
+		if (diff > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
 			}
+			return rotateRight(node);
 		}
-		V oldValue = node.value;
-		node.value = value;
-		return oldValue;
+		if (diff < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
 	}
 
 	@Override
@@ -208,8 +377,70 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 
 	@Override
 	public V remove(Object key) {
-		// OPTIONAL TODO: FILL THIS IN!
-		throw new UnsupportedOperationException();
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		@SuppressWarnings("unchecked")
+		Comparable<? super K> k = (Comparable<? super K>) key;
+
+		// walk down to the node, remembering the path
+		ensurePathCapacity(height(root) + 1);
+		int depth = 0;
+		Node node = root;
+		while (node != null) {
+			int cmp = k.compareTo(node.key);
+			if (cmp == 0) {
+				break;
+			}
+			path[depth] = node;
+			wentLeft[depth] = cmp < 0;
+			depth++;
+			node = cmp < 0 ? node.left : node.right;
+		}
+		if (node == null) {
+			clearPath(depth);
+			return null;
+		}
+		V oldValue = node.value;
+
+		Node child;
+		if (node.left == null || node.right == null) {
+			// splice out a node with at most one child
+			child = node.left != null ? node.left : node.right;
+		} else {
+			// replace the node with its successor, the smallest key on the right,
+			// extending the path down to the successor's parent
+			int nodeDepth = depth;
+			path[depth] = node;
+			wentLeft[depth] = false;
+			depth++;
+
+			Node successor = node.right;
+			while (successor.left != null) {
+				path[depth] = successor;
+				wentLeft[depth] = true;
+				depth++;
+				successor = successor.left;
+			}
+			child = successor.right;
+			successor.left = node.left;
+			successor.right = node.right;
+			successor.height = node.height;
+			path[nodeDepth] = successor;
+
+			// link the successor in now, since rebalancePath may stop below it
+			if (nodeDepth == 0) {
+				root = successor;
+			} else if (wentLeft[nodeDepth-1]) {
+				path[nodeDepth-1].left = successor;
+			} else {
+				path[nodeDepth-1].right = successor;
+			}
+		}
+		rebalancePath(depth, child);
+		size--;
+		modCount++;
+		return oldValue;
 	}
 
 	@Override
@@ -217,19 +448,893 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 		return size;
 	}
 
+	/**
+	 * Compares a key with the key of a node.
+	 *
+	 * @param key
+	 * @param nodeKey
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(Object key, K nodeKey) {
+		return ((Comparable<? super K>) key).compareTo(nodeKey);
+	}
+
+	/**
+	 * Returns the node with the smallest key, or null if the tree is empty.
+	 *
+	 * @return
+	 */
+	private Node lowestNode() {
+		Node node = root;
+		if (node != null) {
+			while (node.left != null) {
+				node = node.left;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the node with the largest key, or null if the tree is empty.
+	 *
+	 * @return
+	 */
+	private Node highestNode() {
+		Node node = root;
+		if (node != null) {
+			while (node.right != null) {
+				node = node.right;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the node with the smallest key greater than (or equal to,
+	 * if `inclusive`) the given key, or null if there is none.
+	 *
+	 * @param key
+	 * @param inclusive
+	 * @return
+	 */
+	private Node ceilingNode(Object key, boolean inclusive) {
+		Node best = null;
+		Node node = root;
+		while (node != null) {
+			int cmp = compare(key, node.key);
+			if (cmp < 0 || (cmp == 0 && inclusive)) {
+				best = node;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the node with the largest key less than (or equal to,
+	 * if `inclusive`) the given key, or null if there is none.
+	 *
+	 * @param key
+	 * @param inclusive
+	 * @return
+	 */
+	private Node floorNode(Object key, boolean inclusive) {
+		Node best = null;
+		Node node = root;
+		while (node != null) {
+			int cmp = compare(key, node.key);
+			if (cmp > 0 || (cmp == 0 && inclusive)) {
+				best = node;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns an immutable copy of a node, or null.
+	 *
+	 * @param node
+	 * @return
+	 */
+	private Map.Entry<K, V> exportEntry(Node node) {
+		return node == null ? null : new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value);
+	}
+
+	/**
+	 * Returns the key of a node, or null.
+	 *
+	 * @param node
+	 * @return
+	 */
+	private K keyOrNull(Node node) {
+		return node == null ? null : node.key;
+	}
+
+	/**
+	 * Returns the key of a node, or throws NoSuchElementException.
+	 *
+	 * @param node
+	 * @return
+	 */
+	private K keyOrThrow(Node node) {
+		if (node == null) {
+			throw new NoSuchElementException();
+		}
+		return node.key;
+	}
+
 	@Override
-	public Collection<V> values() {
-		Set<V> set = new HashSet<V>();
-		Deque<Node> stack = new LinkedList<Node>();
-		stack.push(root);
-		while (!stack.isEmpty()) {
+	public Comparator<? super K> comparator() {
+		return null;
+	}
+
+	@Override
+	public K firstKey() {
+		return keyOrThrow(lowestNode());
+	}
+
+	@Override
+	public K lastKey() {
+		return keyOrThrow(highestNode());
+	}
+
+	@Override
+	public Map.Entry<K, V> firstEntry() {
+		return exportEntry(lowestNode());
+	}
+
+	@Override
+	public Map.Entry<K, V> lastEntry() {
+		return exportEntry(highestNode());
+	}
+
+	@Override
+	public Map.Entry<K, V> pollFirstEntry() {
+		Map.Entry<K, V> entry = exportEntry(lowestNode());
+		if (entry != null) {
+			remove(entry.getKey());
+		}
+		return entry;
+	}
+
+	@Override
+	public Map.Entry<K, V> pollLastEntry() {
+		Map.Entry<K, V> entry = exportEntry(highestNode());
+		if (entry != null) {
+			remove(entry.getKey());
+		}
+		return entry;
+	}
+
+	@Override
+	public Map.Entry<K, V> lowerEntry(K key) {
+		return exportEntry(floorNode(key, false));
+	}
+
+	@Override
+	public K lowerKey(K key) {
+		return keyOrNull(floorNode(key, false));
+	}
+
+	@Override
+	public Map.Entry<K, V> floorEntry(K key) {
+		return exportEntry(floorNode(key, true));
+	}
+
+	@Override
+	public K floorKey(K key) {
+		return keyOrNull(floorNode(key, true));
+	}
+
+	@Override
+	public Map.Entry<K, V> ceilingEntry(K key) {
+		return exportEntry(ceilingNode(key, true));
+	}
+
+	@Override
+	public K ceilingKey(K key) {
+		return keyOrNull(ceilingNode(key, true));
+	}
+
+	@Override
+	public Map.Entry<K, V> higherEntry(K key) {
+		return exportEntry(ceilingNode(key, false));
+	}
+
+	@Override
+	public K higherKey(K key) {
+		return keyOrNull(ceilingNode(key, false));
+	}
+
+	/**
+	 * Returns a view of the entries, in ascending order of keys.
+	 *
+	 * The view is backed by the tree, so it does not copy anything.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator(null, false, null, false, false);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns a view of the keys, in ascending order.
+	 */
+	@Override
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<K> navigableKeySet() {
+		return new KeySet<K>(this);
+	}
+
+	@Override
+	public NavigableSet<K> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<K, V> descendingMap() {
+		return new SubMap(true, null, false, true, null, false, true);
+	}
+
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		if (compare(fromKey, toKey) > 0) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+	}
+
+	@Override
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		compare(toKey, toKey);
+		return new SubMap(true, null, false, false, toKey, inclusive, false);
+	}
+
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		compare(fromKey, fromKey);
+		return new SubMap(false, fromKey, inclusive, true, null, false, false);
+	}
+
+	@Override
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	/**
+	 * Iterates the nodes in order, using an explicit stack of the nodes
+	 * whose left (or, descending, right) subtrees are being visited.
+	 *
+	 * Starting at a bound costs O(log n), and each step is amortized
+	 * constant time, so a range scan of k entries is O(log n + k).
+	 *
+	 * The position of the iterator is just the last key it returned, so
+	 * if the tree changes, it rebuilds the stack and resumes after that
+	 * key instead of failing, like the iterators of ConcurrentSkipListMap.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		private final Deque<Node> stack = new ArrayDeque<Node>();
+		private final boolean descending;
+
+		// where the iteration starts, or null to start at the end of the tree
+		private final Object start;
+		private final boolean startInclusive;
+
+		// the iterator stops at `fence`, unless `fence` is null
+		private final Object fence;
+		private final boolean fenceInclusive;
+
+		private K lastKey = null;
+		private boolean started = false;
+		private Node lastReturned = null;
+		private int expectedModCount = modCount;
+
+		/**
+		 * @param start  first key to visit, or null to start at the end of the tree
+		 * @param startInclusive
+		 * @param fence  last key to visit, or null to run to the end of the tree
+		 * @param fenceInclusive
+		 * @param descending
+		 */
+		EntryIterator(Object start, boolean startInclusive, Object fence, boolean fenceInclusive,
+				boolean descending) {
+			this.descending = descending;
+			this.start = start;
+			this.startInclusive = startInclusive;
+			this.fence = fence;
+			this.fenceInclusive = fenceInclusive;
+			seek(start, startInclusive);
+		}
+
+		/**
+		 * If the tree has changed since the stack was built, rebuilds it
+		 * so the next node is the one after the last key returned.
+		 */
+		private void resume() {
+			if (modCount != expectedModCount) {
+				if (started) {
+					seek(lastKey, false);
+				} else {
+					seek(start, startInclusive);
+				}
+				expectedModCount = modCount;
+			}
+		}
+
+		/**
+		 * Fills the stack with the path to the first node at or after `start`.
+		 *
+		 * @param start
+		 * @param inclusive
+		 */
+		private void seek(Object start, boolean inclusive) {
+			stack.clear();
+			Node node = root;
+			while (node != null) {
+				int cmp = start == null ? (descending ? 1 : -1) : compare(start, node.key);
+				boolean after = descending ? cmp > 0 : cmp < 0;
+				if (after || (cmp == 0 && inclusive)) {
+					stack.push(node);
+					node = descending ? node.right : node.left;
+				} else {
+					node = descending ? node.left : node.right;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			resume();
+			if (stack.isEmpty()) {
+				return false;
+			}
+			if (fence == null) {
+				return true;
+			}
+			int cmp = compare(fence, stack.peek().key);
+			if (descending) {
+				cmp = -cmp;
+			}
+			return cmp > 0 || (cmp == 0 && fenceInclusive);
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
 			Node node = stack.pop();
-			if (node == null) continue;
-			set.add(node.value);
-			stack.push(node.left);
-			stack.push(node.right);
+			Node child = descending ? node.left : node.right;
+			while (child != null) {
+				stack.push(child);
+				child = descending ? child.right : child.left;
+			}
+			lastReturned = node;
+			lastKey = node.key;
+			started = true;
+			return node;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			// removing rebalances the tree, so the next call resumes
+			MyTreeMap.this.remove(lastReturned.key);
+			lastReturned = null;
+		}
+	}
+
+	/**
+	 * Adapts an entry iterator to iterate keys.
+	 */
+	private static class KeyIterator<K> implements Iterator<K> {
+		private final Iterator<? extends Map.Entry<K, ?>> entries;
+
+		KeyIterator(Iterator<? extends Map.Entry<K, ?>> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return entries.hasNext();
+		}
+
+		@Override
+		public K next() {
+			return entries.next().getKey();
+		}
+
+		@Override
+		public void remove() {
+			entries.remove();
+		}
+	}
+
+	/**
+	 * A view of the keys of a NavigableMap, backed by the map.
+	 */
+	private static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+		private final NavigableMap<K, ?> map;
+
+		KeySet(NavigableMap<K, ?> map) {
+			this.map = map;
+		}
+
+		@Override
+		public Iterator<K> iterator() {
+			return new KeyIterator<K>(map.entrySet().iterator());
+		}
+
+		@Override
+		public Iterator<K> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return map.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!map.containsKey(o)) {
+				return false;
+			}
+			map.remove(o);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public Comparator<? super K> comparator() {
+			return map.comparator();
+		}
+
+		@Override
+		public K first() {
+			return map.firstKey();
+		}
+
+		@Override
+		public K last() {
+			return map.lastKey();
+		}
+
+		@Override
+		public K lower(K k) {
+			return map.lowerKey(k);
+		}
+
+		@Override
+		public K floor(K k) {
+			return map.floorKey(k);
+		}
+
+		@Override
+		public K ceiling(K k) {
+			return map.ceilingKey(k);
+		}
+
+		@Override
+		public K higher(K k) {
+			return map.higherKey(k);
+		}
+
+		@Override
+		public K pollFirst() {
+			Map.Entry<K, ?> entry = map.pollFirstEntry();
+			return entry == null ? null : entry.getKey();
+		}
+
+		@Override
+		public K pollLast() {
+			Map.Entry<K, ?> entry = map.pollLastEntry();
+			return entry == null ? null : entry.getKey();
+		}
+
+		@Override
+		public NavigableSet<K> descendingSet() {
+			return new KeySet<K>(map.descendingMap());
+		}
+
+		@Override
+		public NavigableSet<K> subSet(K from, boolean fromInclusive, K to, boolean toInclusive) {
+			return new KeySet<K>(map.subMap(from, fromInclusive, to, toInclusive));
+		}
+
+		@Override
+		public NavigableSet<K> headSet(K to, boolean inclusive) {
+			return new KeySet<K>(map.headMap(to, inclusive));
+		}
+
+		@Override
+		public NavigableSet<K> tailSet(K from, boolean inclusive) {
+			return new KeySet<K>(map.tailMap(from, inclusive));
+		}
+
+		@Override
+		public SortedSet<K> subSet(K from, K to) {
+			return subSet(from, true, to, false);
+		}
+
+		@Override
+		public SortedSet<K> headSet(K to) {
+			return headSet(to, false);
+		}
+
+		@Override
+		public SortedSet<K> tailSet(K from) {
+			return tailSet(from, true);
+		}
+	}
+
+	/**
+	 * A view of the keys in a range, backed by the tree.
+	 *
+	 * The bounds are always stored in ascending terms (lo <= hi); if
+	 * `descending` is true, the view presents them in reverse order.
+	 */
+	private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+		private final boolean fromStart, loInclusive, toEnd, hiInclusive, descending;
+		private final K lo, hi;
+
+		SubMap(boolean fromStart, K lo, boolean loInclusive,
+				boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+			this.fromStart = fromStart;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.toEnd = toEnd;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		private boolean tooLow(Object key) {
+			if (fromStart) {
+				return false;
+			}
+			int cmp = compare(key, lo);
+			return cmp < 0 || (cmp == 0 && !loInclusive);
+		}
+
+		private boolean tooHigh(Object key) {
+			if (toEnd) {
+				return false;
+			}
+			int cmp = compare(key, hi);
+			return cmp > 0 || (cmp == 0 && !hiInclusive);
+		}
+
+		private boolean inRange(Object key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+
+		/**
+		 * Returns `node` if its key is in range, otherwise null.
+		 */
+		private Node inRangeOrNull(Node node) {
+			return node == null || !inRange(node.key) ? null : node;
+		}
+
+		// the abs* methods navigate in ascending terms
+
+		private Node absLowest() {
+			return inRangeOrNull(fromStart ? lowestNode() : ceilingNode(lo, loInclusive));
+		}
+
+		private Node absHighest() {
+			return inRangeOrNull(toEnd ? highestNode() : floorNode(hi, hiInclusive));
+		}
+
+		private Node absCeiling(Object key, boolean inclusive) {
+			if (tooLow(key)) {
+				return absLowest();
+			}
+			return inRangeOrNull(ceilingNode(key, inclusive));
+		}
+
+		private Node absFloor(Object key, boolean inclusive) {
+			if (tooHigh(key)) {
+				return absHighest();
+			}
+			return inRangeOrNull(floorNode(key, inclusive));
+		}
+
+		// these navigate in the order of this view
+
+		private Node first() {
+			return descending ? absHighest() : absLowest();
+		}
+
+		private Node last() {
+			return descending ? absLowest() : absHighest();
+		}
+
+		private Node ceiling(Object key, boolean inclusive) {
+			return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+		}
+
+		private Node floor(Object key, boolean inclusive) {
+			return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return inRange(key) && MyTreeMap.this.containsKey(key);
+		}
+
+		@Override
+		public V get(Object key) {
+			return inRange(key) ? MyTreeMap.this.get(key) : null;
+		}
+
+		@Override
+		public V put(K key, V value) {
+			if (!inRange(key)) {
+				throw new IllegalArgumentException("key out of range");
+			}
+			return MyTreeMap.this.put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			return inRange(key) ? MyTreeMap.this.remove(key) : null;
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					if (descending) {
+						return new EntryIterator(toEnd ? null : hi, hiInclusive,
+								fromStart ? null : lo, loInclusive, true);
+					}
+					return new EntryIterator(fromStart ? null : lo, loInclusive,
+							toEnd ? null : hi, hiInclusive, false);
+				}
+
+				@Override
+				public int size() {
+					int count = 0;
+					for (Iterator<Map.Entry<K, V>> it = iterator(); it.hasNext(); it.next()) {
+						count++;
+					}
+					return count;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return entrySet().size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return absLowest() == null;
+		}
+
+		@Override
+		public Comparator<? super K> comparator() {
+			return descending ? Collections.reverseOrder() : null;
+		}
+
+		@Override
+		public K firstKey() {
+			return keyOrThrow(first());
+		}
+
+		@Override
+		public K lastKey() {
+			return keyOrThrow(last());
+		}
+
+		@Override
+		public Map.Entry<K, V> firstEntry() {
+			return exportEntry(first());
+		}
+
+		@Override
+		public Map.Entry<K, V> lastEntry() {
+			return exportEntry(last());
+		}
+
+		@Override
+		public Map.Entry<K, V> pollFirstEntry() {
+			Map.Entry<K, V> entry = exportEntry(first());
+			if (entry != null) {
+				MyTreeMap.this.remove(entry.getKey());
+			}
+			return entry;
+		}
+
+		@Override
+		public Map.Entry<K, V> pollLastEntry() {
+			Map.Entry<K, V> entry = exportEntry(last());
+			if (entry != null) {
+				MyTreeMap.this.remove(entry.getKey());
+			}
+			return entry;
+		}
+
+		@Override
+		public Map.Entry<K, V> lowerEntry(K key) {
+			return exportEntry(floor(key, false));
+		}
+
+		@Override
+		public K lowerKey(K key) {
+			return keyOrNull(floor(key, false));
+		}
+
+		@Override
+		public Map.Entry<K, V> floorEntry(K key) {
+			return exportEntry(floor(key, true));
+		}
+
+		@Override
+		public K floorKey(K key) {
+			return keyOrNull(floor(key, true));
+		}
+
+		@Override
+		public Map.Entry<K, V> ceilingEntry(K key) {
+			return exportEntry(ceiling(key, true));
+		}
+
+		@Override
+		public K ceilingKey(K key) {
+			return keyOrNull(ceiling(key, true));
+		}
+
+		@Override
+		public Map.Entry<K, V> higherEntry(K key) {
+			return exportEntry(ceiling(key, false));
+		}
+
+		@Override
+		public K higherKey(K key) {
+			return keyOrNull(ceiling(key, false));
+		}
+
+		@Override
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> navigableKeySet() {
+			return new KeySet<K>(this);
+		}
+
+		@Override
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableMap<K, V> descendingMap() {
+			return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+		}
+
+		/**
+		 * Returns true if `key` can be used as a bound of a view of this
+		 * view; an exclusive bound may equal one of our exclusive bounds.
+		 */
+		private boolean validBound(Object key, boolean inclusive) {
+			if (inclusive) {
+				return inRange(key);
+			}
+			return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+		}
+
+		/**
+		 * Makes a view of a narrower range, given in ascending terms; a
+		 * missing bound is inherited from this view.
+		 */
+		private NavigableMap<K, V> narrow(boolean newFromStart, K newLo, boolean newLoInclusive,
+				boolean newToEnd, K newHi, boolean newHiInclusive) {
+			if (!newFromStart && !validBound(newLo, newLoInclusive)) {
+				throw new IllegalArgumentException("fromKey out of range");
+			}
+			if (!newToEnd && !validBound(newHi, newHiInclusive)) {
+				throw new IllegalArgumentException("toKey out of range");
+			}
+			if (newFromStart) {
+				newLo = lo;
+				newLoInclusive = loInclusive;
+			}
+			if (newToEnd) {
+				newHi = hi;
+				newHiInclusive = hiInclusive;
+			}
+			return new SubMap(newFromStart && fromStart, newLo, newLoInclusive,
+					newToEnd && toEnd, newHi, newHiInclusive, descending);
+		}
+
+		@Override
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			int cmp = compare(fromKey, toKey);
+			if (descending ? cmp < 0 : cmp > 0) {
+				throw new IllegalArgumentException("fromKey > toKey");
+			}
+			if (descending) {
+				return narrow(false, toKey, toInclusive, false, fromKey, fromInclusive);
+			}
+			return narrow(false, fromKey, fromInclusive, false, toKey, toInclusive);
+		}
+
+		@Override
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			if (descending) {
+				return narrow(false, toKey, inclusive, true, null, false);
+			}
+			return narrow(true, null, false, false, toKey, inclusive);
+		}
+
+		@Override
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			if (descending) {
+				return narrow(true, null, false, false, fromKey, inclusive);
+			}
+			return narrow(false, fromKey, inclusive, true, null, false);
+		}
+
+		@Override
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
 		}
-		return set;
 	}
 
 	/**
@@ -271,25 +1376,47 @@ public class MyTreeMap<K, V> implements Map<K, V> {
 	public void setTree(Node node, int size ) {
 		this.root = node;
 		this.size = size;
+		modCount++;
+		heightHelper(node);
 	}
 
 	/**
 	 * Returns the height of the tree.
 	 *
-	 * This is only here for testing purposes.  Should not be used otherwise.
+	 * Each node keeps the height of its subtree, so this is constant time.
 	 *
 	 * @return
 	 */
 	public int height() {
-		return heightHelper(root);
+		return height(root);
 	}
 
-	private int heightHelper(Node node) {
+	/**
+	 * Recomputes the stored heights in a tree built by hand with setTree.
+	 *
+	 * @param node
+	 */
+	private void heightHelper(Node node) {
 		if (node == null) {
-			return 0;
+			return;
+		}
+		// list the nodes so that every node comes before its children,
+		// then compute the heights in reverse, children first
+		List<Node> nodes = new ArrayList<Node>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			Node next = stack.pop();
+			nodes.add(next);
+			if (next.left != null) {
+				stack.push(next.left);
+			}
+			if (next.right != null) {
+				stack.push(next.right);
+			}
+		}
+		for (int i=nodes.size()-1; i>=0; i--) {
+			updateHeight(nodes.get(i));
 		}
-		int left = heightHelper(node.left);
-		int right = heightHelper(node.right);
-		return Math.max(left, right) + 1;
 	}
 }
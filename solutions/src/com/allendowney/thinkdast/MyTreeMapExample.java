@@ -5,8 +5,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Random;
 import java.util.UUID;
 
 public class MyTreeMapExample {
@@ -19,6 +21,61 @@ public class MyTreeMapExample {
 		System.out.println("\nTesting MyTreeMap with timestamps");
 		putTimestamps(n);
 
+		int m = 1000000;
+		String[] sorted = new String[m];
+		for (int i=0; i<m; i++) {
+			sorted[i] = String.format("%010d", i);
+		}
+		String[] random = sorted.clone();
+		Collections.shuffle(Arrays.asList(random), new Random(17));
+
+		System.out.println("\nTiming MyTreeMap operations with random keys");
+		timeOperations(random);
+
+		System.out.println("\nTiming MyTreeMap operations with sorted keys");
+		timeOperations(sorted);
+	}
+
+	/**
+	 * Times put, get, in-order iteration, and remove, with keys
+	 * generated in advance so only the tree operations are timed.
+	 *
+	 * @param keys
+	 */
+	private static void timeOperations(String[] keys) {
+		// run a few times so the JIT has warmed up by the last one
+		for (int trial=0; trial<3; trial++) {
+			MyTreeMap<String, Integer> map = new MyTreeMap<String, Integer>();
+
+			long start = System.currentTimeMillis();
+			for (int i=0; i<keys.length; i++) {
+				map.put(keys[i], i);
+			}
+			long put = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			long total = 0;
+			for (int i=0; i<keys.length; i++) {
+				total += map.get(keys[i]);
+			}
+			long get = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (Integer value: map.values()) {
+				total -= value;
+			}
+			long iterate = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (int i=0; i<keys.length; i++) {
+				map.remove(keys[i]);
+			}
+			long remove = System.currentTimeMillis() - start;
+
+			System.out.println("    n = " + keys.length + ", put " + put + " ms, get " + get +
+					" ms, iterate " + iterate + " ms, remove " + remove + " ms" +
+					(total == 0 ? "" : " (checksum error)"));
+		}
 	}
 
 	/**
@@ -26,8 +83,7 @@ public class MyTreeMapExample {
 	 * @param n 
 	 */
 	private static void putRandomStrings(int n) {
-		// MyTreeMap<String, Integer> map = new MyTreeMap<String, Integer>();
-		TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+		MyTreeMap<String, Integer> map = new MyTreeMap<String, Integer>();
 		
 		final long startTime = System.currentTimeMillis();		
 		for (int i=0; i<n; i++) {
@@ -35,8 +91,7 @@ public class MyTreeMapExample {
 			map.put(uuid, 0);
 		}
 		final long elapsed = System.currentTimeMillis() - startTime;
-		//printResults(map, elapsed, map.height());
-		printResults(map, elapsed, -1);
+		printResults(map, elapsed, map.height());
 	}
 	
 	/**
@@ -44,8 +99,7 @@ public class MyTreeMapExample {
 	 * @param n 
 	 */
 	private static void putTimestamps(int n) {
-		//MyTreeMap<String, Integer> map = new MyTreeMap<String, Integer>();
-		TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+		MyTreeMap<String, Integer> map = new MyTreeMap<String, Integer>();
 
 		final long startTime = System.currentTimeMillis();		
 		for (int i=0; i<n; i++) {
@@ -53,8 +107,7 @@ public class MyTreeMapExample {
 			map.put(timestamp, 0);
 		}
 		final long elapsed = System.currentTimeMillis() - startTime;
-		//printResults(map, elapsed, map.height());
-		printResults(map, elapsed, -1);
+		printResults(map, elapsed, map.height());
 	}
 	
 	/**
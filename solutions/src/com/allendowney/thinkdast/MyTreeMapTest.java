@@ -4,13 +4,17 @@
 package com.allendowney.thinkdast;
 
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 
 import org.junit.Before;
@@ -72,6 +76,26 @@ public class MyTreeMapTest {
 		assertThat(map.containsKey("05"), is(false));
 	}
 
+	/**
+	 * Checks that every method that takes a key rejects null the same way.
+	 */
+	@Test
+	public void testNullKey() {
+		for (int i=0; i<4; i++) {
+			try {
+				switch (i) {
+				case 0: map.get(null); break;
+				case 1: map.put(null, 1); break;
+				case 2: map.remove(null); break;
+				default: map.containsKey(null); break;
+				}
+				fail();
+			} catch (NullPointerException e) {
+				// expected
+			}
+		}
+	}
+
 	/**
 	 * Test method for {@link MyLinearMap#containsValue(java.lang.Object)}.
 	 */
@@ -167,7 +191,143 @@ public class MyTreeMapTest {
 	 */
 	@Test
 	public void testRemove() {
-		// nothing to test, since this method is not implemented
+		// a leaf, a node with one child, and a node with two children
+		assertThat(map.remove("04"), is(4));
+		assertThat(map.remove("14"), is(14));
+		assertThat(map.remove("08"), is(8));
+		assertThat(map.remove("05"), nullValue());
+		assertThat(map.size(), is(6));
+		assertThat(map.get("08"), nullValue());
+		assertThat(map.get("13"), is(13));
+
+		List<String> list = new ArrayList<String>(map.keySet());
+		assertThat(list, is(Arrays.asList("01", "03", "06", "07", "10", "13")));
+	}
+
+	/**
+	 * Checks that the tree stays balanced when keys are added and removed in order.
+	 */
+	@Test
+	public void testBalance() {
+		MyTreeMap<String, Integer> tree = new MyTreeMap<String, Integer>();
+		int n = 1024;
+		for (int i=0; i<n; i++) {
+			tree.put(String.format("%05d", i), i);
+		}
+		assertThat(tree.size(), is(n));
+		assertThat(tree.height() <= 11, is(true));
+
+		for (int i=0; i<n/2; i++) {
+			assertThat(tree.remove(String.format("%05d", i)), is(i));
+		}
+		assertThat(tree.size(), is(n/2));
+		assertThat(tree.height() <= 10, is(true));
+		assertThat(tree.get(String.format("%05d", n-1)), is(n-1));
+	}
+
+	/**
+	 * Test methods for the NavigableMap lookups.
+	 */
+	@Test
+	public void testNavigation() {
+		assertThat(map.firstKey(), is("01"));
+		assertThat(map.lastKey(), is("14"));
+		assertThat(map.floorKey("05"), is("04"));
+		assertThat(map.floorKey("06"), is("06"));
+		assertThat(map.ceilingKey("11"), is("13"));
+		assertThat(map.lowerKey("01"), nullValue());
+		assertThat(map.higherKey("14"), nullValue());
+		assertThat(map.higherEntry("08").getValue(), is(10));
+	}
+
+	/**
+	 * Test methods for the range views.
+	 */
+	@Test
+	public void testRangeViews() {
+		NavigableMap<String, Integer> sub = map.subMap("03", true, "10", false);
+		assertThat(new ArrayList<String>(sub.keySet()),
+				is(Arrays.asList("03", "04", "06", "07", "08")));
+		assertThat(sub.size(), is(5));
+		assertThat(sub.containsKey("10"), is(false));
+
+		assertThat(new ArrayList<String>(map.headMap("04", true).keySet()),
+				is(Arrays.asList("01", "03", "04")));
+		assertThat(new ArrayList<String>(map.tailMap("10", false).descendingKeySet()),
+				is(Arrays.asList("14", "13")));
+
+		// views are backed by the tree
+		sub.remove("06");
+		assertThat(map.containsKey("06"), is(false));
+		map.put("05", 5);
+		assertThat(sub.firstKey(), is("03"));
+		assertThat(sub.ceilingKey("05"), is("05"));
+	}
+
+	/**
+	 * Test method for removing through a key set iterator.
+	 */
+	@Test
+	public void testIteratorRemove() {
+		Iterator<String> it = map.keySet().iterator();
+		while (it.hasNext()) {
+			String key = it.next();
+			if (key.compareTo("07") < 0) {
+				it.remove();
+			}
+		}
+		assertThat(new ArrayList<String>(map.keySet()),
+				is(Arrays.asList("07", "08", "10", "13", "14")));
+		assertThat(map.size(), is(5));
+	}
+
+	/**
+	 * Checks that the traversals work on a degenerate tree too deep for recursion.
+	 */
+	@Test
+	public void testDeepTree() {
+		MyTreeMap<String, Integer> tree = new MyTreeMap<String, Integer>();
+		int n = 200000;
+		MyTreeMap<String, Integer>.Node root = tree.makeNode(String.format("%06d", 0), 0);
+		MyTreeMap<String, Integer>.Node node = root;
+		for (int i=1; i<n; i++) {
+			node.right = tree.makeNode(String.format("%06d", i), i);
+			node = node.right;
+		}
+		tree.setTree(root, n);
+		assertThat(tree.height(), is(n));
+		assertThat(tree.containsValue(n-1), is(true));
+		assertThat(tree.containsValue(n), is(false));
+
+		int count = 0;
+		for (String key: tree.keySet()) {
+			assertThat(key, is(String.format("%06d", count)));
+			count++;
+		}
+		assertThat(count, is(n));
+
+		tree.put("zzz", -1);
+		assertThat(tree.remove(String.format("%06d", n-1)), is(n-1));
+		assertThat(tree.size(), is(n));
+	}
+
+	/**
+	 * Checks that an iterator resumes after its last key when the tree changes.
+	 */
+	@Test
+	public void testIteratorResume() {
+		Iterator<String> it = map.keySet().iterator();
+		assertThat(it.next(), is("01"));
+		assertThat(it.next(), is("03"));
+
+		map.put("02", 2);
+		map.put("05", 5);
+		map.remove("04");
+		List<String> rest = new ArrayList<String>();
+		while (it.hasNext()) {
+			rest.add(it.next());
+		}
+		assertThat(rest, is(Arrays.asList("05", "06", "07", "08", "10", "13", "14")));
 	}
 
 	/**
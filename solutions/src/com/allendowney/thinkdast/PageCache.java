@@ -0,0 +1,315 @@
+package com.allendowney.thinkdast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cache of downloaded pages on disk, with what is needed to ask the
+ * server whether a page has changed.
+ *
+ * The contents of a page are stored under objects/, in a file named by
+ * the SHA-256 hash of its bytes, so a page that comes back unchanged is
+ * not written again, and pages with the same contents share a file.
+ * For each URL, a small entry under urls/ records the hash of its
+ * contents, the ETag and Last-Modified headers that came with it, and
+ * when it was last checked with the server.
+ *
+ * Files are written under a temporary name and then renamed, so a crash
+ * leaves either the old version or the new one.  Contents that are no
+ * longer used by any entry stay on disk until sweep is called.
+ *
+ * @author downey
+ *
+ */
+public class PageCache {
+
+	// identifies the entry files
+	private static final int MAGIC = 0x50616765;
+
+	private final File objects;
+	private final File urls;
+
+	/**
+	 * What the cache knows about one URL.
+	 */
+	public static class Entry {
+		private final String url;
+		private final String hash;
+		private final String etag;
+		private final String lastModified;
+		private final long checked;
+
+		private Entry(String url, String hash, String etag, String lastModified, long checked) {
+			this.url = url;
+			this.hash = hash;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.checked = checked;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * Returns the SHA-256 hash of the contents, in hex.
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * Returns the ETag header, or null if there was none.
+		 */
+		public String getEtag() {
+			return etag;
+		}
+
+		/**
+		 * Returns the Last-Modified header, or null if there was none.
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns when the contents were last known to be current, in
+		 * milliseconds since the epoch.
+		 */
+		public long getChecked() {
+			return checked;
+		}
+	}
+
+	/**
+	 * Opens the cache in dir, creating it if necessary.
+	 *
+	 * @param dir
+	 */
+	public PageCache(File dir) {
+		this.objects = new File(dir, "objects");
+		this.urls = new File(dir, "urls");
+		objects.mkdirs();
+		urls.mkdirs();
+	}
+
+	/**
+	 * Looks up a URL.
+	 *
+	 * @param url
+	 * @return null if the URL is not in the cache
+	 * @throws IOException
+	 */
+	public Entry get(String url) throws IOException {
+		File file = new File(urls, sha256(url.getBytes(StandardCharsets.UTF_8)));
+		if (!file.exists()) {
+			return null;
+		}
+		Entry entry = readEntry(file);
+		if (!entry.url.equals(url)) {
+			// a different URL with the same hash
+			return null;
+		}
+		if (!objectFile(entry.hash).exists()) {
+			return null;
+		}
+		return entry;
+	}
+
+	private static Entry readEntry(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("not a PageCache entry: " + file);
+			}
+			String url = in.readUTF();
+			String hash = in.readUTF();
+			String etag = readOptional(in);
+			String lastModified = readOptional(in);
+			long checked = in.readLong();
+			return new Entry(url, hash, etag, lastModified, checked);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the contents of a page.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		return Files.readAllBytes(objectFile(entry.getHash()).toPath());
+	}
+
+	/**
+	 * Stores the contents of a page that has just been downloaded.
+	 *
+	 * @param url
+	 * @param contents
+	 * @param etag          or null
+	 * @param lastModified  or null
+	 * @return the new entry
+	 * @throws IOException
+	 */
+	public Entry put(String url, byte[] contents, String etag, String lastModified) throws IOException {
+		String hash = sha256(contents);
+		File file = objectFile(hash);
+		if (!file.exists()) {
+			file.getParentFile().mkdirs();
+			File temp = tempFile(file);
+			Files.write(temp.toPath(), contents);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			// so a sweep that is running doesn't delete it
+			file.setLastModified(System.currentTimeMillis());
+		}
+		Entry entry = new Entry(url, hash, etag, lastModified, System.currentTimeMillis());
+		writeEntry(entry);
+		return entry;
+	}
+
+	/**
+	 * Records that the server said a page has not changed.
+	 *
+	 * @param entry
+	 * @param etag          new ETag header, or null to keep the old one
+	 * @param lastModified  new Last-Modified header, or null to keep the old one
+	 * @return the new entry
+	 * @throws IOException
+	 */
+	public Entry touch(Entry entry, String etag, String lastModified) throws IOException {
+		Entry touched = new Entry(entry.url, entry.hash,
+				etag != null ? etag : entry.etag,
+				lastModified != null ? lastModified : entry.lastModified,
+				System.currentTimeMillis());
+		writeEntry(touched);
+		return touched;
+	}
+
+	/**
+	 * Deletes the contents that no entry uses.
+	 *
+	 * Can run while other threads use the cache: contents written or
+	 * reused since the sweep started are kept.  An entry whose contents
+	 * are deleted anyway, by a put that reuses them at the wrong moment,
+	 * is treated as missing by get.
+	 *
+	 * @return the number of files deleted
+	 * @throws IOException
+	 */
+	public int sweep() throws IOException {
+		long start = System.currentTimeMillis();
+
+		// list the contents before reading the entries, so contents that
+		// are added in between are not candidates
+		List<File> candidates = new ArrayList<File>();
+		for (File dir: listFiles(objects)) {
+			for (File file: listFiles(dir)) {
+				candidates.add(file);
+			}
+		}
+		Set<String> used = new HashSet<String>();
+		for (File file: listFiles(urls)) {
+			if (!file.getName().endsWith(".tmp")) {
+				used.add(readEntry(file).hash);
+			}
+		}
+
+		int count = 0;
+		for (File file: candidates) {
+			String hash = file.getParentFile().getName() + file.getName();
+			if (!used.contains(hash) && file.lastModified() < start && file.delete()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static File[] listFiles(File dir) {
+		File[] files = dir.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	private void writeEntry(Entry entry) throws IOException {
+		File file = new File(urls, sha256(entry.url.getBytes(StandardCharsets.UTF_8)));
+		File temp = tempFile(file);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeUTF(entry.url);
+			out.writeUTF(entry.hash);
+			writeOptional(out, entry.etag);
+			writeOptional(out, entry.lastModified);
+			out.writeLong(entry.checked);
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String readOptional(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeOptional(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	/**
+	 * Returns the file for the contents with the given hash; the first two
+	 * digits are a subdirectory, to keep directories small.
+	 */
+	private File objectFile(String hash) {
+		return new File(new File(objects, hash.substring(0, 2)), hash.substring(2));
+	}
+
+	/**
+	 * Returns a temporary file next to the given one, with a name that
+	 * other threads won't use.
+	 */
+	private static File tempFile(File file) {
+		return new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+	}
+
+	/**
+	 * Computes the SHA-256 hash of some bytes, in hex.
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	static String sha256(byte[] bytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new AssertionError(e);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b: digest.digest(bytes)) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,65 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author downey
+ *
+ */
+public class PageCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Test method for {@link PageCache#put(String, byte[], String, String)}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testPut() throws IOException {
+		PageCache cache = new PageCache(folder.getRoot());
+		String url = "https://en.wikipedia.org/wiki/Java";
+		assertThat(cache.get(url), is(nullValue()));
+
+		PageCache.Entry entry = cache.put(url, bytes("<p>Java</p>"), "\"v1\"", null);
+		assertThat(cache.read(cache.get(url)), is(bytes("<p>Java</p>")));
+		assertThat(cache.get(url).getEtag(), is("\"v1\""));
+		assertThat(cache.get(url).getLastModified(), is(nullValue()));
+		assertThat(cache.get(url).getHash(), is(entry.getHash()));
+	}
+
+	/**
+	 * Test method for {@link PageCache#sweep()}.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSweep() throws Exception {
+		PageCache cache = new PageCache(folder.getRoot());
+		String java = "https://en.wikipedia.org/wiki/Java";
+		String island = "https://en.wikipedia.org/wiki/Java_(island)";
+		cache.put(java, bytes("<p>old</p>"), null, null);
+		cache.put(island, bytes("<p>island</p>"), null, null);
+		cache.put(java, bytes("<p>new</p>"), null, null);
+
+		// a sweep only deletes contents written before it started
+		Thread.sleep(20);
+		assertThat(cache.sweep(), is(1));
+		assertThat(cache.sweep(), is(0));
+		assertThat(cache.read(cache.get(java)), is(bytes("<p>new</p>")));
+		assertThat(cache.read(cache.get(island)), is(bytes("<p>island</p>")));
+	}
+}
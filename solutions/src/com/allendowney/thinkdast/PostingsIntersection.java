@@ -0,0 +1,116 @@
+package com.allendowney.thinkdast;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Iterates the docIds that appear in every one of several postings lists.
+ *
+ * The shortest list leads: for each of its docIds, the other cursors
+ * advance to it, shortest first, using skip pointers.  If one of them
+ * overshoots, the leader advances to where it landed instead.  So a
+ * query that pairs a rare term with a common one costs about as much as
+ * reading the rare term's postings, plus a few skips per posting.
+ *
+ * Typical use:
+ *
+ *     PostingsIntersection it = new PostingsIntersection(lists);
+ *     while (it.next()) {
+ *         use(it.docId(), it.tf(0), it.tf(1));
+ *     }
+ *
+ * @author downey
+ *
+ */
+public class PostingsIntersection {
+
+	// cursors ordered from the shortest list to the longest
+	private final PostingsList.Cursor[] cursors;
+
+	// for each list in the order given, its position in cursors
+	private final int[] order;
+
+	private int docId = -1;
+	private boolean done;
+
+	/**
+	 * @param lists  postings lists to intersect; if empty, so is the result
+	 */
+	public PostingsIntersection(final List<PostingsList> lists) {
+		Integer[] byLength = new Integer[lists.size()];
+		for (int i=0; i<byLength.length; i++) {
+			byLength[i] = i;
+		}
+		Arrays.sort(byLength, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return Integer.compare(lists.get(i).size(), lists.get(j).size());
+			}
+		});
+
+		cursors = new PostingsList.Cursor[lists.size()];
+		order = new int[lists.size()];
+		for (int k=0; k<byLength.length; k++) {
+			cursors[k] = lists.get(byLength[k]).cursor();
+			order[byLength[k]] = k;
+		}
+		done = cursors.length == 0;
+	}
+
+	/**
+	 * Advances to the next docId that is in every list.
+	 *
+	 * @return false if there are no more
+	 */
+	public boolean next() {
+		if (done) {
+			return false;
+		}
+		PostingsList.Cursor lead = cursors[0];
+		if (!lead.advance(docId + 1)) {
+			done = true;
+			return false;
+		}
+		int target = lead.docId();
+		int i = 1;
+		while (i < cursors.length) {
+			if (!cursors[i].advance(target)) {
+				done = true;
+				return false;
+			}
+			if (cursors[i].docId() > target) {
+				// this list has nothing until later, so the leader catches up
+				if (!lead.advance(cursors[i].docId())) {
+					done = true;
+					return false;
+				}
+				target = lead.docId();
+				i = 1;
+			} else {
+				i++;
+			}
+		}
+		docId = target;
+		return true;
+	}
+
+	/**
+	 * Returns the current docId.
+	 *
+	 * @return
+	 */
+	public int docId() {
+		return docId;
+	}
+
+	/**
+	 * Returns the term frequency at the current docId in one of the lists.
+	 *
+	 * @param list  index of the list, in the order they were given
+	 * @return
+	 */
+	public int tf(int list) {
+		return cursors[order[list]].tf();
+	}
+}
@@ -0,0 +1,92 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class PostingsIntersectionTest {
+
+	/**
+	 * Test method for {@link PostingsIntersection#next()}.
+	 */
+	@Test
+	public void testNext() {
+		// a rare list, a common one, and one in between
+		Random random = new Random(20);
+		int[] rates = {500, 2, 20};
+		List<PostingsList> lists = new ArrayList<PostingsList>();
+		List<TreeMap<Integer, Integer>> maps = new ArrayList<TreeMap<Integer, Integer>>();
+		for (int rate: rates) {
+			PostingsList list = new PostingsList();
+			TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+			for (int docId=0; docId<100000; docId++) {
+				if (random.nextInt(rate) == 0) {
+					int tf = 1 + random.nextInt(50);
+					list.add(docId, tf);
+					map.put(docId, tf);
+				}
+			}
+			lists.add(list);
+			maps.add(map);
+		}
+
+		PostingsIntersection it = new PostingsIntersection(lists);
+		int count = 0;
+		for (int docId: maps.get(0).keySet()) {
+			if (maps.get(1).containsKey(docId) && maps.get(2).containsKey(docId)) {
+				assertThat(it.next(), is(true));
+				assertThat(it.docId(), is(docId));
+				for (int i=0; i<3; i++) {
+					assertThat(it.tf(i), is(maps.get(i).get(docId)));
+				}
+				count++;
+			}
+		}
+		assertThat(it.next(), is(false));
+		assertThat(it.next(), is(false));
+		assertThat(count > 0, is(true));
+	}
+
+	/**
+	 * Test method for {@link PostingsIntersection#next()} with edge cases.
+	 */
+	@Test
+	public void testEdgeCases() {
+		PostingsList list = new PostingsList();
+		list.add(3, 1);
+		list.add(7, 2);
+
+		// no lists
+		assertThat(new PostingsIntersection(new ArrayList<PostingsList>()).next(), is(false));
+
+		// one list
+		PostingsIntersection it = new PostingsIntersection(Arrays.asList(list));
+		assertThat(it.next(), is(true));
+		assertThat(it.docId(), is(3));
+		assertThat(it.next(), is(true));
+		assertThat(it.tf(0), is(2));
+		assertThat(it.next(), is(false));
+
+		// an empty list
+		it = new PostingsIntersection(Arrays.asList(list, new PostingsList()));
+		assertThat(it.next(), is(false));
+
+		// the same list twice
+		it = new PostingsIntersection(Arrays.asList(list, list));
+		assertThat(it.next(), is(true));
+		assertThat(it.next(), is(true));
+		assertThat(it.docId(), is(7));
+		assertThat(it.next(), is(false));
+	}
+}
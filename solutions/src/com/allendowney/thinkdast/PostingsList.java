@@ -0,0 +1,279 @@
+package com.allendowney.thinkdast;
+
+import java.util.Arrays;
+
+/**
+ * Compressed list of (docId, term frequency) pairs for one search term.
+ *
+ * DocIds must be added in increasing order.  Each pair is stored as the
+ * gap from the previous docId followed by the frequency, both as
+ * variable-length integers, so a typical posting takes two or three bytes.
+ *
+ * Every SKIP_INTERVAL postings, the list records a skip pointer: the
+ * last docId before that point and the offset where decoding can resume.
+ * Cursor.advance gallops through the skip pointers to the right block,
+ * so advancing to a distant docId decodes at most SKIP_INTERVAL postings
+ * instead of every posting in between.
+ *
+ * @author downey
+ *
+ */
+public class PostingsList {
+
+	// number of postings between skip pointers
+	static final int SKIP_INTERVAL = 32;
+
+	private byte[] bytes;
+	private int length = 0;
+	private int size = 0;
+	private int lastDoc = -1;
+	private int maxTf = 0;
+
+	// skip pointer i holds the docId of posting (i+1)*SKIP_INTERVAL-1 and
+	// the offset of the posting after it
+	private int[] skipDocs = new int[0];
+	private int[] skipOffsets = new int[0];
+	private int skipCount = 0;
+
+	/**
+	 * Makes an empty list.
+	 */
+	public PostingsList() {
+		bytes = new byte[8];
+	}
+
+	/**
+	 * Makes a list from the bytes returned by toByteArray.
+	 *
+	 * @param array
+	 */
+	public PostingsList(byte[] array) {
+		bytes = array.clone();
+		length = bytes.length;
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			size++;
+			lastDoc = cursor.docId();
+			maxTf = Math.max(maxTf, cursor.tf());
+			addSkipIfNeeded(cursor.offset);
+		}
+	}
+
+	/**
+	 * Appends a posting.
+	 *
+	 * @param docId  must be greater than any docId already in the list
+	 * @param tf     number of times the term appears in the document
+	 */
+	public void add(int docId, int tf) {
+		if (docId <= lastDoc) {
+			throw new IllegalArgumentException("docId " + docId + " is not after " + lastDoc);
+		}
+		if (tf < 0) {
+			throw new IllegalArgumentException("negative frequency: " + tf);
+		}
+		// each varint takes at most 5 bytes
+		if (length + 10 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 10));
+		}
+		length = writeVarInt(bytes, length, docId - lastDoc);
+		length = writeVarInt(bytes, length, tf);
+		lastDoc = docId;
+		maxTf = Math.max(maxTf, tf);
+		size++;
+		addSkipIfNeeded(length);
+	}
+
+	/**
+	 * Records a skip pointer if the last posting ends a block.
+	 *
+	 * @param offset  offset after the last posting
+	 */
+	private void addSkipIfNeeded(int offset) {
+		if (size % SKIP_INTERVAL != 0) {
+			return;
+		}
+		if (skipCount == skipDocs.length) {
+			int capacity = Math.max(4, skipCount * 2);
+			skipDocs = Arrays.copyOf(skipDocs, capacity);
+			skipOffsets = Arrays.copyOf(skipOffsets, capacity);
+		}
+		skipDocs[skipCount] = lastDoc;
+		skipOffsets[skipCount] = offset;
+		skipCount++;
+	}
+
+	/**
+	 * Returns the number of postings.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest docId in the list, or -1 if it is empty.
+	 *
+	 * @return
+	 */
+	public int lastDoc() {
+		return lastDoc;
+	}
+
+	/**
+	 * Returns the largest term frequency in the list, or 0 if it is empty.
+	 *
+	 * @return
+	 */
+	public int maxTf() {
+		return maxTf;
+	}
+
+	/**
+	 * Returns the number of bytes used by the encoded postings.
+	 *
+	 * @return
+	 */
+	public int byteSize() {
+		return length;
+	}
+
+	/**
+	 * Returns a copy of the encoded postings.
+	 *
+	 * @return
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Returns a cursor positioned before the first posting.
+	 *
+	 * @return
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Reads the postings in order without making an object per posting.
+	 *
+	 * Typical use:
+	 *
+	 *     Cursor cursor = list.cursor();
+	 *     while (cursor.next()) {
+	 *         use(cursor.docId(), cursor.tf());
+	 *     }
+	 */
+	public class Cursor {
+		private int offset = 0;
+		private int docId = -1;
+		private int tf = 0;
+
+		// index of the first skip pointer that is ahead of the cursor
+		private int nextSkip = 0;
+
+		/**
+		 * Advances to the next posting.
+		 *
+		 * @return false if there are no more postings
+		 */
+		public boolean next() {
+			if (offset >= length) {
+				return false;
+			}
+			docId += readVarInt();
+			tf = readVarInt();
+			return true;
+		}
+
+		/**
+		 * Advances to the first posting whose docId is at least target.
+		 *
+		 * If the cursor is already there, it does not move.  Otherwise it
+		 * jumps to the last skip pointer before target, found by galloping
+		 * (checking 1, 2, 4, 8... pointers ahead, then a binary search),
+		 * and decodes from there.  So the cost grows with the log of the
+		 * distance, rather than the distance.
+		 *
+		 * @param target
+		 * @return false if there is no such posting
+		 */
+		public boolean advance(int target) {
+			if (docId >= target) {
+				return true;
+			}
+			while (nextSkip < skipCount && skipOffsets[nextSkip] <= offset) {
+				nextSkip++;
+			}
+			if (nextSkip < skipCount && skipDocs[nextSkip] < target) {
+				// gallop to find a pointer at or past target
+				int low = nextSkip;
+				int step = 1;
+				while (low + step < skipCount && skipDocs[low + step] < target) {
+					low += step;
+					step *= 2;
+				}
+				// then binary search for the last pointer before target
+				int high = Math.min(low + step, skipCount);
+				while (high - low > 1) {
+					int mid = (low + high) >>> 1;
+					if (skipDocs[mid] < target) {
+						low = mid;
+					} else {
+						high = mid;
+					}
+				}
+				docId = skipDocs[low];
+				offset = skipOffsets[low];
+				nextSkip = low + 1;
+			}
+			while (next()) {
+				if (docId >= target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public int docId() {
+			return docId;
+		}
+
+		public int tf() {
+			return tf;
+		}
+
+		private int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+	}
+
+	/**
+	 * Writes a non-negative int using 7 bits per byte, low bits first;
+	 * the high bit of each byte is set if more bytes follow.
+	 *
+	 * @param array
+	 * @param offset
+	 * @param value
+	 * @return the offset after the last byte written
+	 */
+	static int writeVarInt(byte[] array, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			array[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		array[offset++] = (byte) value;
+		return offset;
+	}
+}
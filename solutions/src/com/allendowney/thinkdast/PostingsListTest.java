@@ -0,0 +1,122 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class PostingsListTest {
+
+	/**
+	 * Test method for {@link PostingsList#add(int, int)}.
+	 */
+	@Test
+	public void testAddAndRead() {
+		List<int[]> expected = new ArrayList<int[]>();
+		PostingsList list = new PostingsList();
+		Random random = new Random(17);
+		int docId = 0;
+		for (int i=0; i<10000; i++) {
+			// mix small and large gaps and counts
+			docId += 1 + (i % 7 == 0 ? random.nextInt(1 << 20) : random.nextInt(10));
+			int tf = i % 11 == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(5);
+			list.add(docId, tf);
+			expected.add(new int[] {docId, tf});
+		}
+		assertThat(list.size(), is(10000));
+		assertThat(list.lastDoc(), is(docId));
+
+		// the copy decodes to the same postings
+		PostingsList copy = new PostingsList(list.toByteArray());
+		assertThat(copy.size(), is(10000));
+		assertThat(copy.lastDoc(), is(docId));
+
+		PostingsList.Cursor cursor = copy.cursor();
+		for (int[] pair: expected) {
+			assertThat(cursor.next(), is(true));
+			assertThat(cursor.docId(), is(pair[0]));
+			assertThat(cursor.tf(), is(pair[1]));
+		}
+		assertThat(cursor.next(), is(false));
+	}
+
+	/**
+	 * Test method for {@link PostingsList.Cursor#advance(int)}.
+	 */
+	@Test
+	public void testAdvance() {
+		PostingsList list = new PostingsList();
+		for (int docId=0; docId<1000; docId+=10) {
+			list.add(docId, docId % 7);
+		}
+		assertThat(list.maxTf(), is(6));
+
+		PostingsList.Cursor cursor = list.cursor();
+		assertThat(cursor.advance(15), is(true));
+		assertThat(cursor.docId(), is(20));
+
+		// advancing to an earlier docId does not move the cursor
+		assertThat(cursor.advance(5), is(true));
+		assertThat(cursor.docId(), is(20));
+		assertThat(cursor.advance(20), is(true));
+		assertThat(cursor.docId(), is(20));
+
+		assertThat(cursor.advance(990), is(true));
+		assertThat(cursor.tf(), is(990 % 7));
+		assertThat(cursor.advance(991), is(false));
+	}
+
+	/**
+	 * Test method for {@link PostingsList.Cursor#advance(int)} with skip
+	 * pointers, compared with reading every posting.
+	 */
+	@Test
+	public void testAdvanceWithSkips() {
+		PostingsList list = new PostingsList();
+		Random random = new Random(20);
+		int docId = 0;
+		for (int i=0; i<10000; i++) {
+			docId += 1 + random.nextInt(i % 100 == 0 ? 10000 : 5);
+			list.add(docId, i);
+		}
+		// the copy rebuilds the skip pointers
+		PostingsList copy = new PostingsList(list.toByteArray());
+
+		for (PostingsList l: new PostingsList[] {list, copy}) {
+			PostingsList.Cursor skipping = l.cursor();
+			PostingsList.Cursor reading = l.cursor();
+			int target = 0;
+			while (true) {
+				target += random.nextInt(random.nextBoolean() ? 50 : 50000);
+				boolean found = reading.docId() >= target;
+				while (!found && reading.next()) {
+					found = reading.docId() >= target;
+				}
+				assertThat(skipping.advance(target), is(found));
+				if (!found) {
+					break;
+				}
+				assertThat(skipping.docId(), is(reading.docId()));
+				assertThat(skipping.tf(), is(reading.tf()));
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link PostingsList#add(int, int)}.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddOutOfOrder() {
+		PostingsList list = new PostingsList();
+		list.add(3, 1);
+		list.add(3, 1);
+	}
+}
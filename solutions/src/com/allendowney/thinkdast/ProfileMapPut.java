@@ -1,5 +1,6 @@
 package com.allendowney.thinkdast;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,6 +17,10 @@ public class ProfileMapPut {
 		//profileHashMapPut();
 		//profileMyHashMapPut();
 		profileMyFixedHashMapPut();
+		//profileMyOpenHashMapPut();
+
+		//profilePutLatency("MyFixedHashMap", new MyFixedHashMap<String, Integer>(), 1000000);
+		//profilePutLatency("MyIncrementalHashMap", new MyIncrementalHashMap<String, Integer>(), 1000000);
 	}
 
 	/**
@@ -85,6 +90,62 @@ public class ProfileMapPut {
 		runProfiler("MyFixedHashMap put", timeable, startN, endMillis);
 	}
 	
+	/**
+	 * Characterize the run time of putting a key in MyOpenHashMap
+	 */
+	public static void profileMyOpenHashMapPut() {
+		Timeable timeable = new Timeable() {
+			Map<String, Integer> map;
+
+			public void setup(int n) {
+				map = new MyOpenHashMap<String, Integer>();
+			}
+
+			public void timeMe(int n) {
+				for (int i=0; i<n; i++) {
+					map.put(String.format("%10d", i), i);
+				}
+			}
+		};
+		int startN = 8000;
+		int endMillis = 1000;
+		runProfiler("MyOpenHashMap put", timeable, startN, endMillis);
+	}
+	
+	/**
+	 * Times each of `n` puts into `map` and prints latency percentiles.
+	 *
+	 * The timing loop above only shows total run time; this shows how
+	 * the cost is distributed, which is where a stop-the-world rehash
+	 * stands out.
+	 *
+	 * @param title
+	 * @param map
+	 * @param n
+	 */
+	public static void profilePutLatency(String title, Map<String, Integer> map, int n) {
+		String[] keys = new String[n];
+		for (int i=0; i<n; i++) {
+			keys[i] = String.format("%10d", i);
+		}
+
+		long[] latencies = new long[n];
+		for (int i=0; i<n; i++) {
+			long start = System.nanoTime();
+			map.put(keys[i], i);
+			latencies[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latencies);
+
+		System.out.println(title + " put latency (ns), n = " + n);
+		double[] percentiles = {50, 90, 99, 99.9, 99.99};
+		for (double p: percentiles) {
+			int index = (int) Math.min(n - 1, Math.ceil(p / 100 * n) - 1);
+			System.out.println("  p" + p + ": " + latencies[index]);
+		}
+		System.out.println("  max: " + latencies[n - 1]);
+	}
+
 	/**
 	 * Runs the profiles and displays results.
 	 * 
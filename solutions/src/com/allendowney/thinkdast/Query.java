@@ -0,0 +1,478 @@
+package com.allendowney.thinkdast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A parsed boolean query that can be evaluated against a SearchIndex.
+ *
+ * The leaves are single terms, which are looked up with
+ * WikiSearch.search; the inner nodes combine the results with
+ * WikiSearch.and, or, and minus.  Evaluation is planned as it goes:
+ *
+ *   - the operands of an AND are evaluated in order of their estimated
+ *     size, smallest first, so the intermediate results stay small;
+ *
+ *   - if an intermediate result is empty, the remaining operands are not
+ *     evaluated at all;
+ *
+ *   - NOT operands are applied last, to what the positive operands
+ *     matched.  If a NOT operand is a term that has not been looked up,
+ *     the index is asked which of the matched pages contain it (see
+ *     SearchIndex.containing), so the pages of a common term are not
+ *     all fetched to exclude a few.  Otherwise, or if the index can't
+ *     check pages, or the term is known to be on fewer pages than were
+ *     matched, the operand is evaluated and subtracted;
+ *
+ *   - the terms of an AND are looked up together; if the index can
+ *     intersect them itself (see SearchIndex.getCountsForAll), as
+ *     LocalIndex does with its postings lists, no map is built for
+ *     each term.  A term that appears more than once in an AND is
+ *     looked up and counted once, whatever the index.
+ *
+ * Sizes are estimated from document frequencies when the index can
+ * provide them (see SearchIndex.docFrequency); otherwise a term has to
+ * be looked up to be estimated.  Each term is looked up at most once
+ * per evaluation.
+ *
+ * @author downey
+ *
+ */
+public abstract class Query {
+
+	/**
+	 * Evaluates the query.
+	 *
+	 * @param index
+	 * @return
+	 * @throws IllegalArgumentException if the query has no positive term,
+	 *         like `NOT java` or `java OR NOT coffee`
+	 */
+	public WikiSearch evaluate(SearchIndex index) {
+		return evaluate(new Context(index));
+	}
+
+	/**
+	 * Estimates the number of results, as cheaply as possible.
+	 *
+	 * @param context
+	 * @return
+	 */
+	abstract int estimate(Context context);
+
+	/**
+	 * Evaluates the query.
+	 *
+	 * @param context
+	 * @return
+	 */
+	abstract WikiSearch evaluate(Context context);
+
+	/**
+	 * Looks up terms for one evaluation and remembers the results.
+	 */
+	static class Context {
+		private final SearchIndex index;
+		private final Map<String, WikiSearch> searches = new HashMap<String, WikiSearch>();
+		private final Map<String, Integer> estimates = new HashMap<String, Integer>();
+
+		Context(SearchIndex index) {
+			this.index = index;
+		}
+
+		/**
+		 * Looks up a term.
+		 *
+		 * @param term
+		 * @return
+		 */
+		WikiSearch search(String term) {
+			WikiSearch search = searches.get(term);
+			if (search == null) {
+				search = WikiSearch.search(term, index);
+				searches.put(term, search);
+			}
+			return search;
+		}
+
+		/**
+		 * Returns the number of pages that contain a term.
+		 *
+		 * @param term
+		 * @return
+		 */
+		int docFrequency(String term) {
+			WikiSearch search = searches.get(term);
+			if (search != null) {
+				return search.size();
+			}
+			Integer df = estimates.get(term);
+			if (df == null) {
+				df = index.docFrequency(term);
+				estimates.put(term, df);
+			}
+			return df >= 0 ? df : search(term).size();
+		}
+
+		/**
+		 * Removes the pages that match a NOT operand from a result.
+		 *
+		 * @param result
+		 * @param operand
+		 * @return
+		 */
+		WikiSearch exclude(WikiSearch result, Query operand) {
+			if (operand instanceof Term) {
+				String term = ((Term) operand).getTerm();
+				Integer df = estimates.get(term);
+				if (df == null && !searches.containsKey(term)) {
+					df = index.docFrequency(term);
+					estimates.put(term, df);
+				}
+				// probe the result unless the term is cheaper to look up
+				if (!searches.containsKey(term) && (df < 0 || df >= result.size())) {
+					Set<String> excluded = index.containing(term, result.urls());
+					if (excluded != null) {
+						return result.minus(excluded);
+					}
+				}
+			}
+			return result.minus(operand.evaluate(this));
+		}
+
+		/**
+		 * Looks up the pages that contain all of the terms.
+		 *
+		 * The terms that have been looked up already are intersected first,
+		 * then the index is asked to intersect the others; if it can't,
+		 * they are looked up one at a time, smallest first.
+		 *
+		 * @param terms
+		 * @return
+		 */
+		WikiSearch searchAll(Collection<String> terms) {
+			WikiSearch result = null;
+			List<String> remaining = new ArrayList<String>();
+			for (String term: terms) {
+				WikiSearch search = searches.get(term);
+				if (search == null) {
+					remaining.add(term);
+					continue;
+				}
+				result = result == null ? search : result.and(search);
+				if (result.size() == 0) {
+					return result;
+				}
+			}
+
+			if (remaining.size() > 1) {
+				Map<String, Integer> counts = index.getCountsForAll(remaining);
+				if (counts != null) {
+					WikiSearch search = new WikiSearch(counts);
+					return result == null ? search : result.and(search);
+				}
+			}
+
+			Collections.sort(remaining, new Comparator<String>() {
+				@Override
+				public int compare(String t1, String t2) {
+					return Integer.compare(docFrequency(t1), docFrequency(t2));
+				}
+			});
+			for (String term: remaining) {
+				WikiSearch search = search(term);
+				result = result == null ? search : result.and(search);
+				if (result.size() == 0) {
+					return result;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Matches pages that contain a term.
+	 */
+	public static class Term extends Query {
+		private final String term;
+
+		public Term(String term) {
+			this.term = term;
+		}
+
+		public String getTerm() {
+			return term;
+		}
+
+		@Override
+		int estimate(Context context) {
+			return context.docFrequency(term);
+		}
+
+		@Override
+		WikiSearch evaluate(Context context) {
+			return context.search(term);
+		}
+
+		@Override
+		public String toString() {
+			return term;
+		}
+	}
+
+	/**
+	 * Matches pages that match every operand.
+	 *
+	 * Operands that are Nots exclude the pages they match.
+	 */
+	public static class And extends Query {
+		protected final List<Query> operands;
+
+		public And(List<Query> operands) {
+			this.operands = operands;
+		}
+
+		public List<Query> getOperands() {
+			return operands;
+		}
+
+		@Override
+		int estimate(Context context) {
+			// an intersection is no bigger than its smallest operand
+			int min = Integer.MAX_VALUE;
+			for (Query operand: operands) {
+				if (!(operand instanceof Not)) {
+					min = Math.min(min, operand.estimate(context));
+				}
+			}
+			return min;
+		}
+
+		@Override
+		WikiSearch evaluate(final Context context) {
+			List<Query> positive = new ArrayList<Query>();
+			List<Query> negative = new ArrayList<Query>();
+			for (Query operand: operands) {
+				if (operand instanceof Not) {
+					negative.add(((Not) operand).operand);
+				} else {
+					positive.add(operand);
+				}
+			}
+			if (positive.isEmpty()) {
+				throw new IllegalArgumentException("NOT needs a term to exclude from: " + this);
+			}
+
+			// the terms are looked up together, and a repeated term only once
+			List<Term> terms = new ArrayList<Term>();
+			Set<String> seen = new HashSet<String>();
+			for (Iterator<Query> it = positive.iterator(); it.hasNext(); ) {
+				Query operand = it.next();
+				if (operand instanceof Term) {
+					it.remove();
+					if (seen.add(((Term) operand).getTerm())) {
+						terms.add((Term) operand);
+					}
+				}
+			}
+			if (terms.size() == 1) {
+				positive.add(terms.get(0));
+			} else if (terms.size() > 1) {
+				positive.add(new AllTerms(terms));
+			}
+
+			// evaluate the most selective operands first
+			Collections.sort(positive, new Comparator<Query>() {
+				@Override
+				public int compare(Query q1, Query q2) {
+					return Integer.compare(q1.estimate(context), q2.estimate(context));
+				}
+			});
+			WikiSearch result = null;
+			for (Query operand: positive) {
+				WikiSearch search = operand.evaluate(context);
+				result = result == null ? search : result.and(search);
+				if (result.size() == 0) {
+					return result;
+				}
+			}
+
+			// then filter out the excluded pages
+			for (Query operand: negative) {
+				result = context.exclude(result, operand);
+				if (result.size() == 0) {
+					break;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return join(operands, " AND ");
+		}
+	}
+
+	/**
+	 * Matches pages that contain all of the terms; used by the planner in
+	 * place of an And of Terms.
+	 */
+	static class AllTerms extends Query {
+		private final List<Term> terms;
+
+		AllTerms(List<Term> terms) {
+			this.terms = terms;
+		}
+
+		@Override
+		int estimate(Context context) {
+			int min = Integer.MAX_VALUE;
+			for (Term term: terms) {
+				min = Math.min(min, term.estimate(context));
+			}
+			return min;
+		}
+
+		@Override
+		WikiSearch evaluate(Context context) {
+			List<String> list = new ArrayList<String>();
+			for (Term term: terms) {
+				list.add(term.getTerm());
+			}
+			return context.searchAll(list);
+		}
+
+		@Override
+		public String toString() {
+			return join(new ArrayList<Query>(terms), " AND ");
+		}
+	}
+
+	/**
+	 * Matches the pages that contain all the terms of a quoted phrase.
+	 *
+	 * The index does not record where terms appear on a page, so it can't
+	 * check that they are next to each other; a phrase matches the same
+	 * pages as an AND of its terms.
+	 */
+	public static class Phrase extends And {
+
+		public Phrase(List<Query> terms) {
+			super(terms);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("\"");
+			for (int i=0; i<operands.size(); i++) {
+				if (i > 0) {
+					sb.append(' ');
+				}
+				sb.append(operands.get(i));
+			}
+			return sb.append('"').toString();
+		}
+	}
+
+	/**
+	 * Matches pages that match any operand.
+	 */
+	public static class Or extends Query {
+		private final List<Query> operands;
+
+		public Or(List<Query> operands) {
+			this.operands = operands;
+		}
+
+		public List<Query> getOperands() {
+			return operands;
+		}
+
+		@Override
+		int estimate(Context context) {
+			long sum = 0;
+			for (Query operand: operands) {
+				sum += operand.estimate(context);
+			}
+			return (int) Math.min(sum, Integer.MAX_VALUE);
+		}
+
+		@Override
+		WikiSearch evaluate(Context context) {
+			WikiSearch result = null;
+			for (Query operand: operands) {
+				if (operand instanceof Not) {
+					throw new IllegalArgumentException("NOT can't be an operand of OR: " + this);
+				}
+				WikiSearch search = operand.evaluate(context);
+				result = result == null ? search : result.or(search);
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return join(operands, " OR ");
+		}
+	}
+
+	/**
+	 * Excludes the pages that match the operand; only meaningful as an
+	 * operand of And.
+	 */
+	public static class Not extends Query {
+		private final Query operand;
+
+		public Not(Query operand) {
+			this.operand = operand;
+		}
+
+		public Query getOperand() {
+			return operand;
+		}
+
+		@Override
+		int estimate(Context context) {
+			throw new IllegalArgumentException("NOT needs a term to exclude from: " + this);
+		}
+
+		@Override
+		WikiSearch evaluate(Context context) {
+			throw new IllegalArgumentException("NOT needs a term to exclude from: " + this);
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + wrap(operand);
+		}
+	}
+
+	private static String join(List<Query> operands, String separator) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<operands.size(); i++) {
+			if (i > 0) {
+				sb.append(separator);
+			}
+			sb.append(wrap(operands.get(i)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Puts parentheses around compound operands.
+	 */
+	private static String wrap(Query query) {
+		if (query instanceof Term || query instanceof Phrase || query instanceof Not) {
+			return query.toString();
+		}
+		return "(" + query + ")";
+	}
+}
@@ -0,0 +1,252 @@
+package com.allendowney.thinkdast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses boolean search queries.
+ *
+ * The syntax is:
+ *
+ *     java compiler               pages with both terms
+ *     java AND compiler           the same
+ *     java OR python              pages with either term
+ *     java NOT coffee             pages with java but not coffee
+ *     "virtual machine"           pages with both terms (see Query.Phrase)
+ *     java AND (jvm OR bytecode)  parentheses group
+ *
+ * NOT binds tightest, then AND, then OR, so `a OR b c` means `a OR (b AND c)`.
+ * The operators must be upper case; otherwise they are search terms.
+ * Words are split into terms the way TermCounter splits text, so they
+ * are converted to lower case, and punctuation separates terms, so
+ * `java's` is the phrase "java s".
+ *
+ * @author downey
+ *
+ */
+public class QueryParser {
+
+	private static final String AND = "AND";
+	private static final String OR = "OR";
+	private static final String NOT = "NOT";
+
+	// kinds of tokens
+	private static final int WORD = 0;
+	private static final int PHRASE = 1;
+	private static final int OPERATOR = 2;
+	private static final int LEFT = 3;
+	private static final int RIGHT = 4;
+	private static final int END = 5;
+
+	private final String query;
+	private final TermTokenizer tokenizer = new TermTokenizer();
+
+	// current position in the query and the token that starts there
+	private int position = 0;
+	private int tokenStart;
+	private int tokenType;
+	private String tokenText;
+	private List<String> tokenTerms;
+
+	private QueryParser(String query) {
+		this.query = query;
+	}
+
+	/**
+	 * Parses a query.
+	 *
+	 * @param query
+	 * @return
+	 * @throws IllegalArgumentException if the query is malformed
+	 */
+	public static Query parse(String query) {
+		QueryParser parser = new QueryParser(query);
+		parser.nextToken();
+		Query result = parser.parseOr();
+		if (parser.tokenType != END) {
+			throw parser.error("unexpected " + parser.describe());
+		}
+		return result;
+	}
+
+	/**
+	 * or := and (OR and)*
+	 */
+	private Query parseOr() {
+		List<Query> operands = new ArrayList<Query>();
+		addOperand(operands, parseAnd(), Query.Or.class);
+		while (isOperator(OR)) {
+			nextToken();
+			addOperand(operands, parseAnd(), Query.Or.class);
+		}
+		return operands.size() == 1 ? operands.get(0) : new Query.Or(operands);
+	}
+
+	/**
+	 * and := unary ([AND] unary)*
+	 */
+	private Query parseAnd() {
+		List<Query> operands = new ArrayList<Query>();
+		addOperand(operands, parseUnary(), Query.And.class);
+		while (true) {
+			if (isOperator(AND)) {
+				nextToken();
+			} else if (tokenType == END || tokenType == RIGHT || isOperator(OR)) {
+				break;
+			}
+			addOperand(operands, parseUnary(), Query.And.class);
+		}
+		return operands.size() == 1 ? operands.get(0) : new Query.And(operands);
+	}
+
+	/**
+	 * Adds an operand to a list, flattening nested operations of the same
+	 * kind so the planner can reorder all of their operands.
+	 */
+	private static void addOperand(List<Query> operands, Query operand, Class<? extends Query> kind) {
+		if (operand.getClass() == kind) {
+			if (operand instanceof Query.And) {
+				operands.addAll(((Query.And) operand).getOperands());
+			} else {
+				operands.addAll(((Query.Or) operand).getOperands());
+			}
+		} else {
+			operands.add(operand);
+		}
+	}
+
+	/**
+	 * unary := NOT unary | primary
+	 */
+	private Query parseUnary() {
+		if (isOperator(NOT)) {
+			nextToken();
+			Query operand = parseUnary();
+
+			// NOT NOT x is x
+			if (operand instanceof Query.Not) {
+				return ((Query.Not) operand).getOperand();
+			}
+			return new Query.Not(operand);
+		}
+		return parsePrimary();
+	}
+
+	/**
+	 * primary := ( or ) | word | phrase
+	 */
+	private Query parsePrimary() {
+		if (tokenType == LEFT) {
+			int start = tokenStart;
+			nextToken();
+			Query query = parseOr();
+			if (tokenType != RIGHT) {
+				throw error("missing ) for the ( at position " + start);
+			}
+			nextToken();
+			return query;
+		}
+		if (tokenType == WORD || tokenType == PHRASE) {
+			List<Query> terms = new ArrayList<Query>();
+			for (String term: tokenTerms) {
+				terms.add(new Query.Term(term));
+			}
+			// a quoted word is just a term
+			nextToken();
+			return terms.size() > 1 ? new Query.Phrase(terms) : terms.get(0);
+		}
+		throw error("expected a term but found " + describe());
+	}
+
+	private boolean isOperator(String operator) {
+		return tokenType == OPERATOR && tokenText.equals(operator);
+	}
+
+	/**
+	 * Reads the next token.
+	 *
+	 * Words and phrases that contain no terms, like `-`, are skipped.
+	 */
+	private void nextToken() {
+		while (true) {
+			while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+				position++;
+			}
+			tokenStart = position;
+			if (position == query.length()) {
+				tokenType = END;
+				return;
+			}
+
+			char c = query.charAt(position);
+			if (c == '(' || c == ')') {
+				position++;
+				tokenType = c == '(' ? LEFT : RIGHT;
+				tokenText = String.valueOf(c);
+				return;
+			}
+			if (c == '"') {
+				int end = query.indexOf('"', position + 1);
+				if (end == -1) {
+					throw error("missing closing quote");
+				}
+				tokenText = query.substring(position + 1, end);
+				position = end + 1;
+				tokenType = PHRASE;
+			} else {
+				int end = position;
+				while (end < query.length() && !isDelimiter(query.charAt(end))) {
+					end++;
+				}
+				tokenText = query.substring(position, end);
+				position = end;
+				if (tokenText.equals(AND) || tokenText.equals(OR) || tokenText.equals(NOT)) {
+					tokenType = OPERATOR;
+					return;
+				}
+				tokenType = WORD;
+			}
+			tokenTerms = terms(tokenText);
+			if (!tokenTerms.isEmpty()) {
+				return;
+			}
+		}
+	}
+
+	private static boolean isDelimiter(char c) {
+		return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+	}
+
+	/**
+	 * Splits text into terms the way TermCounter does, except that empty
+	 * terms, which the tokenizer makes for leading punctuation, are
+	 * skipped.
+	 */
+	private List<String> terms(String text) {
+		final List<String> terms = new ArrayList<String>();
+		tokenizer.tokenize(text, new TermTokenizer.Sink() {
+			@Override
+			public void term(char[] chars, int offset, int length) {
+				if (length > 0) {
+					terms.add(new String(chars, offset, length));
+				}
+			}
+		});
+		return terms;
+	}
+
+	private String describe() {
+		switch (tokenType) {
+		case END:
+			return "end of query";
+		case PHRASE:
+			return "\"" + tokenText + "\"";
+		default:
+			return "'" + tokenText + "'";
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + tokenStart + " in query: " + query);
+	}
+}
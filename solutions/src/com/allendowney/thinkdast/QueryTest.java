@@ -0,0 +1,307 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class QueryTest {
+
+	private static String url1, url2;
+	private LocalIndex index;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		index = new LocalIndex();
+		WikiFetcher wf = new WikiFetcher();
+
+		url1 = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		index.indexPage(url1, wf.readWikipedia(url1));
+
+		url2 = "https://en.wikipedia.org/wiki/Programming_language";
+		index.indexPage(url2, wf.readWikipedia(url2));
+
+		TermCounter tc = new TermCounter("https://en.wikipedia.org/wiki/Coffee");
+		tc.put("java", 3);
+		tc.put("espresso", 10);
+		index.addTermCounter(tc);
+	}
+
+	/**
+	 * Test method for {@link QueryParser#parse(String)}.
+	 */
+	@Test
+	public void testParse() {
+		assertThat(QueryParser.parse("java").toString(), is("java"));
+		assertThat(QueryParser.parse("Java compiler").toString(), is("java AND compiler"));
+		assertThat(QueryParser.parse("a OR b c").toString(), is("a OR (b AND c)"));
+		assertThat(QueryParser.parse("(a OR b) c").toString(), is("(a OR b) AND c"));
+		assertThat(QueryParser.parse("a AND (b AND c)").toString(), is("a AND b AND c"));
+		assertThat(QueryParser.parse("a NOT NOT b").toString(), is("a AND b"));
+		assertThat(QueryParser.parse("java NOT (coffee OR tea)").toString(),
+				is("java AND NOT (coffee OR tea)"));
+		assertThat(QueryParser.parse("\"Virtual Machine\" OR jvm").toString(),
+				is("\"virtual machine\" OR jvm"));
+		assertThat(QueryParser.parse("java's - and").toString(), is("\"java s\" AND and"));
+
+		// leading punctuation doesn't make empty terms
+		assertThat(QueryParser.parse("'java' compiler").toString(), is("java AND compiler"));
+		assertThat(QueryParser.parse("...java").toString(), is("java"));
+		assertThat(QueryParser.parse("\"java\"").toString(), is("java"));
+		assertThat(QueryParser.parse("\"'virtual machine\"").toString(), is("\"virtual machine\""));
+		assertThat(QueryParser.parse("-java OR (.compiler)").toString(), is("java OR compiler"));
+	}
+
+	/**
+	 * Test method for {@link QueryParser#parse(String)} with bad queries.
+	 */
+	@Test
+	public void testParseErrors() {
+		String[] queries = {"", "a AND", "(a OR b", "a)", "\"a b", "OR a", "NOT"};
+		for (String query: queries) {
+			try {
+				QueryParser.parse(query);
+				fail(query);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link Query#evaluate(SearchIndex)}.
+	 */
+	@Test
+	public void testEvaluate() {
+		WikiSearch java = WikiSearch.search("java", index);
+		WikiSearch espresso = WikiSearch.search("espresso", index);
+		WikiSearch the = WikiSearch.search("the", index);
+		assertThat(java.size(), is(3));
+
+		WikiSearch search = WikiSearch.query("java NOT espresso", index);
+		assertThat(search.size(), is(2));
+		assertThat(search.getRelevance(url1), is(java.getRelevance(url1)));
+
+		search = WikiSearch.query("the AND java", index);
+		assertThat(search.size(), is(2));
+		assertThat(search.getRelevance(url2), is(the.and(java).getRelevance(url2)));
+
+		search = WikiSearch.query("espresso OR (the NOT java)", index);
+		assertThat(search.size(), is(1));
+		assertThat(search.getRelevance("https://en.wikipedia.org/wiki/Coffee"),
+				is(espresso.getRelevance("https://en.wikipedia.org/wiki/Coffee")));
+
+		search = WikiSearch.query("\"programming language\" NOT espresso", index);
+		assertThat(search.size(), is(2));
+
+		assertThat(WikiSearch.query("java nosuchterm", index).size(), is(0));
+	}
+
+	/**
+	 * Queries without a positive term can't be evaluated.
+	 */
+	@Test
+	public void testEvaluateErrors() {
+		String[] queries = {"NOT java", "java OR NOT coffee", "NOT java NOT coffee"};
+		for (String query: queries) {
+			try {
+				WikiSearch.query(query, index);
+				fail(query);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Checks that the smallest operand is evaluated first, and that
+	 * nothing else is looked up once the result is empty.
+	 */
+	@Test
+	public void testPlan() {
+		CountingIndex counting = new CountingIndex(index);
+		WikiSearch search = WikiSearch.query("the java NOT espresso nosuchterm", counting);
+		assertThat(search.size(), is(0));
+		assertThat(counting.lookups.get(0), is("nosuchterm"));
+		assertThat(counting.lookups.size(), is(1));
+
+		counting.lookups.clear();
+		WikiSearch.query("the espresso NOT java", counting);
+		assertThat(counting.lookups.get(0), is("espresso"));
+		assertThat(counting.lookups.contains("java"), is(false));
+	}
+
+	/**
+	 * Checks that terms the index intersects itself are not looked up
+	 * again if an earlier operand looked them up.
+	 */
+	@Test
+	public void testPlanIntersect() {
+		CountingIndex counting = new CountingIndex(index);
+		counting.intersect = true;
+		WikiSearch search = WikiSearch.query("(espresso OR nosuchterm) espresso java", counting);
+		assertThat(search.size(), is(1));
+		assertThat(counting.lookups, is(Arrays.asList("espresso", "nosuchterm", "java")));
+
+		counting.lookups.clear();
+		WikiSearch.query("java the", counting);
+		assertThat(counting.lookups.size(), is(2));
+	}
+
+	/**
+	 * Checks that a repeated term is counted once, whether or not the
+	 * index intersects terms itself.
+	 */
+	@Test
+	public void testRepeatedTerm() {
+		WikiSearch java = WikiSearch.search("java", index);
+		CountingIndex counting = new CountingIndex(index);
+		for (boolean intersect: new boolean[] {false, true}) {
+			counting.intersect = intersect;
+			for (SearchIndex searched: new SearchIndex[] {index, counting}) {
+				WikiSearch search = WikiSearch.query("java java \"java\"", searched);
+				assertThat(search.size(), is(java.size()));
+				assertThat(search.getRelevance(url1), is(java.getRelevance(url1)));
+
+				search = WikiSearch.query("java the java", searched);
+				assertThat(search.getRelevance(url1),
+						is(java.and(WikiSearch.search("the", index)).getRelevance(url1)));
+			}
+		}
+		counting.lookups.clear();
+		WikiSearch.query("java AND java", counting);
+		assertThat(counting.lookups, is(Arrays.asList("java")));
+	}
+
+	/**
+	 * Checks that an excluded term is checked against the matched pages,
+	 * when the index can do that and the term is on more pages, instead
+	 * of being looked up.
+	 */
+	@Test
+	public void testPlanNot() {
+		CountingIndex counting = new CountingIndex(index);
+		for (boolean probe: new boolean[] {false, true}) {
+			counting.probe = probe;
+			counting.lookups.clear();
+			WikiSearch search = WikiSearch.query("espresso NOT java", counting);
+			assertThat(search.size(), is(0));
+			assertThat(counting.lookups.contains("java"), is(!probe));
+		}
+		assertThat(counting.probes, is(Arrays.asList("java")));
+
+		// a rarer term is cheaper to look up
+		counting.probes.clear();
+		WikiSearch search = WikiSearch.query("java NOT espresso", counting);
+		assertThat(search.size(), is(2));
+		assertThat(counting.probes.isEmpty(), is(true));
+
+		// and a term that has been looked up already is just subtracted
+		WikiSearch.query("java OR (espresso NOT java)", counting);
+		assertThat(counting.probes.isEmpty(), is(true));
+	}
+
+	/**
+	 * A ScoringIndex that records the terms that are looked up.
+	 */
+	private static class CountingIndex implements ScoringIndex {
+		private final LocalIndex index;
+		private final List<String> lookups = new ArrayList<String>();
+
+		// whether to intersect terms with getCountsForAll
+		private boolean intersect = false;
+
+		// terms checked with containing, if it is allowed
+		private final List<String> probes = new ArrayList<String>();
+		private boolean probe = false;
+
+		CountingIndex(LocalIndex index) {
+			this.index = index;
+		}
+
+		@Override
+		public void indexPage(String url, Elements paragraphs) {
+			index.indexPage(url, paragraphs);
+		}
+
+		@Override
+		public boolean isIndexed(String url) {
+			return index.isIndexed(url);
+		}
+
+		@Override
+		public Set<String> getURLs(String term) {
+			return index.getURLs(term);
+		}
+
+		@Override
+		public Map<String, Integer> getCounts(String term) {
+			lookups.add(term);
+			return index.getCounts(term);
+		}
+
+		@Override
+		public Set<String> termSet() {
+			return index.termSet();
+		}
+
+		@Override
+		public int numDocs() {
+			return index.numDocs();
+		}
+
+		@Override
+		public double averageDocLength() {
+			return index.averageDocLength();
+		}
+
+		@Override
+		public int docFrequency(String term) {
+			return index.docFrequency(term);
+		}
+
+		@Override
+		public Map<String, Integer> getCountsForAll(Collection<String> terms) {
+			if (!intersect) {
+				return null;
+			}
+			lookups.addAll(terms);
+			return index.getCountsForAll(terms);
+		}
+
+		@Override
+		public Set<String> containing(String term, Collection<String> urls) {
+			if (!probe) {
+				return null;
+			}
+			probes.add(term);
+			return index.containing(term, urls);
+		}
+
+		@Override
+		public MyObjectIntMap<String> docLengths(Collection<String> urls) {
+			return index.docLengths(urls);
+		}
+
+		@Override
+		public Map<String, Double> getScores(String term, Scorer scorer) {
+			return index.getScores(term, scorer);
+		}
+	}
+}
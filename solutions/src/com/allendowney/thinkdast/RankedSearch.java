@@ -0,0 +1,178 @@
+package com.allendowney.thinkdast;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Represents the results of a search query ranked by a Scorer.
+ *
+ * WikiSearch ranks pages by raw term frequency, which favors long pages
+ * and common words.  RankedSearch holds scores computed from term
+ * frequency, document frequency, and page length, as TF-IDF or BM25 do.
+ *
+ */
+public class RankedSearch {
+
+	// map from URLs that contain the term(s) to score
+	private Map<String, Double> map;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param map
+	 */
+	public RankedSearch(Map<String, Double> map) {
+		this.map = map;
+	}
+
+	/**
+	 * Looks up the score of a given URL.
+	 *
+	 * @param url
+	 * @return
+	 */
+	public double getScore(String url) {
+		Double score = map.get(url);
+		return score==null ? 0: score;
+	}
+
+	/**
+	 * Returns the number of URLs in the results.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Prints the contents in order of score.
+	 */
+	private void print() {
+		for (Entry<String, Double> entry: topK(map.size())) {
+			System.out.println(entry);
+		}
+	}
+
+	/**
+	 * Computes the union of two search results; scores are added.
+	 *
+	 * @param that
+	 * @return New RankedSearch object.
+	 */
+	public RankedSearch or(RankedSearch that) {
+		Map<String, Double> union = new HashMap<String, Double>(map);
+		for (String url: that.map.keySet()) {
+			union.put(url, this.getScore(url) + that.getScore(url));
+		}
+		return new RankedSearch(union);
+	}
+
+	/**
+	 * Computes the intersection of two search results; scores are added.
+	 *
+	 * @param that
+	 * @return New RankedSearch object.
+	 */
+	public RankedSearch and(RankedSearch that) {
+		Map<String, Double> intersection = new HashMap<String, Double>();
+		for (String url: map.keySet()) {
+			if (that.map.containsKey(url)) {
+				intersection.put(url, this.map.get(url) + that.map.get(url));
+			}
+		}
+		return new RankedSearch(intersection);
+	}
+
+	/**
+	 * Computes the difference of two search results.
+	 *
+	 * @param that
+	 * @return New RankedSearch object.
+	 */
+	public RankedSearch minus(RankedSearch that) {
+		Map<String, Double> difference = new HashMap<String, Double>(map);
+		for (String url: that.map.keySet()) {
+			difference.remove(url);
+		}
+		return new RankedSearch(difference);
+	}
+
+	/**
+	 * Returns the k results with the highest scores, best first.
+	 *
+	 * Works like WikiSearch.topK; ties are broken by URL.
+	 *
+	 * @param k
+	 * @return List of entries with URL and score, in descending order.
+	 */
+	public List<Entry<String, Double>> topK(int k) {
+		return TopK.select(map, k);
+	}
+
+	/**
+	 * Performs a search and makes a RankedSearch object.
+	 *
+	 * @param term
+	 * @param index
+	 * @param scorer
+	 * @return
+	 */
+	public static RankedSearch search(String term, ScoringIndex index, Scorer scorer) {
+		return new RankedSearch(index.getScores(term, scorer));
+	}
+
+	/**
+	 * Scores the pages that contain a term.
+	 *
+	 * The term weight is computed once; after that, each page costs one
+	 * length norm and one call to score.  Pages with no recorded length
+	 * are treated as average.
+	 *
+	 * @param counts         map from URL to term frequency
+	 * @param lengths        map from URL to page length
+	 * @param numDocs        number of pages in the index
+	 * @param averageLength  average page length
+	 * @param scorer
+	 * @return Map from URL to score.
+	 */
+	static Map<String, Double> score(Map<String, Integer> counts, MyObjectIntMap<String> lengths,
+			int numDocs, double averageLength, Scorer scorer) {
+		double weight = scorer.termWeight(counts.size(), numDocs);
+		double averageNorm = scorer.lengthNorm((int) Math.round(averageLength), averageLength);
+
+		Map<String, Double> map = new HashMap<String, Double>();
+		for (Entry<String, Integer> entry: counts.entrySet()) {
+			String url = entry.getKey();
+			double norm = lengths.containsKey(url) ?
+					scorer.lengthNorm(lengths.get(url), averageLength) : averageNorm;
+			map.put(url, scorer.score(weight, entry.getValue(), norm));
+		}
+		return map;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		// make a JedisIndex
+		JedisConnectionPool pool = JedisMaker.makePool();
+		JedisIndex index = new JedisIndex(pool);
+		Scorer scorer = new BM25Scorer();
+
+		String term1 = "java";
+		System.out.println("Query: " + term1);
+		RankedSearch search1 = search(term1, index, scorer);
+		search1.print();
+
+		String term2 = "programming";
+		System.out.println("Query: " + term2);
+		RankedSearch search2 = search(term2, index, scorer);
+		search2.print();
+
+		System.out.println("Query: " + term1 + " AND " + term2);
+		RankedSearch intersection = search1.and(search2);
+		intersection.print();
+	}
+}
@@ -0,0 +1,160 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.jsoup.select.Elements;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class RankedSearchTest {
+
+	private static final double EPSILON = 1e-9;
+
+	private RankedSearch search1;
+	private RankedSearch search2;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Map<String, Double> map1 = new HashMap<String, Double>();
+		map1.put("Page1", 1.0);
+		map1.put("Page2", 2.0);
+		map1.put("Page3", 3.0);
+		search1 = new RankedSearch(map1);
+
+		Map<String, Double> map2 = new HashMap<String, Double>();
+		map2.put("Page2", 4.0);
+		map2.put("Page3", 5.0);
+		map2.put("Page4", 7.5);
+		search2 = new RankedSearch(map2);
+	}
+
+	/**
+	 * Test method for {@link RankedSearch#or(RankedSearch)}.
+	 */
+	@Test
+	public void testOrAndMinus() {
+		RankedSearch search = search1.or(search2);
+		assertThat(search.getScore("Page2"), is(6.0));
+		assertThat(search.getScore("Page4"), is(7.5));
+
+		search = search1.and(search2);
+		assertThat(search.size(), is(2));
+		assertThat(search.getScore("Page3"), is(8.0));
+		assertThat(search.getScore("Page1"), is(0.0));
+
+		search = search1.minus(search2);
+		assertThat(search.size(), is(1));
+		assertThat(search.getScore("Page1"), is(1.0));
+	}
+
+	/**
+	 * Test method for {@link RankedSearch#topK(int)}.
+	 */
+	@Test
+	public void testTopK() {
+		List<Entry<String, Double>> list = search1.or(search2).topK(2);
+		assertThat(list.size(), is(2));
+		assertThat(list.get(0).getKey(), is("Page3"));
+		assertThat(list.get(1).getKey(), is("Page4"));
+	}
+
+	/**
+	 * Test method for {@link BM25Scorer}.
+	 */
+	@Test
+	public void testBM25Scorer() {
+		Scorer scorer = new BM25Scorer();
+
+		// rare terms weigh more than common ones
+		assertThat(scorer.termWeight(1, 100) > scorer.termWeight(50, 100), is(true));
+
+		// more occurrences help, but with diminishing returns
+		double norm = scorer.lengthNorm(100, 100);
+		assertEquals(1.2, norm, EPSILON);
+		double one = scorer.score(1.0, 1, norm);
+		double two = scorer.score(1.0, 2, norm);
+		double ten = scorer.score(1.0, 10, norm);
+		assertEquals(1.0, one, EPSILON);
+		assertThat(two > one && two < 2 * one, is(true));
+		assertThat(ten < 2.2, is(true));
+
+		// the same count means less in a longer page
+		assertThat(scorer.score(1.0, 2, scorer.lengthNorm(400, 100)) < two, is(true));
+	}
+
+	/**
+	 * Test method for {@link TfIdfScorer}.
+	 */
+	@Test
+	public void testTfIdfScorer() {
+		Scorer scorer = new TfIdfScorer();
+		assertEquals(Math.log(3), scorer.termWeight(1, 2), EPSILON);
+		assertEquals(0.0, scorer.termWeight(0, 2), EPSILON);
+		assertEquals(2.0, scorer.score(2.0, 1, scorer.lengthNorm(10, 100)), EPSILON);
+		assertEquals(2.0 * (1 + Math.log(3)), scorer.score(2.0, 3, 1.0), EPSILON);
+	}
+
+	/**
+	 * Test method for {@link RankedSearch#search(String, ScoringIndex, Scorer)}.
+	 *
+	 * LocalIndex uses cached length norms and Index computes them on the
+	 * fly; they should agree.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSearch() throws IOException {
+		LocalIndex local = new LocalIndex();
+		Index index = new Index();
+		WikiFetcher wf = new WikiFetcher();
+		String url1 = "https://en.wikipedia.org/wiki/Java_(programming_language)";
+		String url2 = "https://en.wikipedia.org/wiki/Programming_language";
+		for (String url: new String[] {url1, url2}) {
+			Elements paragraphs = wf.readWikipedia(url);
+			local.indexPage(url, paragraphs);
+			index.indexPage(url, paragraphs);
+		}
+		assertThat(local.numDocs(), is(2));
+		assertThat(index.numDocs(), is(2));
+		assertEquals(local.averageDocLength(), index.averageDocLength(), EPSILON);
+		assertThat(local.docFrequency("the"), is(2));
+		assertThat(index.docFrequency("the"), is(2));
+
+		for (Scorer scorer: new Scorer[] {new BM25Scorer(), new TfIdfScorer()}) {
+			for (String term: new String[] {"the", "java", "occur"}) {
+				RankedSearch a = RankedSearch.search(term, local, scorer);
+				RankedSearch b = RankedSearch.search(term, index, scorer);
+				assertThat(a.size(), is(b.size()));
+				assertEquals(a.getScore(url1), b.getScore(url1), EPSILON);
+				assertEquals(a.getScore(url2), b.getScore(url2), EPSILON);
+			}
+		}
+
+		// java is more frequent on the Java page
+		RankedSearch search = RankedSearch.search("java", local, new BM25Scorer());
+		assertThat(search.topK(1).get(0).getKey(), is(url1));
+
+		// reindexing a page updates the statistics
+		TermCounter tc = new TermCounter(url1);
+		tc.put("java", 5);
+		local.addTermCounter(tc);
+		assertEquals((5 + index.docLengths(Collections.singleton(url2)).get(url2)) / 2.0,
+				local.averageDocLength(), EPSILON);
+		assertThat(local.docFrequency("the"), is(1));
+	}
+}
@@ -0,0 +1,47 @@
+package com.allendowney.thinkdast;
+
+/**
+ * Computes the relevance of a document to a search term.
+ *
+ * Scoring is split into three steps so that the parts that do not
+ * depend on both the term and the document can be computed once:
+ * the weight of a term depends only on how many documents contain it,
+ * and the length norm of a document depends only on its length.
+ *
+ * Implementations should not give a higher score for a smaller tf or a
+ * larger length norm; pruned searches like LocalIndex.topK rely on this
+ * to bound the score a term can contribute.
+ *
+ * @author downey
+ *
+ */
+public interface Scorer {
+
+	/**
+	 * Returns the weight of a term, which is higher for rare terms.
+	 *
+	 * @param df       number of documents that contain the term
+	 * @param numDocs  number of documents in the index
+	 * @return
+	 */
+	public double termWeight(int df, int numDocs);
+
+	/**
+	 * Returns the length norm of a document.
+	 *
+	 * @param docLength      number of terms in the document
+	 * @param averageLength  average number of terms per document
+	 * @return
+	 */
+	public double lengthNorm(int docLength, double averageLength);
+
+	/**
+	 * Returns the contribution of one term to the score of a document.
+	 *
+	 * @param termWeight  from termWeight
+	 * @param tf          number of times the term appears in the document
+	 * @param lengthNorm  from lengthNorm
+	 * @return
+	 */
+	public double score(double termWeight, int tf, double lengthNorm);
+}
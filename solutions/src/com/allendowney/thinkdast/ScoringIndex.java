@@ -0,0 +1,54 @@
+package com.allendowney.thinkdast;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An index that keeps the statistics needed to rank pages with a Scorer.
+ *
+ * @author downey
+ *
+ */
+public interface ScoringIndex extends SearchIndex {
+
+	/**
+	 * Returns the number of pages in the index.
+	 *
+	 * @return
+	 */
+	public int numDocs();
+
+	/**
+	 * Returns the average number of terms per page.
+	 *
+	 * @return
+	 */
+	public double averageDocLength();
+
+	/**
+	 * Returns the number of pages that contain a term; unlike
+	 * SearchIndex.docFrequency, never -1.
+	 *
+	 * @param term
+	 * @return
+	 */
+	@Override
+	public int docFrequency(String term);
+
+	/**
+	 * Looks up the number of terms on each of the given pages.
+	 *
+	 * @param urls
+	 * @return Map from URL to length, with no entries for unknown URLs.
+	 */
+	public MyObjectIntMap<String> docLengths(Collection<String> urls);
+
+	/**
+	 * Looks up a term and returns a map from URL to score.
+	 *
+	 * @param term
+	 * @param scorer
+	 * @return
+	 */
+	public Map<String, Double> getScores(String term, Scorer scorer);
+}
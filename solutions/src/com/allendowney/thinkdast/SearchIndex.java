@@ -0,0 +1,87 @@
+package com.allendowney.thinkdast;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.select.Elements;
+
+/**
+ * Operations the crawler and the search need from an index of pages.
+ *
+ * JedisIndex keeps the index in Redis; LocalIndex keeps it in memory.
+ *
+ * @author downey
+ *
+ */
+public interface SearchIndex {
+
+	/**
+	 * Add a page to the index.
+	 *
+	 * @param url         URL of the page.
+	 * @param paragraphs  Collection of elements that should be indexed.
+	 */
+	public void indexPage(String url, Elements paragraphs);
+
+	/**
+	 * Checks whether a given URL has been indexed.
+	 *
+	 * @param url
+	 * @return
+	 */
+	public boolean isIndexed(String url);
+
+	/**
+	 * Looks up a search term and returns a set of URLs.
+	 *
+	 * @param term
+	 * @return Set of URLs.
+	 */
+	public Set<String> getURLs(String term);
+
+	/**
+	 * Looks up a term and returns a map from URL to count.
+	 *
+	 * @param term
+	 * @return Map from URL to count.
+	 */
+	public Map<String, Integer> getCounts(String term);
+
+	/**
+	 * Returns the set of terms that have been indexed.
+	 *
+	 * @return
+	 */
+	public Set<String> termSet();
+
+	/**
+	 * Returns the number of pages that contain a term, or an upper bound
+	 * on it, if the index can tell without looking the term up.
+	 *
+	 * @param term
+	 * @return Number of pages, or -1 if the term has to be looked up.
+	 */
+	public int docFrequency(String term);
+
+	/**
+	 * Looks up several terms and returns the pages that contain all of
+	 * them, with the total count of the terms on each page, if the index
+	 * can do that faster than looking up each term.
+	 *
+	 * @param terms
+	 * @return Map from URL to total count, or null if the terms have to
+	 *         be looked up one at a time.
+	 */
+	public Map<String, Integer> getCountsForAll(Collection<String> terms);
+
+	/**
+	 * Returns the pages among the given ones that contain a term, if the
+	 * index can check a few pages without looking the term up.
+	 *
+	 * @param term
+	 * @param urls
+	 * @return Set of URLs, or null if the term has to be looked up.
+	 */
+	public Set<String> containing(String term, Collection<String> urls);
+}
@@ -1,8 +1,6 @@
 package com.allendowney.thinkdast;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 
 import org.jsoup.nodes.Node;
@@ -18,12 +16,22 @@ import org.jsoup.select.Elements;
  */
 public class TermCounter {
 
-	private Map<String, Integer> map;
+	// counts are primitive ints, so counting a term does not box
+	private MyObjectIntMap<String> map;
 	private String label;
 
+	// splits text into terms and counts them without building Strings
+	private TermTokenizer tokenizer = new TermTokenizer();
+	private TermTokenizer.Sink sink = new TermTokenizer.Sink() {
+		@Override
+		public void term(char[] chars, int offset, int length) {
+			map.incrementChars(chars, offset, length, 1);
+		}
+	};
+
 	public TermCounter(String label) {
 		this.label = label;
-		this.map = new HashMap<String, Integer>();
+		this.map = new MyObjectIntMap<String>();
 	}
 
 	public String getLabel() {
@@ -36,11 +44,7 @@ public class TermCounter {
 	 * @return
 	 */
 	public int size() {
-		int total = 0;
-		for (Integer value: map.values()) {
-			total += value;
-		}
-		return total;
+		return map.sum();
 	}
 
 	/**
@@ -75,15 +79,10 @@ public class TermCounter {
 	 * @param text  The text to process.
 	 */
 	public void processText(String text) {
-		// replace punctuation with spaces, convert to lower case, and split on whitespace
-		String[] array = text.replaceAll("\\pP", " ").
-				              toLowerCase().
-				              split("\\s+");
-		
-		for (int i=0; i<array.length; i++) {
-			String term = array[i];
-			incrementTermCount(term);
-		}
+		// replace punctuation with spaces, convert to lower case, and split on whitespace;
+		// TermTokenizer does this in one pass, equivalent to
+		// text.replaceAll("\\pP", " ").toLowerCase().split("\\s+")
+		tokenizer.tokenize(text, sink);
 	}
 
 	/**
@@ -93,7 +92,7 @@ public class TermCounter {
 	 */
 	public void incrementTermCount(String term) {
 		// System.out.println(term);
-		put(term, get(term) + 1);
+		map.increment(term, 1);
 	}
 
 	/**
@@ -112,9 +111,18 @@ public class TermCounter {
 	 * @param term
 	 * @return
 	 */
-	public Integer get(String term) {
-		Integer count = map.get(term);
-		return count == null ? 0 : count;
+	public int get(String term) {
+		return map.get(term);
+	}
+
+	/**
+	 * Checks whether this term has been counted.
+	 *
+	 * @param term
+	 * @return
+	 */
+	public boolean containsKey(String term) {
+		return map.containsKey(term);
 	}
 
 	/**
@@ -131,7 +139,7 @@ public class TermCounter {
 	 */
 	public void printCounts() {
 		for (String key: keySet()) {
-			Integer count = get(key);
+			int count = get(key);
 			System.out.println(key + ", " + count);
 		}
 		System.out.println("Total of all counts = " + size());
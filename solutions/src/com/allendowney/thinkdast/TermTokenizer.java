@@ -0,0 +1,162 @@
+package com.allendowney.thinkdast;
+
+import java.util.Locale;
+
+/**
+ * Splits text into lower case terms without regular expressions.
+ *
+ * Produces the same terms as
+ *
+ *     text.replaceAll("\\pP", " ").toLowerCase().split("\\s+")
+ *
+ * but scans the characters once and hands each term to a Sink as a slice
+ * of a reusable buffer, so no intermediate Strings or arrays are built.
+ * A TermTokenizer is not thread-safe.
+ *
+ * @author downey
+ *
+ */
+public class TermTokenizer {
+
+	/**
+	 * Sink receives each term as a slice of a char array.  The array is
+	 * reused, so the slice is only valid during the call.
+	 */
+	public interface Sink {
+		public void term(char[] chars, int offset, int length);
+	}
+
+	// in these locales even ASCII letters have special lower case rules
+	private static final boolean ASCII_FAST_PATH;
+	static {
+		String language = Locale.getDefault().getLanguage();
+		ASCII_FAST_PATH = !(language.equals("tr") || language.equals("az") || language.equals("lt"));
+	}
+
+	private char[] buffer = new char[64];
+
+	/**
+	 * Returns true if `c` is matched by \s, which without the
+	 * UNICODE_CHARACTER_CLASS flag is only ASCII whitespace.
+	 *
+	 * @param c
+	 * @return
+	 */
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Returns true if `c` is matched by \pP, the Unicode punctuation categories.
+	 *
+	 * @param c
+	 * @return
+	 */
+	private static boolean isPunctuation(int c) {
+		switch (Character.getType(c)) {
+		case Character.CONNECTOR_PUNCTUATION:
+		case Character.DASH_PUNCTUATION:
+		case Character.START_PUNCTUATION:
+		case Character.END_PUNCTUATION:
+		case Character.INITIAL_QUOTE_PUNCTUATION:
+		case Character.FINAL_QUOTE_PUNCTUATION:
+		case Character.OTHER_PUNCTUATION:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Splits `text` into terms and passes each one to `sink`.
+	 *
+	 * @param text
+	 * @param sink
+	 */
+	public void tokenize(String text, Sink sink) {
+		int n = text.length();
+
+		// split returns a single empty term for empty input
+		if (n == 0) {
+			sink.term(buffer, 0, 0);
+			return;
+		}
+
+		// split keeps a leading empty term if the text starts with a
+		// separator, but only if at least one real term follows
+		boolean leadingEmpty = false;
+		int i = 0;
+		while (i < n) {
+			int c = text.codePointAt(i);
+			int next = i + Character.charCount(c);
+			if (isSpace(c) || isPunctuation(c)) {
+				if (i == 0) {
+					leadingEmpty = true;
+				}
+				i = next;
+				continue;
+			}
+
+			// find the end of the term
+			int start = i;
+			boolean ascii = true;
+			while (i < n) {
+				c = text.codePointAt(i);
+				if (isSpace(c) || isPunctuation(c)) {
+					break;
+				}
+				if (c >= 0x80) {
+					ascii = false;
+				}
+				i += Character.charCount(c);
+			}
+
+			if (leadingEmpty) {
+				sink.term(buffer, 0, 0);
+				leadingEmpty = false;
+			}
+			if (ascii && ASCII_FAST_PATH) {
+				emitAscii(text, start, i, sink);
+			} else {
+				// rare: let String handle context-sensitive rules like final sigma
+				String term = text.substring(start, i).toLowerCase();
+				ensureCapacity(term.length());
+				term.getChars(0, term.length(), buffer, 0);
+				sink.term(buffer, 0, term.length());
+			}
+		}
+	}
+
+	/**
+	 * Lower cases the ASCII characters text[start:end] into the buffer
+	 * and passes them to `sink`.
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param sink
+	 */
+	private void emitAscii(String text, int start, int end, Sink sink) {
+		int length = end - start;
+		ensureCapacity(length);
+		for (int j=0; j<length; j++) {
+			char c = text.charAt(start + j);
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			buffer[j] = c;
+		}
+		sink.term(buffer, 0, length);
+	}
+
+	/**
+	 * Grows the buffer so it can hold at least `length` chars.
+	 *
+	 * @param length
+	 */
+	private void ensureCapacity(int length) {
+		if (buffer.length < length) {
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		}
+	}
+}
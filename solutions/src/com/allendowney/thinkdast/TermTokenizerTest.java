@@ -0,0 +1,93 @@
+/**
+ * 
+ */
+package com.allendowney.thinkdast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+/**
+ * @author downey
+ *
+ */
+public class TermTokenizerTest {
+
+	private TermTokenizer tokenizer = new TermTokenizer();
+
+	/**
+	 * Splits `text` the way TermCounter used to.
+	 */
+	private static List<String> expected(String text) {
+		return Arrays.asList(text.replaceAll("\\pP", " ").toLowerCase().split("\\s+"));
+	}
+
+	/**
+	 * Collects the terms TermTokenizer produces.
+	 */
+	private List<String> actual(String text) {
+		final List<String> terms = new ArrayList<String>();
+		tokenizer.tokenize(text, new TermTokenizer.Sink() {
+			@Override
+			public void term(char[] chars, int offset, int length) {
+				terms.add(new String(chars, offset, length));
+			}
+		});
+		return terms;
+	}
+
+	/**
+	 * Test method for {@link TermTokenizer#tokenize} on edge cases.
+	 */
+	@Test
+	public void testEdgeCases() {
+		String[] texts = {
+			"", " ", "...", " leading space", "trailing space ", "(parens) and, commas.",
+			"Hello\u00a0World", "tabs\tand\nnewlines", "\u039f\u0394\u039f\u03a3 \u03a3", "\u0130stanbul", "na\u00efve caf\u00e9",
+			"\ud801\udc00 deseret", "a\u2014b \u201cquoted\u201d", "under_score",
+		};
+		for (String text: texts) {
+			assertThat(text, actual(text), is(expected(text)));
+		}
+	}
+
+	/**
+	 * Compares TermTokenizer with the regex version on every text node
+	 * of every page in src/resources.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testGolden() throws IOException {
+		URL dir = TermTokenizerTest.class.getClassLoader().getResource("resources/en.wikipedia.org/wiki");
+		String[] names = new File(dir.getFile()).list();
+		assertThat(names.length > 0, is(true));
+
+		WikiFetcher wf = new WikiFetcher();
+		int count = 0;
+		for (String name: names) {
+			Elements paragraphs = wf.readWikipedia("https://en.wikipedia.org/wiki/" + name);
+			for (Node root: paragraphs) {
+				for (Node node: new WikiNodeIterable(root)) {
+					if (node instanceof TextNode) {
+						String text = ((TextNode) node).text();
+						assertThat(text, actual(text), is(expected(text)));
+						count++;
+					}
+				}
+			}
+		}
+		assertThat(count > 0, is(true));
+	}
+}
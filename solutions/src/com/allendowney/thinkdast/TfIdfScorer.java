@@ -0,0 +1,35 @@
+package com.allendowney.thinkdast;
+
+/**
+ * Scores documents by term frequency times inverse document frequency.
+ *
+ * The term frequency is damped logarithmically, so a page that uses a
+ * term 100 times is not 100 times as relevant as a page that uses it
+ * once.  Document length is ignored.
+ *
+ * @author downey
+ *
+ */
+public class TfIdfScorer implements Scorer {
+
+	@Override
+	public double termWeight(int df, int numDocs) {
+		if (df == 0) {
+			return 0;
+		}
+		return Math.log(1.0 + (double) numDocs / df);
+	}
+
+	@Override
+	public double lengthNorm(int docLength, double averageLength) {
+		return 1.0;
+	}
+
+	@Override
+	public double score(double termWeight, int tf, double lengthNorm) {
+		if (tf <= 0) {
+			return 0;
+		}
+		return termWeight * (1.0 + Math.log(tf));
+	}
+}
@@ -0,0 +1,102 @@
+package com.allendowney.thinkdast;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k entries with the highest values seen so far.
+ *
+ * The entries are kept in a min-heap, so the root is the lowest of the
+ * best k; offering n entries takes time proportional to n log k and
+ * space proportional to k.  Ties are broken by key, so the smaller URL
+ * ranks higher and the results don't depend on the order of a HashMap.
+ *
+ * @author downey
+ *
+ */
+class TopK<V extends Comparable<? super V>> {
+
+	private final int k;
+	private final PriorityQueue<Entry<String, V>> heap;
+
+	// orders entries from least to most relevant
+	private final Comparator<Entry<String, V>> comparator = new Comparator<Entry<String, V>>() {
+		@Override
+		public int compare(Entry<String, V> e1, Entry<String, V> e2) {
+			int cmp = e1.getValue().compareTo(e2.getValue());
+			return cmp != 0 ? cmp : e2.getKey().compareTo(e1.getKey());
+		}
+	};
+
+	/**
+	 * @param k         number of entries to keep; must be positive
+	 * @param expected  number of entries that will be offered, or more
+	 */
+	TopK(int k, int expected) {
+		this.k = k;
+		this.heap = new PriorityQueue<Entry<String, V>>(Math.min(k, Math.max(expected, 1)), comparator);
+	}
+
+	/**
+	 * Adds an entry if it is among the best k so far.
+	 *
+	 * @param entry
+	 */
+	void offer(Entry<String, V> entry) {
+		if (heap.size() < k) {
+			heap.offer(entry);
+		} else if (comparator.compare(entry, heap.peek()) > 0) {
+			heap.poll();
+			heap.offer(entry);
+		}
+	}
+
+	void offer(String key, V value) {
+		offer(new SimpleEntry<String, V>(key, value));
+	}
+
+	/**
+	 * Returns the lowest value an entry needs to get in, or null if
+	 * there are fewer than k entries.
+	 */
+	V threshold() {
+		return heap.size() < k ? null : heap.peek().getValue();
+	}
+
+	/**
+	 * Returns the entries, best first.
+	 */
+	List<Entry<String, V>> toList() {
+		// the heap gives up the least relevant first
+		List<Entry<String, V>> res = new ArrayList<Entry<String, V>>(heap.size());
+		while (!heap.isEmpty()) {
+			res.add(heap.poll());
+		}
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * Returns the k entries of a map with the highest values, best first.
+	 *
+	 * @param map
+	 * @param k
+	 * @return
+	 */
+	static <V extends Comparable<? super V>> List<Entry<String, V>> select(Map<String, V> map, int k) {
+		if (k <= 0) {
+			return new ArrayList<Entry<String, V>>();
+		}
+		TopK<V> top = new TopK<V>(k, map.size());
+		for (Entry<String, V> entry: map.entrySet()) {
+			top.offer(entry);
+		}
+		return top.toList();
+	}
+}
@@ -1,7 +1,10 @@
 package com.allendowney.thinkdast;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -9,8 +12,6 @@ import java.util.Queue;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import redis.clients.jedis.Jedis;
-
 
 public class WikiCrawler {
 	// keeps track of where we started
@@ -18,10 +19,20 @@ public class WikiCrawler {
 	private final String source;
 
 	// the index where the results go
-	private JedisIndex index;
+	private SearchIndex index;
 
 	// queue of URLs to be indexed
-	private Queue<String> queue = new LinkedList<String>();
+	private final Queue<String> queue;
+
+	// URLs that have been queued; if null, duplicates are queued too
+	private BloomFilter seen;
+
+	// the queue, if it can be checkpointed, how often to do it, and where
+	// the seen filter goes when it is
+	private final DiskFrontier frontier;
+	private int checkpointPages = 100;
+	private File seenFile;
+	private int sinceCheckpoint = 0;
 
 	// fetcher used to get pages from Wikipedia
 	final static WikiFetcher wf = new WikiFetcher();
@@ -32,10 +43,79 @@ public class WikiCrawler {
 	 * @param source
 	 * @param index
 	 */
-	public WikiCrawler(String source, JedisIndex index) {
+	public WikiCrawler(String source, SearchIndex index) {
+		this(source, index, new LinkedList<String>());
+	}
+
+	/**
+	 * Constructor with a given queue, like a DiskFrontier.
+	 *
+	 * If the queue is not empty, the crawl resumes where it left off, and
+	 * source is not added.
+	 *
+	 * @param source
+	 * @param index
+	 * @param queue
+	 */
+	public WikiCrawler(String source, SearchIndex index, Queue<String> queue) {
 		this.source = source;
 		this.index = index;
-		queue.offer(source);
+		this.queue = queue;
+		this.frontier = queue instanceof DiskFrontier ? (DiskFrontier) queue : null;
+		if (queue.isEmpty()) {
+			queue.offer(source);
+		}
+	}
+
+	/**
+	 * Makes the crawler queue each URL at most once.
+	 *
+	 * URLs that are already in the queue stay there; the filter is
+	 * consulted for the URLs queued after this call.
+	 *
+	 * @param seen  filter of URLs that have been queued, maybe loaded from
+	 *              an earlier crawl
+	 */
+	public void setSeenFilter(BloomFilter seen) {
+		this.seen = seen;
+		for (String url: queue) {
+			seen.add(url);
+		}
+	}
+
+	/**
+	 * Sets how often a DiskFrontier queue is checkpointed, and where the
+	 * seen filter is saved when it is.
+	 *
+	 * By default the queue is checkpointed every 100 pages, and the
+	 * filter is not saved.
+	 *
+	 * @param pages     number of pages crawled between checkpoints, or 0
+	 *                  not to checkpoint
+	 * @param seenFile  where to save the seen filter, or null not to
+	 */
+	public void setCheckpoint(int pages, File seenFile) {
+		this.checkpointPages = pages;
+		this.seenFile = seenFile;
+	}
+
+	/**
+	 * Checkpoints the queue, if it is a DiskFrontier, then saves the seen
+	 * filter, if there is a file for it.
+	 *
+	 * The filter goes second, so after a crash it never knows about URLs
+	 * the queue has forgotten.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException {
+		if (frontier != null) {
+			frontier.checkpoint();
+		}
+		if (seen != null && seenFile != null) {
+			seen.save(seenFile);
+		}
+		sinceCheckpoint = 0;
 	}
 
 	/**
@@ -73,7 +153,11 @@ public class WikiCrawler {
 			paragraphs = wf.fetchWikipedia(url);
 		}
 		index.indexPage(url, paragraphs);
-		queueInternalLinks(paragraphs);		
+		queueInternalLinks(paragraphs);
+
+		if (frontier != null && checkpointPages > 0 && ++sinceCheckpoint >= checkpointPages) {
+			checkpoint();
+		}
 		return url;
 	}
 
@@ -84,33 +168,40 @@ public class WikiCrawler {
 	 */
 	// NOTE: absence of access level modifier means package-level
 	void queueInternalLinks(Elements paragraphs) {
-		for (Element paragraph: paragraphs) {
-			queueInternalLinks(paragraph);
+		for (String absURL: internalLinks(paragraphs)) {
+			if (seen == null || seen.add(absURL)) {
+				queue.offer(absURL);
+			}
 		}
 	}
 
 	/**
-	 * Parses a paragraph and adds internal links to the queue.
-	 * 
-	 * @param paragraph
+	 * Parses paragraphs and returns the internal links, in order.
+	 *
+	 * @param paragraphs
+	 * @return List of absolute URLs.
 	 */
-	private void queueInternalLinks(Element paragraph) {
-		Elements elts = paragraph.select("a[href]");
-		for (Element elt: elts) {
-			String relURL = elt.attr("href");
-			
-			if (relURL.startsWith("/wiki/")) {
-				String absURL = "https://en.wikipedia.org" + relURL;
-				//System.out.println(absURL);
-				queue.offer(absURL);
+	static List<String> internalLinks(Elements paragraphs) {
+		List<String> links = new ArrayList<String>();
+		for (Element paragraph: paragraphs) {
+			Elements elts = paragraph.select("a[href]");
+			for (Element elt: elts) {
+				String relURL = elt.attr("href");
+
+				if (relURL.startsWith("/wiki/")) {
+					String absURL = "https://en.wikipedia.org" + relURL;
+					//System.out.println(absURL);
+					links.add(absURL);
+				}
 			}
 		}
+		return links;
 	}
 	
 	public static void main(String[] args) throws IOException {
 		// make a WikiCrawler
-		Jedis jedis = JedisMaker.make();
-		JedisIndex index = new JedisIndex(jedis);
+		JedisConnectionPool pool = JedisMaker.makePool();
+		JedisIndex index = new JedisIndex(pool);
 		String source = "https://en.wikipedia.org/wiki/Java_(programming_language)";
 		WikiCrawler wc = new WikiCrawler(source, index);
 		
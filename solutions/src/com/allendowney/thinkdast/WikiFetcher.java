@@ -1,11 +1,19 @@
 package com.allendowney.thinkdast;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -13,26 +21,222 @@ import org.jsoup.select.Elements;
 
 
 public class WikiFetcher {
-	private long lastRequestTime = -1;
-	private long minInterval = 1000;
+	// limits the rate of requests to each host
+	private final HostScheduler scheduler;
+
+	// if not null, downloaded pages are kept here, and reused for ttl ms
+	private volatile PageCache cache;
+	private volatile long ttl;
+
+	// map from URL to parsed paragraphs, least recently used first
+	private Map<String, Parsed> parsed;
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	/**
+	 * The paragraphs of a cached page.
+	 */
+	private static class Parsed {
+		private final String hash;
+		private final long checked;
+		private final Elements paragraphs;
+
+		private Parsed(String hash, long checked, Elements paragraphs) {
+			this.hash = hash;
+			this.checked = checked;
+			this.paragraphs = paragraphs;
+		}
+	}
+
+	/**
+	 * Makes a fetcher that makes at most one request per second to each host.
+	 */
+	public WikiFetcher() {
+		this(new HostScheduler());
+	}
+
+	/**
+	 * Makes a fetcher that uses the given scheduler, which can be shared
+	 * with other fetchers.
+	 *
+	 * @param scheduler
+	 */
+	public WikiFetcher(HostScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Returns the scheduler, to set rates or read its metrics.
+	 *
+	 * @return
+	 */
+	public HostScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Makes fetchWikipedia keep the pages it downloads.
+	 *
+	 * A page that was downloaded or checked less than ttl milliseconds
+	 * ago is used as it is.  An older page is checked with a conditional
+	 * request, using its ETag and Last-Modified headers, so it is only
+	 * downloaded again if it has changed.  The paragraphs of the most
+	 * recently used pages are also kept in memory, so they are not parsed
+	 * again; each caller gets its own copy, since jsoup nodes are mutable
+	 * and not thread-safe.
+	 *
+	 * @param cache      where the pages go
+	 * @param ttl        milliseconds
+	 * @param maxParsed  number of parsed pages to keep in memory
+	 */
+	public void setCache(PageCache cache, long ttl, final int maxParsed) {
+		Map<String, Parsed> map = new LinkedHashMap<String, Parsed>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Parsed> eldest) {
+				return size() > maxParsed;
+			}
+		};
+		synchronized (this) {
+			this.parsed = map;
+		}
+		this.ttl = ttl;
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the number of requests sent to servers by fetchWikipedia.
+	 *
+	 * @return
+	 */
+	public int getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Returns the number of requests that found the cached page was current.
+	 *
+	 * @return
+	 */
+	public int getNotModifiedCount() {
+		return notModified.get();
+	}
 
 	/**
 	 * Fetches and parses a URL string, returning a list of paragraph elements.
 	 *
+	 * Waits if the host of the URL has been sent too many requests.  Can
+	 * be called from several threads.
+	 *
 	 * @param url
 	 * @return
 	 * @throws IOException
 	 */
 	public Elements fetchWikipedia(String url) throws IOException {
-		sleepIfNeeded();
+		PageCache cache = this.cache;
+		if (cache != null) {
+			return fetchCached(url, cache);
+		}
+		waitForHost(url);
+		requests.incrementAndGet();
+		return download(url);
+	}
+
+	/**
+	 * Fetches a page, using the cache when it can.
+	 */
+	private Elements fetchCached(String url, PageCache cache) throws IOException {
+		long now = System.currentTimeMillis();
+		Parsed hit = getParsed(url);
+		if (hit != null && now - hit.checked < ttl) {
+			return hit.paragraphs.clone();
+		}
+		PageCache.Entry entry = cache.get(url);
+		if (entry != null && now - entry.getChecked() < ttl) {
+			return paragraphs(entry, null);
+		}
+
+		waitForHost(url);
+		Connection conn = Jsoup.connect(url).ignoreHttpErrors(true).maxBodySize(0);
+		if (entry != null) {
+			if (entry.getEtag() != null) {
+				conn.header("If-None-Match", entry.getEtag());
+			}
+			if (entry.getLastModified() != null) {
+				conn.header("If-Modified-Since", entry.getLastModified());
+			}
+		}
+		requests.incrementAndGet();
+		Connection.Response res = conn.execute();
+		int status = res.statusCode();
+		if (status == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+			notModified.incrementAndGet();
+			entry = cache.touch(entry, res.header("ETag"), res.header("Last-Modified"));
+			return paragraphs(entry, null);
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			throw new HttpStatusException("HTTP error fetching URL", status, url);
+		}
+		byte[] html = res.bodyAsBytes();
+		entry = cache.put(url, html, res.header("ETag"), res.header("Last-Modified"));
+		return paragraphs(entry, html);
+	}
 
+	/**
+	 * Returns a copy of the paragraphs of a cached page, parsing it if
+	 * necessary.
+	 *
+	 * @param entry
+	 * @param html   contents of the page, or null to read them from the cache
+	 */
+	private Elements paragraphs(PageCache.Entry entry, byte[] html) throws IOException {
+		String url = entry.getUrl();
+		Parsed hit = getParsed(url);
+		Elements paragraphs;
+		if (hit != null && hit.hash.equals(entry.getHash())) {
+			paragraphs = hit.paragraphs;
+		} else {
+			if (html == null) {
+				html = cache.read(entry);
+			}
+			paragraphs = paragraphs(Jsoup.parse(new ByteArrayInputStream(html), null, url));
+		}
+		synchronized (this) {
+			parsed.put(url, new Parsed(entry.getHash(), entry.getChecked(), paragraphs));
+		}
+		return paragraphs.clone();
+	}
+
+	private synchronized Parsed getParsed(String url) {
+		return parsed.get(url);
+	}
+
+	/**
+	 * Fetches and parses a URL string without rate limiting.
+	 *
+	 * Does not use any state of the WikiFetcher, so it is safe to call
+	 * from several threads; callers are responsible for politeness.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	Elements download(String url) throws IOException {
 		// download and parse the document
 		Connection conn = Jsoup.connect(url);
 		Document doc = conn.get();
+		return paragraphs(doc);
+	}
 
-		// select the content text and pull out the paragraphs.
+	/**
+	 * Selects the content text of a page and pulls out the paragraphs.
+	 *
+	 * @param doc
+	 * @return
+	 */
+	private static Elements paragraphs(Document doc) {
 		Element content = doc.getElementById("mw-content-text");
-		
+
 		// TODO: avoid selecting paragraphs from sidebars and boxouts
 		Elements paras = content.select("p");
 		return paras;
@@ -54,32 +258,27 @@ public class WikiFetcher {
 
 		// read the file
 		InputStream stream = WikiFetcher.class.getClassLoader().getResourceAsStream(filename);
+		if (stream == null) {
+			throw new FileNotFoundException(filename);
+		}
 		Document doc = Jsoup.parse(stream, "UTF-8", filename);
 
 		// parse the contents of the file
-		// TODO: factor out the following repeated code
-		Element content = doc.getElementById("mw-content-text");
-		Elements paras = content.select("p");
-		return paras;
+		return paragraphs(doc);
 	}
 
 	/**
-	 * Rate limits by waiting at least the minimum interval between requests.
+	 * Rate limits by waiting for a token from the host of the URL.
 	 */
-	private void sleepIfNeeded() {
-		if (lastRequestTime != -1) {
-			long currentTime = System.currentTimeMillis();
-			long nextRequestTime = lastRequestTime + minInterval;
-			if (currentTime < nextRequestTime) {
-				try {
-					//System.out.println("Sleeping until " + nextRequestTime);
-					Thread.sleep(nextRequestTime - currentTime);
-				} catch (InterruptedException e) {
-					System.err.println("Warning: sleep interrupted in fetchWikipedia.");
-				}
-			}
+	private void waitForHost(String url) throws IOException {
+		try {
+			scheduler.acquire(url);
+		} catch (IllegalArgumentException e) {
+			throw new MalformedURLException(url);
+		} catch (InterruptedException e) {
+			System.err.println("Warning: sleep interrupted in fetchWikipedia.");
+			Thread.currentThread().interrupt();
 		}
-		lastRequestTime = System.currentTimeMillis();
 	}
 
 	/**
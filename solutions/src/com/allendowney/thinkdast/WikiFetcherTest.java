@@ -0,0 +1,159 @@
+package com.allendowney.thinkdast;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.select.Elements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the page cache of WikiFetcher against a local HTTP server.
+ *
+ * @author downey
+ *
+ */
+public class WikiFetcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private String url;
+	private WikiFetcher wf;
+
+	// what the server sends, and how often it sent the whole page
+	private volatile String body;
+	private volatile String etag;
+	private final AtomicInteger downloads = new AtomicInteger();
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		setPage("coffee", "\"v1\"");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/wiki/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String match = exchange.getRequestHeaders().getFirst("If-None-Match");
+				exchange.getResponseHeaders().set("ETag", etag);
+				if (etag.equals(match)) {
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(bytes);
+					downloads.incrementAndGet();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/wiki/Java";
+
+		wf = new WikiFetcher(new HostScheduler(Double.POSITIVE_INFINITY, 1));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private void setPage(String word, String etag) {
+		this.body = "<html><body><div id=\"mw-content-text\"><p>Java is " + word +
+				".</p><p>See <a href=\"/wiki/Island\">Java</a>.</p></div></body></html>";
+		this.etag = etag;
+	}
+
+	/**
+	 * Checks that fresh pages are not fetched again.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTtl() throws IOException {
+		wf.setCache(new PageCache(folder.getRoot()), 60000, 10);
+		Elements paragraphs = wf.fetchWikipedia(url);
+		assertThat(paragraphs.size(), is(2));
+		assertThat(paragraphs.get(0).text(), is("Java is coffee."));
+		assertThat(paragraphs.get(1).select("a").attr("abs:href").endsWith("/wiki/Island"), is(true));
+
+		// from memory, as a copy that the caller can change
+		paragraphs.get(0).text("changed");
+		Elements again = wf.fetchWikipedia(url);
+		assertThat(again, is(not(sameInstance(paragraphs))));
+		assertThat(again.get(0).text(), is("Java is coffee."));
+
+		// then from disk with a new fetcher
+		WikiFetcher other = new WikiFetcher(new HostScheduler(Double.POSITIVE_INFINITY, 1));
+		other.setCache(new PageCache(folder.getRoot()), 60000, 10);
+		assertThat(other.fetchWikipedia(url).get(0).text(), is("Java is coffee."));
+
+		assertThat(wf.getRequestCount() + other.getRequestCount(), is(1));
+		assertThat(downloads.get(), is(1));
+	}
+
+	/**
+	 * Checks that stale pages are revalidated, and downloaded again only
+	 * if they have changed.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRevalidate() throws IOException {
+		wf.setCache(new PageCache(folder.getRoot()), 0, 10);
+		Elements paragraphs = wf.fetchWikipedia(url);
+
+		// not modified, so the page is not downloaded again
+		assertThat(wf.fetchWikipedia(url).get(0).text(), is(paragraphs.get(0).text()));
+		assertThat(wf.getRequestCount(), is(2));
+		assertThat(wf.getNotModifiedCount(), is(1));
+		assertThat(downloads.get(), is(1));
+
+		setPage("an island", "\"v2\"");
+		assertThat(wf.fetchWikipedia(url).get(0).text(), is("Java is an island."));
+		assertThat(wf.getRequestCount(), is(3));
+		assertThat(wf.getNotModifiedCount(), is(1));
+		assertThat(downloads.get(), is(2));
+	}
+
+	/**
+	 * Checks that HTTP errors are reported and not cached.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testError() throws IOException {
+		wf.setCache(new PageCache(folder.getRoot()), 60000, 10);
+		String missing = "http://127.0.0.1:" + server.getAddress().getPort() + "/missing";
+		for (int i=0; i<2; i++) {
+			try {
+				wf.fetchWikipedia(missing);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		assertThat(wf.getRequestCount(), is(2));
+	}
+}
@@ -1,8 +1,10 @@
 package com.allendowney.thinkdast;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -26,7 +28,10 @@ public class WikiPhilosophy {
 	 * @throws IOException
 	 */
 	public static void main(String[] args) throws IOException {
-		
+		// keep pages between runs; after a day, check whether they changed
+		File dir = new File(System.getProperty("java.io.tmpdir"), "thinkdast-pages");
+		wf.setCache(new PageCache(dir), TimeUnit.DAYS.toMillis(1), 100);
+
 		String destination = "https://en.wikipedia.org/wiki/Philosophy";
 		String source = "https://en.wikipedia.org/wiki/Java_(programming_language)";
 		
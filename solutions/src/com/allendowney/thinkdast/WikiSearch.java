@@ -1,15 +1,16 @@
 package com.allendowney.thinkdast;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
-import redis.clients.jedis.Jedis;
+import java.util.Set;
 
 
 /**
@@ -41,6 +42,15 @@ public class WikiSearch {
 		return relevance==null ? 0: relevance;
 	}
 
+	/**
+	 * Returns the number of URLs in the results.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return map.size();
+	}
+
 	/**
 	 * Prints the contents in order of term frequency.
 	 *
@@ -76,8 +86,11 @@ public class WikiSearch {
 	 */
 	public WikiSearch and(WikiSearch that) {
 		Map<String, Integer> intersection = new HashMap<String, Integer>();
-		for (String term: map.keySet()) {
-			if (that.map.containsKey(term)) {
+		// loop through the smaller map and probe the bigger one
+		Map<String, Integer> smaller = map.size() <= that.map.size() ? map : that.map;
+		Map<String, Integer> bigger = smaller == map ? that.map : map;
+		for (String term: smaller.keySet()) {
+			if (bigger.containsKey(term)) {
 				int relevance = totalRelevance(this.map.get(term), that.map.get(term));
 				intersection.put(term, relevance);
 			}
@@ -99,6 +112,29 @@ public class WikiSearch {
 		return new WikiSearch(difference);
 	}
 
+	/**
+	 * Removes the given URLs from the results.
+	 *
+	 * @param urls
+	 * @return New WikiSearch object.
+	 */
+	public WikiSearch minus(Collection<String> urls) {
+		Map<String, Integer> difference = new HashMap<String, Integer>(map);
+		for (String url: urls) {
+			difference.remove(url);
+		}
+		return new WikiSearch(difference);
+	}
+
+	/**
+	 * Returns the URLs in the results.
+	 *
+	 * @return
+	 */
+	public Set<String> urls() {
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
 	/**
 	 * Computes the relevance of a search with multiple terms.
 	 *
@@ -137,6 +173,19 @@ public class WikiSearch {
 		return entries;
 	}
 
+	/**
+	 * Returns the k results with the highest relevance, most relevant first.
+	 *
+	 * Keeps the best k entries seen so far in a min-heap, so it takes time
+	 * proportional to n log k and space proportional to k, rather than
+	 * sorting all n results.  Ties are broken by URL.
+	 *
+	 * @param k
+	 * @return List of entries with URL and relevance, in descending order.
+	 */
+	public List<Entry<String, Integer>> topK(int k) {
+		return TopK.select(map, k);
+	}
 
 	/**
 	 * Performs a search and makes a WikiSearch object.
@@ -145,16 +194,56 @@ public class WikiSearch {
 	 * @param index
 	 * @return
 	 */
-	public static WikiSearch search(String term, JedisIndex index) {
+	public static WikiSearch search(String term, SearchIndex index) {
 		Map<String, Integer> map = index.getCounts(term);
 		return new WikiSearch(map);
 	}
 
+	/**
+	 * Performs a search for pages that contain all of the terms.
+	 *
+	 * The result is the same as combining search for each term with and.
+	 * If the index can intersect the terms itself, like LocalIndex, which
+	 * walks its postings lists together, it does; that is much faster when
+	 * one of the terms is rare.
+	 *
+	 * @param terms
+	 * @param index
+	 * @return
+	 */
+	public static WikiSearch searchAll(Collection<String> terms, SearchIndex index) {
+		Map<String, Integer> counts = index.getCountsForAll(terms);
+		if (counts != null) {
+			return new WikiSearch(counts);
+		}
+		WikiSearch result = null;
+		for (String term: new LinkedHashSet<String>(terms)) {
+			WikiSearch search = search(term, index);
+			result = result == null ? search : result.and(search);
+		}
+		return result == null ? new WikiSearch(new HashMap<String, Integer>()) : result;
+	}
+
+	/**
+	 * Parses a query like `java AND (compiler OR "virtual machine") NOT
+	 * coffee` and evaluates it.
+	 *
+	 * See QueryParser for the syntax and Query for how it is evaluated.
+	 *
+	 * @param query
+	 * @param index
+	 * @return
+	 * @throws IllegalArgumentException if the query is malformed
+	 */
+	public static WikiSearch query(String query, SearchIndex index) {
+		return QueryParser.parse(query).evaluate(index);
+	}
+
 	public static void main(String[] args) throws IOException {
 
 		// make a JedisIndex
-		Jedis jedis = JedisMaker.make();
-		JedisIndex index = new JedisIndex(jedis);
+		JedisConnectionPool pool = JedisMaker.makePool();
+		JedisIndex index = new JedisIndex(pool);
 
 		// search for the first term
 		String term1 = "java";
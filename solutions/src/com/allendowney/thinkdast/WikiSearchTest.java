@@ -90,4 +90,30 @@ public class WikiSearchTest {
 		assertThat(list.get(1).getValue(), is(5));
 		assertThat(list.get(2).getValue(), is(7));
 	}
+
+	/**
+	 * Test method for {@link WikiSearch#topK(int)}.
+	 */
+	@Test
+	public void testTopK() {
+		List<Entry<String, Integer>> list = search1.or(search2).topK(2);
+		assertThat(list.size(), is(2));
+		assertThat(list.get(0).getKey(), is("Page3"));
+		assertThat(list.get(0).getValue(), is(8));
+		assertThat(list.get(1).getKey(), is("Page4"));
+
+		assertThat(search2.topK(10).size(), is(3));
+		assertThat(search2.topK(10).get(2).getValue(), is(4));
+		assertThat(search2.topK(0).isEmpty(), is(true));
+
+		// ties are broken by URL
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int i=0; i<100; i++) {
+			map.put("Page" + (100 + i), i % 10);
+		}
+		list = new WikiSearch(map).topK(3);
+		assertThat(list.get(0).getKey(), is("Page109"));
+		assertThat(list.get(1).getKey(), is("Page119"));
+		assertThat(list.get(2).getKey(), is("Page129"));
+	}
 }